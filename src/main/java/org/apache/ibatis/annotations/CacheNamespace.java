@@ -21,6 +21,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+import org.apache.ibatis.cache.codec.CacheCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 
@@ -38,12 +40,24 @@ public @interface CacheNamespace {
 
   long flushInterval() default 0;
 
+  /**
+   * Time to live of each cache entry in milliseconds, 0 means entries do not expire.
+   * @since 3.5.1
+   */
+  long timeToLive() default 0;
+
   int size() default 1024;
 
   boolean readWrite() default true;
 
   boolean blocking() default false;
 
+  /**
+   * Codec used to copy cached values when {@link #readWrite()} is true.
+   * @since 3.5.1
+   */
+  Class<? extends CacheCodec> codec() default JavaSerializationCodec.class;
+
   /**
    * Property values for a implementation object.
    * @since 3.4.2
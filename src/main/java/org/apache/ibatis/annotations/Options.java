@@ -63,4 +63,28 @@ public @interface Options {
   String keyColumn() default "";
 
   String resultSets() default "";
+
+  /**
+   * Tags of the cached result of a select, or tags invalidated on commit instead of clearing the whole cache
+   * for a statement that flushes the cache. A tag may contain <code>#{property}</code> placeholders.
+   *
+   * @since 3.5.1
+   */
+  String[] cacheTags() default {};
+
+  /**
+   * Milliseconds after which a 2nd level cached result of a select is still returned, but reloaded in the
+   * background. 0 disables the background refresh.
+   *
+   * @since 3.5.1
+   */
+  long refreshAfter() default 0;
+
+  /**
+   * Whether an insert, update or delete does not depend on the statements executed between its first and later
+   * calls in the same batch, so that the batch executor may add later calls to the statement it already prepared.
+   *
+   * @since 3.5.1
+   */
+  boolean batchIndependent() default false;
 }
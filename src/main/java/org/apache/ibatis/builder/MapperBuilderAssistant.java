@@ -22,6 +22,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.codec.CacheCodec;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.executor.ErrorContext;
@@ -135,13 +136,34 @@ public class MapperBuilderAssistant extends BaseBuilder {
       boolean readWrite,
       boolean blocking,
       Properties props) {
+    return useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, null, null, props);
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public Cache useNewCache(Class<? extends Cache> typeClass,
+      Class<? extends Cache> evictionClass,
+      Long flushInterval,
+      Integer size,
+      boolean readWrite,
+      boolean blocking,
+      Class<? extends CacheCodec> codecClass,
+      Long timeToLive,
+      Properties props) {
     Cache cache = new CacheBuilder(currentNamespace)
         .implementation(valueOrDefault(typeClass, PerpetualCache.class))
         .addDecorator(valueOrDefault(evictionClass, LruCache.class))
         .clearInterval(flushInterval)
+        .timeToLive(timeToLive)
         .size(size)
         .readWrite(readWrite)
         .blocking(blocking)
+        .codec(codecClass)
+        .invalidationBus(configuration.getCacheInvalidationBus())
+        .generation(configuration.addCacheGeneration(currentNamespace))
+        .metrics(configuration.isCacheMetricsEnabled()
+            ? configuration.getCacheMetricsRegistry().register(currentNamespace) : null)
         .properties(props)
         .build();
     configuration.addCache(cache);
@@ -275,6 +297,39 @@ public class MapperBuilderAssistant extends BaseBuilder {
       String databaseId,
       LanguageDriver lang,
       String resultSets) {
+    return addMappedStatement(id, sqlSource, statementType, sqlCommandType, fetchSize, timeout,
+        parameterMap, parameterType, resultMap, resultType, resultSetType,
+        flushCache, useCache, resultOrdered, keyGenerator, keyProperty,
+        keyColumn, databaseId, lang, resultSets, null, 0, false);
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public MappedStatement addMappedStatement(
+      String id,
+      SqlSource sqlSource,
+      StatementType statementType,
+      SqlCommandType sqlCommandType,
+      Integer fetchSize,
+      Integer timeout,
+      String parameterMap,
+      Class<?> parameterType,
+      String resultMap,
+      Class<?> resultType,
+      ResultSetType resultSetType,
+      boolean flushCache,
+      boolean useCache,
+      boolean resultOrdered,
+      KeyGenerator keyGenerator,
+      String keyProperty,
+      String keyColumn,
+      String databaseId,
+      LanguageDriver lang,
+      String resultSets,
+      String[] cacheTags,
+      long refreshAfter,
+      boolean batchIndependent) {
 
     if (unresolvedCacheRef) {
       throw new IncompleteElementException("Cache-ref not yet resolved");
@@ -300,7 +355,10 @@ public class MapperBuilderAssistant extends BaseBuilder {
         .resultSetType(resultSetType)
         .flushCacheRequired(valueOrDefault(flushCache, !isSelect))
         .useCache(valueOrDefault(useCache, isSelect))
-        .cache(currentCache);
+        .cache(currentCache)
+        .cacheTags(cacheTags)
+        .refreshAfter(refreshAfter)
+        .batchIndependent(batchIndependent);
 
     ParameterMap statementParameterMap = getStatementParameterMap(parameterMap, parameterType, id);
     if (statementParameterMap != null) {
@@ -308,6 +366,10 @@ public class MapperBuilderAssistant extends BaseBuilder {
     }
 
     MappedStatement statement = statementBuilder.build();
+    if (currentCache != null && statement.getCacheTags() != null) {
+      //启用该缓存的tag失效
+      configuration.addCacheTagVersions(currentCache.getId());
+    }
     configuration.addMappedStatement(statement);
     return statement;
   }
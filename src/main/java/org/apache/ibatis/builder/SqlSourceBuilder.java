@@ -25,6 +25,7 @@ import org.apache.ibatis.parsing.GenericTokenParser;
 import org.apache.ibatis.parsing.TokenHandler;
 import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.property.PropertyTokenizer;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.type.JdbcType;
 
@@ -54,9 +55,101 @@ public class SqlSourceBuilder extends BaseBuilder {
     return new StaticSqlSource(configuration, sql, handler.getParameterMappings());
   }
 
+  /**
+   * 与 {@link #parse(String, Class, Map)} 相同，但返回可以复用的解析结果，
+   * 之后同样的sql和参数类型可以用 {@link #parse(ParsedSql, Map)} 生成sqlSource，不再解析#{}
+   *
+   * @since 3.5.1
+   */
+  public ParsedSql parseReusable(String originalSql, Class<?> parameterType, Map<String, Object> additionalParameters) {
+    ParameterMappingTokenHandler handler = new ParameterMappingTokenHandler(configuration, parameterType, additionalParameters);
+    GenericTokenParser parser = new GenericTokenParser("#{", "}", handler);
+    String sql = parser.parse(originalSql);
+    return new ParsedSql(sql, parameterType, handler.contents, handler.getParameterMappings(), additionalParameters);
+  }
+
+  /**
+   * 用之前的解析结果生成sqlSource。只由参数类型决定的参数映射直接复用，
+   * 引用了额外参数(foreach的元素、bind的变量等)的参数映射与额外参数的值有关，每次重新解析
+   *
+   * @since 3.5.1
+   */
+  public SqlSource parse(ParsedSql parsedSql, Map<String, Object> additionalParameters) {
+    int size = parsedSql.contents.length;
+    List<ParameterMapping> parameterMappings = new ArrayList<>(size);
+    ParameterMappingTokenHandler handler = null;
+    for (int i = 0; i < size; i++) {
+      ParameterMapping parameterMapping = parsedSql.parameterMappings[i];
+      if (parameterMapping == null || additionalParameters.containsKey(parsedSql.bindingNames[i])) {
+        if (handler == null) {
+          handler = new ParameterMappingTokenHandler(configuration, parsedSql.parameterType, additionalParameters);
+        }
+        parameterMapping = handler.buildParameterMapping(parsedSql.contents[i]);
+      }
+      parameterMappings.add(parameterMapping);
+    }
+    return new StaticSqlSource(configuration, parsedSql.sql, parameterMappings);
+  }
+
+  /**
+   * 解析后的sql，#{}已经替换为?，同时保存每个#{}的内容和可以复用的参数映射
+   *
+   * @since 3.5.1
+   */
+  public static final class ParsedSql {
+
+    private final String sql;
+    private final Class<?> parameterType;
+    private final String[] contents;
+    /**
+     * 每个#{}的属性在额外参数中的名称，额外参数中有此名称时参数映射不能复用
+     */
+    private final String[] bindingNames;
+    /**
+     * 可以复用的参数映射，解析时引用了额外参数的为null
+     */
+    private final ParameterMapping[] parameterMappings;
+
+    private ParsedSql(String sql, Class<?> parameterType, List<String> contents,
+        List<ParameterMapping> parameterMappings, Map<String, Object> additionalParameters) {
+      this.sql = sql;
+      this.parameterType = parameterType;
+      this.contents = contents.toArray(new String[0]);
+      this.bindingNames = new String[this.contents.length];
+      this.parameterMappings = new ParameterMapping[this.contents.length];
+      for (int i = 0; i < this.contents.length; i++) {
+        String property = parameterMappings.get(i).getProperty();
+        bindingNames[i] = property == null ? null : bindingName(property);
+        if (!additionalParameters.containsKey(bindingNames[i])) {
+          this.parameterMappings[i] = parameterMappings.get(i);
+        }
+      }
+    }
+
+    public String getSql() {
+      return sql;
+    }
+
+    public Class<?> getParameterType() {
+      return parameterType;
+    }
+
+    /**
+     * 与MapWrapper.hasGetter查找的key一致
+     */
+    private static String bindingName(String property) {
+      PropertyTokenizer prop = new PropertyTokenizer(property);
+      return prop.hasNext() ? prop.getIndexedName() : prop.getName();
+    }
+  }
+
   private static class ParameterMappingTokenHandler extends BaseBuilder implements TokenHandler {
 
     private List<ParameterMapping> parameterMappings = new ArrayList<>();
+    /**
+     * 每个#{}的内容
+     */
+    private final List<String> contents = new ArrayList<>();
     private Class<?> parameterType;
     private MetaObject metaParameters;
 
@@ -72,6 +165,7 @@ public class SqlSourceBuilder extends BaseBuilder {
 
     @Override
     public String handleToken(String content) {
+      contents.add(content);
       parameterMappings.add(buildParameterMapping(content));
       return "?";
     }
@@ -19,7 +19,9 @@ import java.util.Properties;
 import javax.sql.DataSource;
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
 import org.apache.ibatis.datasource.DataSourceFactory;
+import org.apache.ibatis.executor.BatchResultHandler;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
 import org.apache.ibatis.io.Resources;
@@ -142,6 +144,8 @@ public class XMLConfigBuilder extends BaseBuilder {
       reflectorFactoryElement(root.evalNode("reflectorFactory"));
       //将settings设置到configuration
       settingsElement(settings);
+      //解析缓存失效总线
+      cacheInvalidationBusElement(root.evalNode("cacheInvalidationBus"));
       //解析environments
       environmentsElement(root.evalNode("environments"));
       //解析数据库厂商标识
@@ -308,6 +312,19 @@ public class XMLConfigBuilder extends BaseBuilder {
     }
   }
 
+  /**
+   * 解析cacheInvalidationBus，会覆盖settings中的cacheInvalidationBus
+   */
+  private void cacheInvalidationBusElement(XNode context) throws Exception {
+    if (context != null) {
+      String type = context.getStringAttribute("type");
+      Properties properties = context.getChildrenAsProperties();
+      InvalidationBus bus = (InvalidationBus) resolveClass(type).newInstance();
+      bus.setProperties(properties);
+      configuration.setCacheInvalidationBus(bus);
+    }
+  }
+
   /**
    * 解析properties节点
    */
@@ -354,6 +371,17 @@ public class XMLConfigBuilder extends BaseBuilder {
         .valueOf(props.getProperty("autoMappingUnknownColumnBehavior", "NONE")));
     configuration.setCacheEnabled(booleanValueOf(props.getProperty("cacheEnabled"), true));
     configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
+    configuration.setCacheInvalidationBus((InvalidationBus) createInstance(props.getProperty("cacheInvalidationBus")));
+    configuration.setCacheRefreshThreads(integerValueOf(props.getProperty("cacheRefreshThreads"), 2));
+    configuration.setCacheMetricsEnabled(booleanValueOf(props.getProperty("cacheMetricsEnabled"), false));
+    configuration.setCompileDynamicSql(booleanValueOf(props.getProperty("compileDynamicSql"), false));
+    configuration.setBatchFlushRowsPerStatement(integerValueOf(props.getProperty("batchFlushRowsPerStatement"), 0));
+    configuration.setBatchFlushRows(integerValueOf(props.getProperty("batchFlushRows"), 0));
+    configuration.setBatchFlushBytes(integerValueOf(props.getProperty("batchFlushBytes"), 0));
+    configuration.setBatchResultHandler((BatchResultHandler) createInstance(props.getProperty("batchResultHandler")));
+    configuration.setBatchPipelining(booleanValueOf(props.getProperty("batchPipelining"), false));
+    configuration.setBatchInsertRewriteRows(integerValueOf(props.getProperty("batchInsertRewriteRows"), 0));
+    configuration.setBatchInsertRewriteParameters(integerValueOf(props.getProperty("batchInsertRewriteParameters"), 0));
     configuration
         .setLazyLoadingEnabled(booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
     configuration.setAggressiveLazyLoading(
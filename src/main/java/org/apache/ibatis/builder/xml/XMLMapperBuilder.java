@@ -30,6 +30,7 @@ import org.apache.ibatis.builder.IncompleteElementException;
 import org.apache.ibatis.builder.MapperBuilderAssistant;
 import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.codec.CacheCodec;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.mapping.Discriminator;
@@ -273,16 +274,21 @@ public class XMLMapperBuilder extends BaseBuilder {
       Class<? extends Cache> evictionClass = typeAliasRegistry.resolveAlias(eviction);
       //过期时间
       Long flushInterval = context.getLongAttribute("flushInterval");
+      //缓存项的生存时间
+      Long timeToLive = context.getLongAttribute("timeToLive");
       //缓存对象数量最大值
       Integer size = context.getIntAttribute("size");
       //是否只读
       boolean readWrite = !context.getBooleanAttribute("readOnly", false);
       //是否阻塞
       boolean blocking = context.getBooleanAttribute("blocking", false);
+      //readWrite缓存的编解码
+      String codec = context.getStringAttribute("codec");
+      Class<? extends CacheCodec> codecClass = typeAliasRegistry.resolveAlias(codec);
       //获取子节点，初始化cache
       Properties props = context.getChildrenAsProperties();
       builderAssistant
-          .useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props);
+          .useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, codecClass, timeToLive, props);
     }
   }
 
@@ -107,11 +107,16 @@ public class XMLStatementBuilder extends BaseBuilder {
     String keyProperty = context.getStringAttribute("keyProperty");
     String keyColumn = context.getStringAttribute("keyColumn");
     String resultSets = context.getStringAttribute("resultSets");
+    String cacheTags = context.getStringAttribute("cacheTags");
+    Long refreshAfter = context.getLongAttribute("refreshAfter");
+    boolean batchIndependent = context.getBooleanAttribute("batchIndependent", false);
 
     builderAssistant.addMappedStatement(id, sqlSource, statementType, sqlCommandType,
         fetchSize, timeout, parameterMap, parameterTypeClass, resultMap, resultTypeClass,
         resultSetTypeEnum, flushCache, useCache, resultOrdered,
-        keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets);
+        keyGenerator, keyProperty, keyColumn, databaseId, langDriver, resultSets,
+        cacheTags == null ? null : cacheTags.split(","), refreshAfter == null ? 0 : refreshAfter,
+        batchIndependent);
   }
 
   private void processSelectKeyNodes(String id, Class<?> parameterTypeClass, LanguageDriver langDriver) {
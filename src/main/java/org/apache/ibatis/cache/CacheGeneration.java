@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * 一个二级缓存被清空的次数，用于后台刷新时判断查询期间缓存是否被清空过。
+ * <p>
+ * 查询之前读取 {@link #current()}，查询之后用 {@link #putIfCurrent} 放入，
+ * 清空和放入在同一把锁内进行，期间有清空（本地提交或其他节点通知）时放弃放入，
+ * 不会把清空之前读到的结果放回缓存。
+ *
+ * @since 3.5.1
+ * @see org.apache.ibatis.cache.decorators.GenerationCache
+ */
+public class CacheGeneration {
+
+  private final String cacheId;
+  /**
+   * 清空次数，只在锁内修改
+   */
+  private volatile long generation;
+
+  public CacheGeneration(String cacheId) {
+    this.cacheId = cacheId;
+  }
+
+  public String getCacheId() {
+    return cacheId;
+  }
+
+  /**
+   * 当前的清空次数，必须在查询数据库之前读取
+   */
+  public long current() {
+    return generation;
+  }
+
+  /**
+   * 自读取expected之后缓存没有被清空过时放入
+   *
+   * @return 是否放入了缓存
+   */
+  public synchronized boolean putIfCurrent(Cache cache, Object key, Object value, long expected) {
+    if (generation != expected) {
+      return false;
+    }
+    cache.putObject(key, value);
+    return true;
+  }
+
+  /**
+   * 清空缓存并增加清空次数
+   */
+  public synchronized void clear(Cache cache) {
+    generation++;
+    cache.clear();
+  }
+
+}
@@ -16,76 +16,84 @@
 package org.apache.ibatis.cache;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.StringJoiner;
 
 import org.apache.ibatis.reflection.ArrayUtil;
 
 /**
  * 缓存的key
+ * <p>
+ * 元素保存在一个数组中，同时维护一个与元素顺序相关的64位hash。
+ * equals先比较hash和元素个数，相同时再逐个比较元素，判断结果只取决于元素。
+ *
  * @author Clinton Begin
  */
 public class CacheKey implements Cloneable, Serializable {
 
-  private static final long serialVersionUID = 1146682552656046210L;
+  private static final long serialVersionUID = -1853419307598346520L;
 
   /**
    * 空缓存
    */
   public static final CacheKey NULL_CACHE_KEY = new NullCacheKey();
 
-  private static final int DEFAULT_MULTIPLYER = 37;
-  private static final int DEFAULT_HASHCODE = 17;
+  private static final long DEFAULT_HASH = 0xcbf29ce484222325L;
+  private static final long MULTIPLIER = 0x9e3779b97f4a7c15L;
+  private static final int DEFAULT_CAPACITY = 8;
+  private static final Object[] EMPTY = new Object[0];
 
   /**
-   * hashCode的求值系数
-   */
-  private final int multiplier;
-  /**
-   * 缓存key的hashCode
+   * 64位hash
    */
-  private int hashcode;
-  /**
-   * 校验和
-   */
-  private long checksum;
+  private long hash;
   /**
    * 调度用update的次数
    */
   private int count;
   // 8/21/2017 - Sonarlint flags this as needing to be marked transient.  While true if content is not serializable, this is not always true and thus should not be marked transient.
   /**
-   * hashcode方法对象的集合
+   * 元素，只有前count个有效
    */
-  private List<Object> updateList;
+  private Object[] updateList;
 
   public CacheKey() {
-    this.hashcode = DEFAULT_HASHCODE;
-    this.multiplier = DEFAULT_MULTIPLYER;
+    this.hash = DEFAULT_HASH;
     this.count = 0;
-    this.updateList = new ArrayList<>();
+    this.updateList = EMPTY;
   }
 
   public CacheKey(Object[] objects) {
     this();
+    updateList = new Object[objects.length];
     updateAll(objects);
   }
 
+  /**
+   * 以prefix的元素开头的key，直接复制prefix的元素和hash，不重新计算
+   *
+   * @since 3.5.1
+   */
+  public CacheKey(CacheKey prefix) {
+    this.hash = prefix.hash;
+    this.count = prefix.count;
+    this.updateList = Arrays.copyOf(prefix.updateList, prefix.count + DEFAULT_CAPACITY);
+  }
+
   public int getUpdateCount() {
-    return updateList.size();
+    return count;
   }
 
   public void update(Object object) {
     int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object);
 
-    count++;
-    checksum += baseHashCode;
-    baseHashCode *= count;
+    // 先异或再相乘，结果与顺序相关
+    hash = (hash ^ baseHashCode) * MULTIPLIER;
 
-    hashcode = multiplier * hashcode + baseHashCode;
-
-    updateList.add(object);
+    if (count == updateList.length) {
+      updateList = Arrays.copyOf(updateList, Math.max(DEFAULT_CAPACITY, count * 2));
+    }
+    updateList[count++] = object;
   }
 
   public void updateAll(Object[] objects) {
@@ -106,22 +114,18 @@ public class CacheKey implements Cloneable, Serializable {
     }
 
     final CacheKey cacheKey = (CacheKey) object;
-    //判断hashcode
-    if (hashcode != cacheKey.hashcode) {
-      return false;
-    }
-    //判断校验和
-    if (checksum != cacheKey.checksum) {
+    //判断hash
+    if (hash != cacheKey.hash) {
       return false;
     }
     //判断update次数
     if (count != cacheKey.count) {
       return false;
     }
-    //判断每一项hashcode
-    for (int i = 0; i < updateList.size(); i++) {
-      Object thisObject = updateList.get(i);
-      Object thatObject = cacheKey.updateList.get(i);
+    //判断每一项
+    for (int i = 0; i < count; i++) {
+      Object thisObject = updateList[i];
+      Object thatObject = cacheKey.updateList[i];
       if (!ArrayUtil.equals(thisObject, thatObject)) {
         return false;
       }
@@ -131,22 +135,27 @@ public class CacheKey implements Cloneable, Serializable {
 
   @Override
   public int hashCode() {
-    return hashcode;
+    long h = hash;
+    h ^= h >>> 32;
+    h *= MULTIPLIER;
+    return (int) (h ^ (h >>> 32));
   }
 
   @Override
   public String toString() {
     StringJoiner returnValue = new StringJoiner(":");
-    returnValue.add(String.valueOf(hashcode));
-    returnValue.add(String.valueOf(checksum));
-    updateList.stream().map(ArrayUtil::toString).forEach(returnValue::add);
+    returnValue.add(String.valueOf(hashCode()));
+    returnValue.add(String.valueOf(count));
+    for (int i = 0; i < count; i++) {
+      returnValue.add(ArrayUtil.toString(updateList[i]));
+    }
     return returnValue.toString();
   }
 
   @Override
   public CacheKey clone() throws CloneNotSupportedException {
     CacheKey clonedCacheKey = (CacheKey) super.clone();
-    clonedCacheKey.updateList = new ArrayList<>(updateList);
+    clonedCacheKey.updateList = Arrays.copyOf(updateList, updateList.length);
     return clonedCacheKey;
   }
 
@@ -0,0 +1,52 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 默认的权重估算，缓存的查询结果按行数计算权重。
+ * <ul>
+ * <li>byte[]：字节数，readWrite缓存中保存的是序列化后的字节</li>
+ * <li>Collection、Map、数组：元素个数</li>
+ * <li>其他：1</li>
+ * </ul>
+ * 权重最小为1，空结果也占用一个单位。
+ *
+ * @since 3.5.1
+ */
+public class DefaultWeigher implements Weigher {
+
+  @Override
+  public int weigh(Object key, Object value) {
+    int weight;
+    if (value instanceof byte[]) {
+      weight = ((byte[]) value).length;
+    } else if (value instanceof Collection) {
+      weight = ((Collection<?>) value).size();
+    } else if (value instanceof Map) {
+      weight = ((Map<?, ?>) value).size();
+    } else if (value != null && value.getClass().isArray()) {
+      weight = Array.getLength(value);
+    } else {
+      weight = 1;
+    }
+    return Math.max(weight, 1);
+  }
+
+}
@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
+import org.apache.ibatis.cache.invalidation.InvalidationListener;
+
+/**
+ * 一个二级缓存的tag版本号，用于按tag失效缓存项，而不是清空整个缓存。
+ * <p>
+ * 缓存项保存写入前各tag的版本号（见 {@link TaggedValue}），失效tag时只增加版本号，
+ * 读取时版本号不一致的缓存项视为未命中，之后由淘汰策略回收。
+ * tag按hash分到固定个数的槽中，动态tag（如 user:#{id}）再多也不会增加内存，
+ * 槽冲突只会多失效一些缓存项。
+ * 没有声明tag的查询结果使用 {@link #UNTAGGED}，任何tag失效时都会一起失效。
+ *
+ * @since 3.5.1
+ */
+public class TagVersions {
+
+  /**
+   * 没有声明tag的查询结果使用的tag
+   */
+  public static final String UNTAGGED = "*";
+
+  private static final String[] UNTAGGED_TAGS = { UNTAGGED };
+
+  private static final int SLOTS = 1 << 12;
+
+  private final String cacheId;
+  private final InvalidationBus bus;
+  private final AtomicLongArray versions = new AtomicLongArray(SLOTS);
+
+  public TagVersions(String cacheId) {
+    this(cacheId, null);
+  }
+
+  /**
+   * @param bus 不为null时，失效的tag会通知其他节点，其他节点的失效只在本地生效
+   */
+  public TagVersions(String cacheId, InvalidationBus bus) {
+    this.cacheId = cacheId;
+    this.bus = bus;
+    if (bus != null) {
+      bus.subscribe(cacheId, new InvalidationListener() {
+        @Override
+        public void onInvalidate(String cacheId) {
+          // 整个缓存的清空由 BroadcastingCache 处理
+        }
+
+        @Override
+        public void onInvalidateTags(String cacheId, Collection<String> tags) {
+          invalidateLocally(tags);
+        }
+      });
+    }
+  }
+
+  public String getCacheId() {
+    return cacheId;
+  }
+
+  /**
+   * 为查询结果打上tag，tag为空时使用 {@link #UNTAGGED}。
+   * 必须在查询数据库之前调用，这样查询期间提交的失效也会使结果过期。
+   */
+  public TaggedValue tag(String[] tags) {
+    if (tags == null || tags.length == 0) {
+      tags = UNTAGGED_TAGS;
+    }
+    long[] snapshot = new long[tags.length];
+    for (int i = 0; i < tags.length; i++) {
+      snapshot[i] = versions.get(slot(tags[i]));
+    }
+    return new TaggedValue(tags, snapshot);
+  }
+
+  /**
+   * 缓存项的tag自写入后是否都没有失效过
+   */
+  public boolean isCurrent(TaggedValue value) {
+    String[] tags = value.getTags();
+    long[] snapshot = value.getVersions();
+    for (int i = 0; i < tags.length; i++) {
+      if (versions.get(slot(tags[i])) != snapshot[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 失效tag并通知其他节点，{@link #UNTAGGED} 总是一起失效
+   */
+  public void invalidate(Collection<String> tags) {
+    invalidateLocally(tags);
+    if (bus != null) {
+      bus.publish(cacheId, tags);
+    }
+  }
+
+  private void invalidateLocally(Collection<String> tags) {
+    versions.incrementAndGet(slot(UNTAGGED));
+    for (String tag : tags) {
+      versions.incrementAndGet(slot(tag));
+    }
+  }
+
+  private static int slot(String tag) {
+    int h = tag.hashCode();
+    return (h ^ (h >>> 16)) & (SLOTS - 1);
+  }
+
+}
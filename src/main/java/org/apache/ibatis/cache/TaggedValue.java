@@ -0,0 +1,68 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * 带tag的缓存值，保存写入前各tag的版本号，由 {@link TagVersions#tag(String[])} 创建
+ *
+ * @since 3.5.1
+ */
+public class TaggedValue implements Serializable {
+
+  private static final long serialVersionUID = -3571234927160324893L;
+
+  private final String[] tags;
+  private final long[] versions;
+  private Object value;
+
+  TaggedValue(String[] tags, long[] versions) {
+    this.tags = tags;
+    this.versions = versions;
+  }
+
+  public String[] getTags() {
+    return tags;
+  }
+
+  long[] getVersions() {
+    return versions;
+  }
+
+  public Object getValue() {
+    return value;
+  }
+
+  public TaggedValue value(Object value) {
+    this.value = value;
+    return this;
+  }
+
+  /**
+   * 是否带有任一指定的tag
+   */
+  public boolean hasAnyTag(Collection<String> tagsToMatch) {
+    for (String tag : tags) {
+      if (tagsToMatch.contains(tag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
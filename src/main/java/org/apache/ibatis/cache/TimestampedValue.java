@@ -0,0 +1,52 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Serializable;
+
+/**
+ * 记录了查询时间的缓存值，用于过期后先返回旧值、再在后台刷新的语句（见 MappedStatement#getRefreshAfter()）
+ *
+ * @since 3.5.1
+ */
+public class TimestampedValue implements Serializable {
+
+  private static final long serialVersionUID = 4915209733652717301L;
+
+  private final Object value;
+  private final long loadedAt;
+
+  public TimestampedValue(Object value, long loadedAt) {
+    this.value = value;
+    this.loadedAt = loadedAt;
+  }
+
+  public Object getValue() {
+    return value;
+  }
+
+  public long getLoadedAt() {
+    return loadedAt;
+  }
+
+  /**
+   * 查询后是否已超过refreshAfter毫秒
+   */
+  public boolean isStale(long refreshAfter, long now) {
+    return now - loadedAt >= refreshAfter;
+  }
+
+}
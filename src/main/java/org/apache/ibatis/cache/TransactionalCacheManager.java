@@ -42,6 +42,14 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  public void invalidateTags(Cache cache, TagVersions tagVersions, String[] tags) {
+    getTransactionalCache(cache).invalidateTags(tagVersions, tags);
+  }
+
+  public void releaseMissedEntry(Cache cache, CacheKey key) {
+    getTransactionalCache(cache).releaseMissedEntry(key);
+  }
+
   public void commit() {
     for (TransactionalCache txCache : transactionalCaches.values()) {
       txCache.commit();
@@ -0,0 +1,39 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+/**
+ * Estimates the weight of a cache entry for weight-bounded caches such as
+ * {@link org.apache.ibatis.cache.decorators.WeightedCache}.
+ * <p>
+ * Implementations must have a public no-argument constructor so that they can be configured by class name.
+ *
+ * @since 3.5.1
+ * @see DefaultWeigher
+ */
+@FunctionalInterface
+public interface Weigher {
+
+  /**
+   * Returns the weight of an entry. Must be non-negative and must not change while the entry is cached.
+   *
+   * @param key the cache key
+   * @param value the cached value, may be null
+   * @return the weight of the entry
+   */
+  int weigh(Object key, Object value);
+
+}
@@ -0,0 +1,46 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.codec;
+
+/**
+ * Turns cached values into bytes and back, used by {@link org.apache.ibatis.cache.decorators.SerializedCache}
+ * and {@link org.apache.ibatis.cache.impl.OffHeapCache}.
+ * <p>
+ * Every decoded value must be an independent copy of the encoded one. The bytes only live as long as the cache,
+ * so a codec does not need a stable wire format across JVMs or versions.
+ * Implementations must be thread safe and have a public no-argument constructor.
+ *
+ * @since 3.5.1
+ * @see JavaSerializationCodec
+ * @see CompactCodec
+ */
+public interface CacheCodec {
+
+  /**
+   * @param value the value to encode, may be null
+   * @return the encoded bytes
+   * @throws org.apache.ibatis.cache.CacheException if the value cannot be encoded
+   */
+  byte[] encode(Object value);
+
+  /**
+   * @param bytes bytes returned by {@link #encode(Object)} of this codec
+   * @return a copy of the encoded value
+   * @throws org.apache.ibatis.cache.CacheException if the bytes cannot be decoded
+   */
+  Object decode(byte[] bytes);
+
+}
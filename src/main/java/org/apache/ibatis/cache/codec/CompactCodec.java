@@ -0,0 +1,698 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.codec;
+
+import java.io.Externalizable;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.CacheException;
+
+/**
+ * 紧凑的二进制编解码。
+ * <p>
+ * 每个类第一次编码时分配一个整数id，之后只写id，不写java序列化的类描述信息。
+ * 字节只在当前进程的缓存中使用，所以id不需要跨进程稳定。
+ * <ul>
+ * <li>String、基本类型的包装类、BigDecimal、BigInteger、日期类型、byte[]、枚举直接写值</li>
+ * <li>ArrayList、LinkedList、HashSet、LinkedHashSet、HashMap、LinkedHashMap和对象数组逐个写元素</li>
+ * <li>其他可序列化的类按字段写，跳过static和transient字段。解码时调用无参构造函数创建对象，
+ * 因此transient字段保留构造函数中的初始值，这点与java序列化不同</li>
+ * <li>自定义了序列化方法(writeObject、writeReplace等)的类、Externalizable、jdk中的其他类、
+ * 代理类(如延迟加载的代理对象)，以及没有无参构造函数的类，回退到java序列化</li>
+ * </ul>
+ * 同一对象被多次引用时只写一次，循环引用解码后保持不变。
+ *
+ * @since 3.5.1
+ */
+public class CompactCodec implements CacheCodec {
+
+  private static final int NULL = 0;
+  private static final int REF = 1;
+  private static final int STRING = 2;
+  private static final int INTEGER = 3;
+  private static final int LONG = 4;
+  private static final int SHORT = 5;
+  private static final int BYTE = 6;
+  private static final int TRUE = 7;
+  private static final int FALSE = 8;
+  private static final int CHARACTER = 9;
+  private static final int DOUBLE = 10;
+  private static final int FLOAT = 11;
+  private static final int BIG_DECIMAL = 12;
+  private static final int BIG_INTEGER = 13;
+  private static final int DATE = 14;
+  private static final int SQL_DATE = 15;
+  private static final int SQL_TIME = 16;
+  private static final int SQL_TIMESTAMP = 17;
+  private static final int BYTES = 18;
+  private static final int ENUM = 19;
+  private static final int COLLECTION = 20;
+  private static final int MAP = 21;
+  private static final int ARRAY = 22;
+  private static final int OBJECT = 23;
+  private static final int JAVA = 24;
+
+  /**
+   * 逐个写元素的集合类型
+   */
+  private static final List<Class<?>> COLLECTION_TYPES = Arrays.asList(
+      ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class, HashMap.class, LinkedHashMap.class);
+
+  /**
+   * 回退使用的java序列化
+   */
+  private final CacheCodec fallback = new JavaSerializationCodec();
+
+  private final Map<Class<?>, ClassInfo> classInfos = new ConcurrentHashMap<>();
+
+  /**
+   * 按id排列的类
+   */
+  private volatile ClassInfo[] registeredClasses = new ClassInfo[32];
+
+  private int nextId;
+
+  /**
+   * 预先注册类，不注册时在第一次编码时注册
+   */
+  public void register(Class<?>... types) {
+    for (Class<?> type : types) {
+      classInfo(type);
+    }
+  }
+
+  @Override
+  public byte[] encode(Object value) {
+    try {
+      Encoder encoder = new Encoder();
+      encoder.writeValue(value);
+      return encoder.toByteArray();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public Object decode(byte[] bytes) {
+    try {
+      return new Decoder(bytes).readValue();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+  private ClassInfo classInfo(Class<?> type) {
+    ClassInfo info = classInfos.get(type);
+    return info != null ? info : registerClass(type);
+  }
+
+  private synchronized ClassInfo registerClass(Class<?> type) {
+    ClassInfo info = classInfos.get(type);
+    if (info == null) {
+      ClassInfo[] table = registeredClasses;
+      if (nextId == table.length) {
+        table = Arrays.copyOf(table, table.length * 2);
+      }
+      info = new ClassInfo(nextId, type);
+      table[nextId++] = info;
+      // volatile写，保证解码线程能看到新注册的类
+      registeredClasses = table;
+      classInfos.put(type, info);
+    }
+    return info;
+  }
+
+  private ClassInfo classInfo(int id) {
+    ClassInfo[] table = registeredClasses;
+    if (id < 0 || id >= table.length || table[id] == null) {
+      throw new CacheException("Unknown class id " + id + " in cached value.");
+    }
+    return table[id];
+  }
+
+  /**
+   * 已注册的类
+   */
+  private static final class ClassInfo {
+
+    private final int id;
+    private final Class<?> type;
+    /**
+     * 无参构造函数，不能按字段编码时为null
+     */
+    private final Constructor<?> constructor;
+    /**
+     * 要编码的字段，父类的在前
+     */
+    private final Field[] fields;
+    /**
+     * 枚举常量
+     */
+    private final Object[] enumConstants;
+
+    ClassInfo(int id, Class<?> type) {
+      this.id = id;
+      this.type = type;
+      this.enumConstants = type.isEnum() ? type.getEnumConstants() : null;
+      Constructor<?> ctor = null;
+      Field[] fieldArray = null;
+      if (COLLECTION_TYPES.contains(type)) {
+        ctor = noArgConstructor(type);
+      } else if (isCompactBean(type)) {
+        ctor = noArgConstructor(type);
+        fieldArray = ctor == null ? null : serializableFields(type);
+        if (fieldArray == null) {
+          ctor = null;
+        }
+      }
+      this.constructor = ctor;
+      this.fields = fieldArray;
+    }
+
+    boolean isBean() {
+      return fields != null;
+    }
+
+    Object newInstance() throws Exception {
+      return constructor.newInstance();
+    }
+
+    private static boolean isCompactBean(Class<?> type) {
+      if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)
+          || type.isArray() || type.isEnum() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+          || Proxy.isProxyClass(type)) {
+        return false;
+      }
+      String name = type.getName();
+      if (name.startsWith("java.") || name.startsWith("javax.") || name.contains("$$")) {
+        return false;
+      }
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (String method : new String[] {"writeObject", "readObject", "readObjectNoData", "writeReplace", "readResolve"}) {
+          if (declaresMethod(c, method)) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+    private static boolean declaresMethod(Class<?> type, String name) {
+      for (Method method : type.getDeclaredMethods()) {
+        if (method.getName().equals(name)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static Constructor<?> noArgConstructor(Class<?> type) {
+      try {
+        Constructor<?> ctor = type.getDeclaredConstructor();
+        ctor.setAccessible(true);
+        return ctor;
+      } catch (Exception e) {
+        return null;
+      }
+    }
+
+    /**
+     * 与java序列化一样，只包含可序列化的类中声明的非static、非transient字段
+     */
+    private static Field[] serializableFields(Class<?> type) {
+      List<Class<?>> hierarchy = new ArrayList<>();
+      for (Class<?> c = type; c != null && Serializable.class.isAssignableFrom(c); c = c.getSuperclass()) {
+        hierarchy.add(0, c);
+      }
+      List<Field> result = new ArrayList<>();
+      try {
+        for (Class<?> c : hierarchy) {
+          for (Field field : c.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+              field.setAccessible(true);
+              result.add(field);
+            }
+          }
+        }
+      } catch (RuntimeException e) {
+        // 无法访问字段(如模块限制)，回退到java序列化
+        return null;
+      }
+      return result.toArray(new Field[0]);
+    }
+  }
+
+  /**
+   * 编码一个值，非线程安全，每次编码新建
+   */
+  private final class Encoder {
+
+    private byte[] buffer = new byte[256];
+    private int position;
+    private final Map<Object, Integer> references = new IdentityHashMap<>();
+
+    void writeValue(Object value) throws Exception {
+      if (value == null) {
+        writeByte(NULL);
+        return;
+      }
+      Class<?> type = value.getClass();
+      if (type == String.class) {
+        writeByte(STRING);
+        writeString((String) value);
+      } else if (type == Integer.class) {
+        writeByte(INTEGER);
+        writeVarInt(zigZag((Integer) value));
+      } else if (type == Long.class) {
+        writeByte(LONG);
+        writeVarLong(zigZag((Long) value));
+      } else if (type == Short.class) {
+        writeByte(SHORT);
+        writeVarInt(zigZag((Short) value));
+      } else if (type == Byte.class) {
+        writeByte(BYTE);
+        writeByte((Byte) value);
+      } else if (type == Boolean.class) {
+        writeByte((Boolean) value ? TRUE : FALSE);
+      } else if (type == Character.class) {
+        writeByte(CHARACTER);
+        writeVarInt((Character) value);
+      } else if (type == Double.class) {
+        writeByte(DOUBLE);
+        writeLong(Double.doubleToRawLongBits((Double) value));
+      } else if (type == Float.class) {
+        writeByte(FLOAT);
+        writeInt(Float.floatToRawIntBits((Float) value));
+      } else if (type == BigDecimal.class) {
+        BigDecimal decimal = (BigDecimal) value;
+        writeByte(BIG_DECIMAL);
+        writeVarInt(zigZag(decimal.scale()));
+        writeBytes(decimal.unscaledValue().toByteArray());
+      } else if (type == BigInteger.class) {
+        writeByte(BIG_INTEGER);
+        writeBytes(((BigInteger) value).toByteArray());
+      } else if (type == Date.class) {
+        writeByte(DATE);
+        writeLong(((Date) value).getTime());
+      } else if (type == java.sql.Date.class) {
+        writeByte(SQL_DATE);
+        writeLong(((Date) value).getTime());
+      } else if (type == Time.class) {
+        writeByte(SQL_TIME);
+        writeLong(((Date) value).getTime());
+      } else if (type == Timestamp.class) {
+        writeByte(SQL_TIMESTAMP);
+        writeLong(((Timestamp) value).getTime());
+        writeVarInt(((Timestamp) value).getNanos());
+      } else if (type == byte[].class) {
+        writeByte(BYTES);
+        writeBytes((byte[]) value);
+      } else if (value instanceof Enum) {
+        writeByte(ENUM);
+        writeVarInt(classInfo(((Enum<?>) value).getDeclaringClass()).id);
+        writeVarInt(((Enum<?>) value).ordinal());
+      } else {
+        writeReference(value, type);
+      }
+    }
+
+    /**
+     * 可能被多次引用的对象
+     */
+    private void writeReference(Object value, Class<?> type) throws Exception {
+      Integer reference = references.get(value);
+      if (reference != null) {
+        writeByte(REF);
+        writeVarInt(reference);
+        return;
+      }
+      if (type.isArray() && !type.getComponentType().isPrimitive()) {
+        references.put(value, references.size());
+        Object[] array = (Object[]) value;
+        writeByte(ARRAY);
+        writeVarInt(classInfo(type.getComponentType()).id);
+        writeVarInt(array.length);
+        for (Object element : array) {
+          writeValue(element);
+        }
+        return;
+      }
+      ClassInfo info = classInfo(type);
+      if (info.constructor != null && !info.isBean() && value instanceof Collection) {
+        references.put(value, references.size());
+        Collection<?> collection = (Collection<?>) value;
+        writeByte(COLLECTION);
+        writeVarInt(info.id);
+        writeVarInt(collection.size());
+        for (Object element : collection) {
+          writeValue(element);
+        }
+      } else if (info.constructor != null && !info.isBean() && value instanceof Map) {
+        references.put(value, references.size());
+        Map<?, ?> map = (Map<?, ?>) value;
+        writeByte(MAP);
+        writeVarInt(info.id);
+        writeVarInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          writeValue(entry.getKey());
+          writeValue(entry.getValue());
+        }
+      } else if (info.isBean()) {
+        references.put(value, references.size());
+        writeByte(OBJECT);
+        writeVarInt(info.id);
+        for (Field field : info.fields) {
+          writeField(value, field);
+        }
+      } else if (value instanceof Serializable) {
+        references.put(value, references.size());
+        writeByte(JAVA);
+        writeBytes(fallback.encode(value));
+      } else {
+        throw new CacheException("CompactCodec failed to encode a non-serializable object: " + value);
+      }
+    }
+
+    private void writeField(Object target, Field field) throws Exception {
+      Class<?> type = field.getType();
+      if (!type.isPrimitive()) {
+        writeValue(field.get(target));
+      } else if (type == int.class) {
+        writeVarInt(zigZag(field.getInt(target)));
+      } else if (type == long.class) {
+        writeVarLong(zigZag(field.getLong(target)));
+      } else if (type == boolean.class) {
+        writeByte(field.getBoolean(target) ? 1 : 0);
+      } else if (type == double.class) {
+        writeLong(Double.doubleToRawLongBits(field.getDouble(target)));
+      } else if (type == float.class) {
+        writeInt(Float.floatToRawIntBits(field.getFloat(target)));
+      } else if (type == short.class) {
+        writeVarInt(zigZag(field.getShort(target)));
+      } else if (type == byte.class) {
+        writeByte(field.getByte(target));
+      } else {
+        writeVarInt(field.getChar(target));
+      }
+    }
+
+    private void ensureCapacity(int length) {
+      if (position + length > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+      }
+    }
+
+    private void writeByte(int value) {
+      ensureCapacity(1);
+      buffer[position++] = (byte) value;
+    }
+
+    private void writeVarInt(int value) {
+      ensureCapacity(5);
+      while ((value & ~0x7F) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    private void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+      ensureCapacity(4);
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    private void writeLong(long value) {
+      ensureCapacity(8);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        buffer[position++] = (byte) (value >>> shift);
+      }
+    }
+
+    private void writeBytes(byte[] bytes) {
+      writeVarInt(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    private void writeString(String value) {
+      writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+  }
+
+  /**
+   * 解码一个值，非线程安全，每次解码新建
+   */
+  private final class Decoder {
+
+    private final byte[] buffer;
+    private int position;
+    private final List<Object> references = new ArrayList<>();
+
+    Decoder(byte[] buffer) {
+      this.buffer = buffer;
+    }
+
+    @SuppressWarnings("unchecked")
+    Object readValue() throws Exception {
+      int tag = readByte();
+      switch (tag) {
+        case NULL:
+          return null;
+        case REF:
+          return references.get(readVarInt());
+        case STRING:
+          return readString();
+        case INTEGER:
+          return unZigZag(readVarInt());
+        case LONG:
+          return unZigZag(readVarLong());
+        case SHORT:
+          return (short) unZigZag(readVarInt());
+        case BYTE:
+          return (byte) readByte();
+        case TRUE:
+          return Boolean.TRUE;
+        case FALSE:
+          return Boolean.FALSE;
+        case CHARACTER:
+          return (char) readVarInt();
+        case DOUBLE:
+          return Double.longBitsToDouble(readLong());
+        case FLOAT:
+          return Float.intBitsToFloat(readInt());
+        case BIG_DECIMAL:
+          int scale = unZigZag(readVarInt());
+          return new BigDecimal(new BigInteger(readBytes()), scale);
+        case BIG_INTEGER:
+          return new BigInteger(readBytes());
+        case DATE:
+          return new Date(readLong());
+        case SQL_DATE:
+          return new java.sql.Date(readLong());
+        case SQL_TIME:
+          return new Time(readLong());
+        case SQL_TIMESTAMP:
+          Timestamp timestamp = new Timestamp(readLong());
+          timestamp.setNanos(readVarInt());
+          return timestamp;
+        case BYTES:
+          return readBytes();
+        case ENUM:
+          Object[] constants = classInfo(readVarInt()).enumConstants;
+          return constants[readVarInt()];
+        case COLLECTION:
+          ClassInfo collectionInfo = classInfo(readVarInt());
+          Collection<Object> collection = (Collection<Object>) collectionInfo.newInstance();
+          references.add(collection);
+          for (int i = readVarInt(); i > 0; i--) {
+            collection.add(readValue());
+          }
+          return collection;
+        case MAP:
+          ClassInfo mapInfo = classInfo(readVarInt());
+          Map<Object, Object> map = (Map<Object, Object>) mapInfo.newInstance();
+          references.add(map);
+          for (int i = readVarInt(); i > 0; i--) {
+            map.put(readValue(), readValue());
+          }
+          return map;
+        case ARRAY:
+          Class<?> componentType = classInfo(readVarInt()).type;
+          Object[] array = (Object[]) Array.newInstance(componentType, readVarInt());
+          references.add(array);
+          for (int i = 0; i < array.length; i++) {
+            array[i] = readValue();
+          }
+          return array;
+        case OBJECT:
+          ClassInfo info = classInfo(readVarInt());
+          Object object = info.newInstance();
+          references.add(object);
+          for (Field field : info.fields) {
+            readField(object, field);
+          }
+          return object;
+        case JAVA:
+          Object value = fallback.decode(readBytes());
+          references.add(value);
+          return value;
+        default:
+          throw new CacheException("Unknown tag " + tag + " in cached value.");
+      }
+    }
+
+    private void readField(Object target, Field field) throws Exception {
+      Class<?> type = field.getType();
+      if (!type.isPrimitive()) {
+        field.set(target, readValue());
+      } else if (type == int.class) {
+        field.setInt(target, unZigZag(readVarInt()));
+      } else if (type == long.class) {
+        field.setLong(target, unZigZag(readVarLong()));
+      } else if (type == boolean.class) {
+        field.setBoolean(target, readByte() != 0);
+      } else if (type == double.class) {
+        field.setDouble(target, Double.longBitsToDouble(readLong()));
+      } else if (type == float.class) {
+        field.setFloat(target, Float.intBitsToFloat(readInt()));
+      } else if (type == short.class) {
+        field.setShort(target, (short) unZigZag(readVarInt()));
+      } else if (type == byte.class) {
+        field.setByte(target, (byte) readByte());
+      } else {
+        field.setChar(target, (char) readVarInt());
+      }
+    }
+
+    private int readByte() {
+      return buffer[position++];
+    }
+
+    private int readVarInt() {
+      int result = 0;
+      for (int shift = 0; ; shift += 7) {
+        int b = buffer[position++];
+        result |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+    }
+
+    private long readVarLong() {
+      long result = 0;
+      for (int shift = 0; ; shift += 7) {
+        long b = buffer[position++];
+        result |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+    }
+
+    private int readInt() {
+      int result = 0;
+      for (int i = 0; i < 4; i++) {
+        result = (result << 8) | (buffer[position++] & 0xFF);
+      }
+      return result;
+    }
+
+    private long readLong() {
+      long result = 0;
+      for (int i = 0; i < 8; i++) {
+        result = (result << 8) | (buffer[position++] & 0xFF);
+      }
+      return result;
+    }
+
+    private byte[] readBytes() {
+      int length = readVarInt();
+      byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+      position += length;
+      return bytes;
+    }
+
+    private String readString() {
+      int length = readVarInt();
+      String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+  }
+
+  private static int zigZag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static int unZigZag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+}
@@ -15,26 +15,31 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.ThreadSafeCache;
 
 /**
  * 阻塞的缓存
  * Simple blocking decorator
  *
- * Simple and inefficient version of EhCache's BlockingCache decorator.
- * It sets a lock over a cache key when the element is not found in cache.
- * This way, other threads will wait until this element is filled instead of hitting the database.
+ * Single-flight version of EhCache's BlockingCache decorator.
+ * When the element is not found in cache, the first thread registers an in-flight load for the key and
+ * goes to the database. Other threads missing the same key wait on that load instead of hitting the database,
+ * and read the value from the cache once it has been put (or the load has been abandoned).
+ * With a timeout set, a load whose owner has not finished within the timeout expires: the waiter that timed out
+ * drops it, and the next reader that finds it takes over the load instead of waiting.
  *
  * @author Eduardo Macarron
  */
-public class BlockingCache implements Cache {
+public class BlockingCache implements ThreadSafeCache {
 
   /**
    * 超时时间
@@ -45,13 +50,13 @@ public class BlockingCache implements Cache {
    */
   private final Cache delegate;
   /**
-   * 每个对象对应一个lock
+   * 正在加载的key，加载完成（put）或放弃（remove）后即移除，不会像每个key一个lock那样一直累积
    */
-  private final ConcurrentHashMap<Object, ReentrantLock> locks;
+  private final ConcurrentHashMap<Object, Load> inFlight;
 
   public BlockingCache(Cache delegate) {
     this.delegate = delegate;
-    this.locks = new ConcurrentHashMap<>();
+    this.inFlight = new ConcurrentHashMap<>();
   }
 
   @Override
@@ -69,18 +74,46 @@ public class BlockingCache implements Cache {
     try {
       delegate.putObject(key, value);
     } finally {
-      releaseLock(key);
+      // 值已经放入缓存，任何线程的put都可以唤醒等待者
+      release(key, inFlight.remove(key));
     }
   }
 
   @Override
   public Object getObject(Object key) {
-    //查询缓存时，先获取锁
-    acquireLock(key);
+    // 命中时不做任何登记
     Object value = delegate.getObject(key);
-    //有缓存时才释放锁
-    if (value != null) {
-      releaseLock(key);
+    while (value == null) {
+      Load load = new Load();
+      Load existing = inFlight.putIfAbsent(key, load);
+      if (existing == null) {
+        // 登记之后再查一次，避免错过登记之前刚完成的加载
+        value = delegate.getObject(key);
+        if (value != null) {
+          release(key, load);
+        }
+        // 未命中，由当前线程加载，调用方随后必须put或remove该key
+        return value;
+      }
+      if (existing.owner == Thread.currentThread()) {
+        // 同一线程重复查询正在由自己加载的key（同一会话内），不能等待自己
+        return null;
+      }
+      if (existing.isExpired(timeout)) {
+        // 加载者超时未完成，接手加载，唤醒的等待者转而等待新的加载
+        if (inFlight.replace(key, existing, load)) {
+          existing.done.complete(null);
+          value = delegate.getObject(key);
+          if (value != null) {
+            release(key, load);
+          }
+          return value;
+        }
+        value = delegate.getObject(key);
+        continue;
+      }
+      await(key, existing);
+      value = delegate.getObject(key);
     }
     return value;
   }
@@ -88,7 +121,11 @@ public class BlockingCache implements Cache {
   @Override
   public Object removeObject(Object key) {
     // despite of its name, this method is called only to release locks
-    releaseLock(key);
+    // 只有加载者本身才能放弃加载
+    Load load = inFlight.get(key);
+    if (load != null && load.owner == Thread.currentThread()) {
+      release(key, load);
+    }
     return null;
   }
 
@@ -102,30 +139,36 @@ public class BlockingCache implements Cache {
     return null;
   }
 
-  private ReentrantLock getLockForKey(Object key) {
-    return locks.computeIfAbsent(key, k -> new ReentrantLock());
+  /**
+   * 正在加载的key的个数
+   */
+  public int getInFlightCount() {
+    return inFlight.size();
   }
 
-  private void acquireLock(Object key) {
-    Lock lock = getLockForKey(key);
-    if (timeout > 0) {
-      try {
-        boolean acquired = lock.tryLock(timeout, TimeUnit.MILLISECONDS);
-        if (!acquired) {
-          throw new CacheException("Couldn't get a lock in " + timeout + " for the key " +  key + " at the cache " + delegate.getId());
-        }
-      } catch (InterruptedException e) {
-        throw new CacheException("Got interrupted while trying to acquire lock for key " + key, e);
+  private void await(Object key, Load load) {
+    try {
+      if (timeout > 0) {
+        load.done.get(timeout, TimeUnit.MILLISECONDS);
+      } else {
+        load.done.get();
       }
-    } else {
-      lock.lock();
+    } catch (TimeoutException e) {
+      // 加载已超时，让下一个读取者接手
+      release(key, load);
+      throw new CacheException("Couldn't get a lock in " + timeout + " for the key " +  key + " at the cache " + delegate.getId());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CacheException("Got interrupted while trying to acquire lock for key " + key, e);
+    } catch (ExecutionException e) {
+      // 不会发生，加载只会正常完成
     }
   }
 
-  private void releaseLock(Object key) {
-    ReentrantLock lock = locks.get(key);
-    if (lock.isHeldByCurrentThread()) {
-      lock.unlock();
+  private void release(Object key, Load load) {
+    if (load != null) {
+      inFlight.remove(key, load);
+      load.done.complete(null);
     }
   }
 
@@ -136,4 +179,29 @@ public class BlockingCache implements Cache {
   public void setTimeout(long timeout) {
     this.timeout = timeout;
   }
+
+  /**
+   * 一次进行中的加载
+   */
+  private static final class Load {
+    /**
+     * 加载者
+     */
+    private final Thread owner = Thread.currentThread();
+    /**
+     * 开始加载的时间，纳秒
+     */
+    private final long startedAt = System.nanoTime();
+    /**
+     * 加载完成或放弃时完成
+     */
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    /**
+     * 加载者是否超过timeout仍未完成，timeout为0时不会超时
+     */
+    boolean isExpired(long timeout) {
+      return timeout > 0 && System.nanoTime() - startedAt >= TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+  }
 }
@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
+
+/**
+ * 清空时通知其他节点的缓存，收到其他节点的通知时只清空本地缓存
+ *
+ * @since 3.5.1
+ */
+public class BroadcastingCache implements ThreadSafeCache {
+
+  /**
+   * 装饰的缓存
+   */
+  private final Cache delegate;
+  /**
+   * 失效总线
+   */
+  private final InvalidationBus bus;
+
+  public BroadcastingCache(Cache delegate, InvalidationBus bus) {
+    this.delegate = delegate;
+    this.bus = bus;
+    bus.subscribe(delegate.getId(), cacheId -> delegate.clear());
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    bus.publish(getId());
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
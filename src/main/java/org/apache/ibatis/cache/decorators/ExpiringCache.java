@@ -0,0 +1,440 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.LongSupplier;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+
+/**
+ * 按缓存项过期的缓存，每个缓存项在放入timeToLive毫秒后过期，而不是像 {@link ScheduledCache} 那样定时清空整个缓存。
+ * <p>
+ * 读取时发现过期立即移除（懒过期），有缓存项时后台线程每隔sweepInterval按放入顺序清理已过期的缓存项，
+ * 所有缓存项的生存时间相同，所以放入顺序就是过期顺序，清理只需从队头开始，不用扫描整个缓存。
+ * 设置了refreshAhead时，缓存项在过期前refreshAhead毫秒内第一次被读取时返回null，
+ * 由这一个调用者重新查询并放入，其他调用者继续读到原来的值，避免过期时大量请求同时穿透到数据库。
+ * 这个调用者在refreshAhead的一半时间内没有放入（如查询失败）时，下一个读取的调用者接着刷新。
+ * <p>
+ * 每个key只记录一个过期时间，重新放入时替换原来的记录。装饰的缓存会淘汰条目时（如 {@link LruCache}），
+ * 需要用 {@link RemovalTracker} 装饰最底层的缓存，淘汰的条目才会同时删除过期记录，
+ * 否则过期记录要等到过期时才删除，CacheBuilder会自动加上。
+ * <p>
+ * 同一个key的放入、删除和过期按key分段加锁，过期记录和放入的值总是成对的。
+ * 装饰的缓存必须线程安全，CacheBuilder会在需要时在下面加上 {@link SynchronizedCache}。
+ *
+ * @since 3.5.1
+ */
+public class ExpiringCache implements ThreadSafeCache {
+
+  /**
+   * key分段锁的个数
+   */
+  private static final int LOCK_STRIPES = 64;
+  /**
+   * 还没有调用者提前刷新
+   */
+  private static final long NOT_REFRESHING = Long.MIN_VALUE;
+
+  /**
+   * 装饰的缓存
+   */
+  private final Cache delegate;
+  /**
+   * 缓存项的生存时间，毫秒
+   */
+  private volatile long timeToLive = 60 * 60 * 1000; // 1 hour
+  /**
+   * 过期前多少毫秒开始提前刷新，0表示不提前刷新
+   */
+  private volatile long refreshAhead;
+  /**
+   * 后台清理的间隔，毫秒
+   */
+  private volatile long sweepInterval = 1000;
+  /**
+   * 当前时间，毫秒
+   */
+  private volatile LongSupplier clock = System::currentTimeMillis;
+  /**
+   * 记录过期的条目数，为null时不记录
+   */
+  private volatile CacheMetrics metrics;
+  /**
+   * 上次后台清理的时间
+   */
+  private volatile long lastSweep;
+  /**
+   * 缓存项的过期时间，不包装缓存的值，装饰的缓存（如 WeightedCache）看到的仍是原来的值。
+   * 读时不加锁，修改时和expiryOrder一起在expiryOrder的锁内进行
+   */
+  private final ConcurrentHashMap<Object, Expiration> expirations = new ConcurrentHashMap<>();
+  /**
+   * 按放入顺序排列的过期时间，每个key只有一项
+   */
+  private final LinkedHashMap<Object, Expiration> expiryOrder = new LinkedHashMap<>();
+  /**
+   * 按key分段的锁，放入、删除和过期时在expiryOrder和下层缓存的锁之前获取，不会互相等待
+   */
+  private final Object[] locks = new Object[LOCK_STRIPES];
+  /**
+   * 是否已注册到 {@link ExpirySweeper}，在expiryOrder的锁内读写
+   */
+  private boolean registered;
+
+  public ExpiringCache(Cache delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * @param delegate 装饰的缓存
+   * @param removals 装饰最底层缓存的 {@link RemovalTracker}，为null时不跟踪下层的淘汰
+   */
+  public ExpiringCache(Cache delegate, RemovalTracker removals) {
+    this.delegate = delegate;
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+    this.lastSweep = clock.getAsLong();
+    if (removals != null) {
+      removals.owner = this;
+    }
+  }
+
+  public long getTimeToLive() {
+    return timeToLive;
+  }
+
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  public long getRefreshAhead() {
+    return refreshAhead;
+  }
+
+  public void setRefreshAhead(long refreshAhead) {
+    this.refreshAhead = refreshAhead;
+  }
+
+  public long getSweepInterval() {
+    return sweepInterval;
+  }
+
+  public void setSweepInterval(long sweepInterval) {
+    this.sweepInterval = sweepInterval;
+  }
+
+  /**
+   * 替换读取当前时间的时钟，默认为 {@link System#currentTimeMillis()}，主要用于测试
+   */
+  public void setClock(LongSupplier clock) {
+    this.clock = clock;
+    this.lastSweep = clock.getAsLong();
+  }
+
+  /**
+   * 过期删除的条目计入metrics的过期数，不计入淘汰数
+   *
+   * @since 3.5.1
+   */
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    // 同一个key的放入按顺序记录过期时间和放入值，不会出现值和过期时间来自不同放入的情况
+    synchronized (lockFor(key)) {
+      Expiration expiration = new Expiration(key, clock.getAsLong() + timeToLive);
+      boolean register;
+      synchronized (expiryOrder) {
+        // 先删除再放入，重新放入的key移到队尾
+        expiryOrder.remove(key);
+        expiryOrder.put(key, expiration);
+        expirations.put(key, expiration);
+        register = !registered;
+        registered = true;
+      }
+      if (register) {
+        // 有缓存项后才需要后台清理
+        ExpirySweeper.register(this);
+      }
+      // 在expiryOrder的锁外放入，下层淘汰时会回调untrack，避免和下层的锁互相等待
+      delegate.putObject(key, value);
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (value == null) {
+      return null;
+    }
+    Expiration expiration = expirations.get(key);
+    if (expiration == null) {
+      // 并发的淘汰删掉了刚放入的过期记录，没有过期时间的条目不能一直留着
+      delegate.removeObject(key);
+      return null;
+    }
+    long now = clock.getAsLong();
+    if (now >= expiration.expiresAt) {
+      expire(expiration);
+      return null;
+    }
+    if (refreshAhead > 0 && now >= expiration.expiresAt - refreshAhead && claimRefresh(expiration, now)) {
+      return null;
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    synchronized (lockFor(key)) {
+      untrack(key);
+      return delegate.removeObject(key);
+    }
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    untrackAll();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  /**
+   * 只让一个调用者提前刷新，它在refreshAhead的一半时间内没有放入时让下一个调用者接着刷新
+   */
+  private boolean claimRefresh(Expiration expiration, long now) {
+    long claimed = expiration.refreshClaimedAt.get();
+    if (claimed != NOT_REFRESHING && now - claimed < refreshAhead / 2) {
+      return false;
+    }
+    return expiration.refreshClaimedAt.compareAndSet(claimed, now);
+  }
+
+  /**
+   * 由 {@link ExpirySweeper} 调用，没有缓存项时返回false，取消注册，直到再次放入
+   */
+  boolean sweepIfDue() {
+    long now = clock.getAsLong();
+    if (now - lastSweep >= sweepInterval) {
+      lastSweep = now;
+      sweep(now);
+    }
+    synchronized (expiryOrder) {
+      registered = !expiryOrder.isEmpty();
+      return registered;
+    }
+  }
+
+  /**
+   * 清理到now为止已过期的缓存项
+   */
+  void sweep(long now) {
+    List<Object> expiredKeys = new ArrayList<>();
+    synchronized (expiryOrder) {
+      Iterator<Expiration> iterator = expiryOrder.values().iterator();
+      while (iterator.hasNext()) {
+        Expiration expiration = iterator.next();
+        if (expiration.expiresAt > now) {
+          break;
+        }
+        iterator.remove();
+        expirations.remove(expiration.key, expiration);
+        expiredKeys.add(expiration.key);
+      }
+    }
+    for (Object key : expiredKeys) {
+      synchronized (lockFor(key)) {
+        // 清理期间又放入的key有新的过期记录，不能删除新值
+        if (!expirations.containsKey(key) && delegate.removeObject(key) != null) {
+          recordExpiration();
+        }
+      }
+    }
+  }
+
+  /**
+   * 之后又放入过的缓存项有新的Expiration，不会被移除
+   */
+  private void expire(Expiration expiration) {
+    synchronized (lockFor(expiration.key)) {
+      boolean removed;
+      synchronized (expiryOrder) {
+        removed = expirations.remove(expiration.key, expiration);
+        if (removed) {
+          expiryOrder.remove(expiration.key);
+        }
+      }
+      if (removed && delegate.removeObject(expiration.key) != null) {
+        recordExpiration();
+      }
+    }
+  }
+
+  private void recordExpiration() {
+    CacheMetrics current = metrics;
+    if (current != null) {
+      current.recordExpiration();
+    }
+  }
+
+  private Object lockFor(Object key) {
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    return locks[h & (LOCK_STRIPES - 1)];
+  }
+
+  /**
+   * 删除一个key的过期记录
+   */
+  void untrack(Object key) {
+    synchronized (expiryOrder) {
+      if (expirations.remove(key) != null) {
+        expiryOrder.remove(key);
+      }
+    }
+  }
+
+  private void untrackAll() {
+    synchronized (expiryOrder) {
+      expirations.clear();
+      expiryOrder.clear();
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+  /**
+   * 一个缓存项的过期时间
+   */
+  private static final class Expiration {
+    private final Object key;
+    private final long expiresAt;
+    /**
+     * 提前刷新的调用者开始刷新的时间，还没有调用者刷新时为NOT_REFRESHING
+     */
+    private final AtomicLong refreshClaimedAt = new AtomicLong(NOT_REFRESHING);
+
+    Expiration(Object key, long expiresAt) {
+      this.key = key;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * 直接装饰基础缓存，把下层的删除（包括淘汰装饰器的淘汰）通知给 {@link ExpiringCache}，
+   * 让过期记录的数量不超过缓存实际保存的条目数。
+   * 本身没有状态，线程安全由被装饰的缓存和外层的装饰器保证。
+   */
+  public static class RemovalTracker implements ThreadSafeCache {
+
+    private final Cache delegate;
+    private volatile ExpiringCache owner;
+
+    public RemovalTracker(Cache delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public String getId() {
+      return delegate.getId();
+    }
+
+    @Override
+    public int getSize() {
+      return delegate.getSize();
+    }
+
+    @Override
+    public void putObject(Object key, Object value) {
+      delegate.putObject(key, value);
+    }
+
+    @Override
+    public Object getObject(Object key) {
+      return delegate.getObject(key);
+    }
+
+    @Override
+    public Object removeObject(Object key) {
+      Object value = delegate.removeObject(key);
+      ExpiringCache current = owner;
+      if (current != null) {
+        current.untrack(key);
+      }
+      return value;
+    }
+
+    @Override
+    public void clear() {
+      delegate.clear();
+      ExpiringCache current = owner;
+      if (current != null) {
+        current.untrackAll();
+      }
+    }
+
+    @Override
+    public ReadWriteLock getReadWriteLock() {
+      return null;
+    }
+
+    @Override
+    public int hashCode() {
+      return delegate.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return delegate.equals(obj);
+    }
+
+  }
+
+}
@@ -0,0 +1,89 @@
+/**
+ *    Copyright 2009-2017 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 所有 {@link ExpiringCache} 共用的后台线程。
+ * <p>
+ * 每隔 {@link #TICK} 毫秒按各缓存的sweepInterval清理已过期的缓存项。缓存有缓存项时才注册，
+ * 清空后取消注册，没有注册的缓存时线程停止，再次注册时重新启动。只弱引用缓存，缓存被回收后自动移除。
+ */
+final class ExpirySweeper {
+
+  private static final Log log = LogFactory.getLog(ExpirySweeper.class);
+
+  /**
+   * 检查的间隔，即sweepInterval的精度，毫秒
+   */
+  static final long TICK = 100;
+
+  private static final List<WeakReference<ExpiringCache>> caches = new CopyOnWriteArrayList<>();
+
+  private static ScheduledExecutorService executor;
+
+  private ExpirySweeper() {
+  }
+
+  static synchronized void register(ExpiringCache cache) {
+    caches.add(new WeakReference<>(cache));
+    if (executor == null) {
+      executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mybatis-cache-expiry");
+        thread.setDaemon(true);
+        return thread;
+      });
+      executor.scheduleWithFixedDelay(ExpirySweeper::tick, TICK, TICK, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static void tick() {
+    for (WeakReference<ExpiringCache> ref : caches) {
+      ExpiringCache cache = ref.get();
+      if (cache == null) {
+        caches.remove(ref);
+        continue;
+      }
+      try {
+        if (!cache.sweepIfDue()) {
+          caches.remove(ref);
+        }
+      } catch (Exception e) {
+        // 异常不能抛出，否则后续的调度会被取消
+        log.warn("Cache expiry sweep failed for cache " + cache.getId() + ". Cause: " + e);
+      }
+    }
+    stopIfIdle();
+  }
+
+  private static synchronized void stopIfIdle() {
+    // 在锁内检查，不会和register同时进行
+    if (caches.isEmpty() && executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+}
@@ -20,6 +20,7 @@ import java.util.LinkedList;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
 
 /**
  * fifo方式淘汰的缓存
@@ -27,7 +28,7 @@ import org.apache.ibatis.cache.Cache;
  *
  * @author Clinton Begin
  */
-public class FifoCache implements Cache {
+public class FifoCache implements ThreadSafeCache {
 
   /**
    * 修饰的缓存
@@ -40,7 +41,7 @@ public class FifoCache implements Cache {
   /**
    * 队列的上限，缓存对象大于size时，要fifo淘汰
    */
-  private int size;
+  private volatile int size;
 
   public FifoCache(Cache delegate) {
     this.delegate = delegate;
@@ -64,8 +65,11 @@ public class FifoCache implements Cache {
 
   @Override
   public void putObject(Object key, Object value) {
-    cycleKeyList(key);
-    delegate.putObject(key, value);
+    //读操作不访问keyList，只在写操作时加锁
+    synchronized (keyList) {
+      cycleKeyList(key);
+      delegate.putObject(key, value);
+    }
   }
 
   @Override
@@ -80,8 +84,10 @@ public class FifoCache implements Cache {
 
   @Override
   public void clear() {
-    delegate.clear();
-    keyList.clear();
+    synchronized (keyList) {
+      delegate.clear();
+      keyList.clear();
+    }
   }
 
   @Override
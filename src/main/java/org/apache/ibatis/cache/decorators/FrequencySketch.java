@@ -0,0 +1,133 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Arrays;
+
+/**
+ * 近似统计访问频率的Count-Min Sketch，供 {@link TinyLfuCache} 判断是否准入。
+ * <p>
+ * 每个计数器4位，16个计数器压缩在一个long中，每个key对应4个计数器，取最小值作为频率。
+ * 累计次数达到样本大小时所有计数器减半，使旧的热点逐渐冷却。
+ * 非线程安全，由调用方加锁。
+ */
+class FrequencySketch {
+
+  private static final long[] SEED = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  /**
+   * 计数器表
+   */
+  private long[] table;
+  private int tableMask;
+  /**
+   * 减半之前的样本大小
+   */
+  private int sampleSize;
+  /**
+   * 自上次减半以来的累计次数
+   */
+  private int size;
+
+  FrequencySketch(int maximumSize) {
+    ensureCapacity(maximumSize);
+  }
+
+  /**
+   * 按缓存的最大容量调整表大小，调整后之前的统计清零
+   */
+  void ensureCapacity(int maximumSize) {
+    int maximum = Math.max(maximumSize, 1);
+    int length = maximum >= (1 << 30) ? (1 << 30) : Integer.highestOneBit(maximum - 1) << 1;
+    if (length == 0) {
+      length = 1;
+    }
+    table = new long[length];
+    tableMask = length - 1;
+    sampleSize = 10 * maximum > 0 ? 10 * maximum : Integer.MAX_VALUE;
+    size = 0;
+  }
+
+  /**
+   * key的估计频率，最大为15
+   */
+  int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * key的频率加1，计数器已满时不变
+   */
+  void increment(Object key) {
+    int hash = spread(key.hashCode());
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++size == sampleSize) {
+      reset();
+    }
+  }
+
+  void clear() {
+    Arrays.fill(table, 0L);
+    size = 0;
+  }
+
+  private boolean incrementAt(int index, int counter) {
+    int offset = counter << 2;
+    long mask = 0xfL << offset;
+    if ((table[index] & mask) != mask) {
+      table[index] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * 所有计数器减半
+   */
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = size >>> 1;
+  }
+
+  private int indexOf(int hash, int i) {
+    long h = (hash + SEED[i]) * SEED[i];
+    h += h >>> 32;
+    return ((int) h) & tableMask;
+  }
+
+  private static int spread(int x) {
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    x = ((x >>> 16) ^ x) * 0x45d9f3b;
+    return (x >>> 16) ^ x;
+  }
+
+}
@@ -15,17 +15,19 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
 /**
- * 支持打印日志的缓存
+ * 支持打印日志的缓存，不加锁，计数使用 {@link LongAdder}，并发时不会丢失更新
  * @author Clinton Begin
  */
-public class LoggingCache implements Cache {
+public class LoggingCache implements ThreadSafeCache {
 
   /**
    * 日志对象
@@ -38,11 +40,11 @@ public class LoggingCache implements Cache {
   /**
    * 请求缓存的次数
    */
-  protected int requests = 0;
+  protected final LongAdder requests = new LongAdder();
   /**
    * 命中次数
    */
-  protected int hits = 0;
+  protected final LongAdder hits = new LongAdder();
 
   public LoggingCache(Cache delegate) {
     this.delegate = delegate;
@@ -66,10 +68,10 @@ public class LoggingCache implements Cache {
 
   @Override
   public Object getObject(Object key) {
-    requests++;
+    requests.increment();
     final Object value = delegate.getObject(key);
     if (value != null) {
-      hits++;
+      hits.increment();
     }
     if (log.isDebugEnabled()) {
       log.debug("Cache Hit Ratio [" + getId() + "]: " + getHitRatio());
@@ -103,7 +105,7 @@ public class LoggingCache implements Cache {
   }
 
   private double getHitRatio() {
-    return (double) hits / (double) requests;
+    return (double) hits.sum() / (double) requests.sum();
   }
 
 }
@@ -18,16 +18,21 @@ package org.apache.ibatis.cache.decorators;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
 
 /**
  * lru淘汰的缓存
  * Lru (least recently used) cache decorator.
+ * <p>
+ * keyMap由内部锁保护。读操作只在拿到锁时才更新访问顺序，锁被占用时跳过，不阻塞读，
+ * 因此并发读多时淘汰顺序是近似的lru，单线程下与原来完全一致。
  *
  * @author Clinton Begin
  */
-public class LruCache implements Cache {
+public class LruCache implements ThreadSafeCache {
 
   private final Cache delegate;
   /**
@@ -38,6 +43,10 @@ public class LruCache implements Cache {
    * 最老的key
    */
   private Object eldestKey;
+  /**
+   * 保护keyMap和eldestKey
+   */
+  private final ReentrantLock lock = new ReentrantLock();
 
   public LruCache(Cache delegate) {
     this.delegate = delegate;
@@ -55,7 +64,16 @@ public class LruCache implements Cache {
   }
 
   public void setSize(final int size) {
-    keyMap = new LinkedHashMap<Object, Object>(size, .75F, true) {
+    lock.lock();
+    try {
+      keyMap = newKeyMap(size);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Map<Object, Object> newKeyMap(final int size) {
+    return new LinkedHashMap<Object, Object>(size, .75F, true) {
       private static final long serialVersionUID = 4267176411845948333L;
 
       @Override
@@ -71,13 +89,24 @@ public class LruCache implements Cache {
 
   @Override
   public void putObject(Object key, Object value) {
-    delegate.putObject(key, value);
-    cycleKeyList(key);
+    lock.lock();
+    try {
+      delegate.putObject(key, value);
+      cycleKeyList(key);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
   public Object getObject(Object key) {
-    keyMap.get(key); //touch
+    if (lock.tryLock()) {
+      try {
+        keyMap.get(key); //touch
+      } finally {
+        lock.unlock();
+      }
+    }
     return delegate.getObject(key);
   }
 
@@ -88,8 +117,13 @@ public class LruCache implements Cache {
 
   @Override
   public void clear() {
-    delegate.clear();
-    keyMap.clear();
+    lock.lock();
+    try {
+      delegate.clear();
+      keyMap.clear();
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
@@ -18,12 +18,13 @@ package org.apache.ibatis.cache.decorators;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
 
 /**
  * 定时清空的缓存，每次涉及到数据的操作时，判断是否需要清空缓存
  * @author Clinton Begin
  */
-public class ScheduledCache implements Cache {
+public class ScheduledCache implements ThreadSafeCache {
 
   /**
    * 修饰的缓存
@@ -36,7 +37,7 @@ public class ScheduledCache implements Cache {
   /**
    * 上次清空时间
    */
-  protected long lastClear;
+  protected volatile long lastClear;
 
   public ScheduledCache(Cache delegate) {
     this.delegate = delegate;
@@ -15,33 +15,45 @@
  */
 package org.apache.ibatis.cache.decorators;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.cache.codec.CacheCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
 import org.apache.ibatis.io.Resources;
 
 /**
- * 可序列化的缓存，put时将内容序列化
+ * 可序列化的缓存，put时将内容序列化，get时反序列化得到副本，序列化方式由 {@link CacheCodec} 决定
  * @author Clinton Begin
  */
-public class SerializedCache implements Cache {
+public class SerializedCache implements ThreadSafeCache {
 
   /**
    * 装饰的缓存
    */
   private final Cache delegate;
+  /**
+   * 编解码
+   */
+  private final CacheCodec codec;
 
   public SerializedCache(Cache delegate) {
+    this(delegate, new JavaSerializationCodec());
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public SerializedCache(Cache delegate, CacheCodec codec) {
     this.delegate = delegate;
+    this.codec = codec;
   }
 
   @Override
@@ -57,7 +69,7 @@ public class SerializedCache implements Cache {
   @Override
   public void putObject(Object key, Object object) {
     if (object == null || object instanceof Serializable) {
-      delegate.putObject(key, serialize((Serializable) object));
+      delegate.putObject(key, codec.encode(object));
     } else {
       throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + object);
     }
@@ -66,7 +78,7 @@ public class SerializedCache implements Cache {
   @Override
   public Object getObject(Object key) {
     Object object = delegate.getObject(key);
-    return object == null ? null : deserialize((byte[]) object);
+    return object == null ? null : codec.decode((byte[]) object);
   }
 
   @Override
@@ -94,28 +106,6 @@ public class SerializedCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private byte[] serialize(Serializable value) {
-    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-         ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-      oos.writeObject(value);
-      oos.flush();
-      return bos.toByteArray();
-    } catch (Exception e) {
-      throw new CacheException("Error serializing object.  Cause: " + e, e);
-    }
-  }
-
-  private Serializable deserialize(byte[] value) {
-    Serializable result;
-    try (ByteArrayInputStream bis = new ByteArrayInputStream(value);
-         ObjectInputStream ois = new CustomObjectInputStream(bis)) {
-      result = (Serializable) ois.readObject();
-    } catch (Exception e) {
-      throw new CacheException("Error deserializing object.  Cause: " + e, e);
-    }
-    return result;
-  }
-
   public static class CustomObjectInputStream extends ObjectInputStream {
 
     public CustomObjectInputStream(InputStream in) throws IOException {
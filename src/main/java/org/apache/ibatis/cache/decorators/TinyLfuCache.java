@@ -0,0 +1,268 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.LinkedHashMap;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
+
+/**
+ * W-TinyLFU淘汰的缓存
+ * W-TinyLFU (window TinyLFU) cache decorator.
+ * <p>
+ * 新key先进入一个小的lru窗口(容量的1%)，从窗口淘汰出来的key要和主区域最老的key比较访问频率，
+ * 频率更高才能进入主区域，否则直接淘汰。主区域分为试用区和保护区(SLRU)，试用区的key再次被访问后升入保护区。
+ * 频率由 {@link FrequencySketch} 近似统计，因此一次性的扫描不会把热点数据挤出缓存。
+ * <p>
+ * 读操作先把key放入有界的读缓冲区，拿到锁的线程批量处理，锁被占用时不阻塞读，缓冲区满时丢弃记录。
+ *
+ * @since 3.5.1
+ */
+public class TinyLfuCache implements ThreadSafeCache {
+
+  /**
+   * 读缓冲区大小
+   */
+  private static final int READ_BUFFER_SIZE = 128;
+
+  /**
+   * 修饰的缓存
+   */
+  private final Cache delegate;
+  /**
+   * 窗口区，按访问顺序排列
+   */
+  private final LinkedHashMap<Object, Boolean> window = new LinkedHashMap<>(16, .75F, true);
+  /**
+   * 主区域的试用区
+   */
+  private final LinkedHashMap<Object, Boolean> probation = new LinkedHashMap<>(16, .75F, true);
+  /**
+   * 主区域的保护区
+   */
+  private final LinkedHashMap<Object, Boolean> protectedSegment = new LinkedHashMap<>(16, .75F, true);
+  /**
+   * 访问频率
+   */
+  private final FrequencySketch sketch;
+  /**
+   * 尚未处理的读操作
+   */
+  private final Queue<Object> readBuffer = new ArrayBlockingQueue<>(READ_BUFFER_SIZE);
+  /**
+   * 保护上面的所有结构
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  private int maximumSize;
+  private int windowMaximum;
+  private int protectedMaximum;
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    this.sketch = new FrequencySketch(1024);
+    setSize(1024);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public void setSize(int size) {
+    lock.lock();
+    try {
+      maximumSize = Math.max(size, 1);
+      windowMaximum = Math.max(maximumSize / 100, 1);
+      protectedMaximum = (int) ((maximumSize - windowMaximum) * 0.8);
+      sketch.ensureCapacity(maximumSize);
+      evict();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    lock.lock();
+    try {
+      drainReadBuffer();
+      delegate.putObject(key, value);
+      sketch.increment(key);
+      if (!onAccess(key)) {
+        window.put(key, Boolean.TRUE);
+        evict();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (value == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    // 未命中也要记录，频率统计包含未缓存的key
+    readBuffer.offer(key);
+    if (lock.tryLock()) {
+      try {
+        drainReadBuffer();
+      } finally {
+        lock.unlock();
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      window.remove(key);
+      probation.remove(key);
+      protectedSegment.remove(key);
+      return delegate.removeObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      delegate.clear();
+      readBuffer.clear();
+      window.clear();
+      probation.clear();
+      protectedSegment.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  /**
+   * 命中次数
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * 未命中次数
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * 淘汰次数
+   */
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  private void drainReadBuffer() {
+    Object key;
+    while ((key = readBuffer.poll()) != null) {
+      sketch.increment(key);
+      onAccess(key);
+    }
+  }
+
+  /**
+   * 更新已缓存的key的位置，key不在缓存中时返回false
+   */
+  private boolean onAccess(Object key) {
+    if (window.get(key) != null || protectedSegment.get(key) != null) {
+      return true;
+    }
+    if (probation.remove(key) != null) {
+      // 试用区的key再次被访问，升入保护区，保护区满时把最老的降回试用区
+      protectedSegment.put(key, Boolean.TRUE);
+      if (protectedSegment.size() > protectedMaximum) {
+        Object demoted = eldest(protectedSegment);
+        protectedSegment.remove(demoted);
+        probation.put(demoted, Boolean.TRUE);
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * 窗口区超出上限时，把窗口区最老的key作为候选者移入主区域，主区域超出上限时在候选者和试用区最老的key中淘汰频率低的
+   */
+  private void evict() {
+    while (window.size() > windowMaximum) {
+      Object candidate = eldest(window);
+      window.remove(candidate);
+      probation.put(candidate, Boolean.TRUE);
+      if (probation.size() + protectedSegment.size() > maximumSize - windowMaximum) {
+        Object victim = eldest(probation);
+        if (victim == candidate) {
+          // 试用区只有候选者，从保护区淘汰
+          if (!protectedSegment.isEmpty()) {
+            victim = eldest(protectedSegment);
+          }
+        } else if (sketch.frequency(candidate) <= sketch.frequency(victim)) {
+          victim = candidate;
+        }
+        evict(victim);
+      }
+    }
+    // 缩小容量时主区域也可能超出上限
+    while (probation.size() + protectedSegment.size() > maximumSize - windowMaximum) {
+      evict(eldest(probation.isEmpty() ? protectedSegment : probation));
+    }
+  }
+
+  private void evict(Object key) {
+    probation.remove(key);
+    protectedSegment.remove(key);
+    delegate.removeObject(key);
+    evictions.increment();
+  }
+
+  private static Object eldest(LinkedHashMap<Object, Boolean> segment) {
+    return segment.keySet().iterator().next();
+  }
+
+}
@@ -22,6 +22,8 @@ import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.TagVersions;
+import org.apache.ibatis.cache.TaggedValue;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -57,12 +59,21 @@ public class TransactionalCache implements Cache {
    * 查找不到的key
    */
   private final Set<Object> entriesMissedInCache;
+  /**
+   * 提交时失效的tag
+   */
+  private final Set<String> tagsToInvalidateOnCommit;
+  /**
+   * tag所属的版本号
+   */
+  private TagVersions tagVersions;
 
   public TransactionalCache(Cache delegate) {
     this.delegate = delegate;
     this.clearOnCommit = false;
     this.entriesToAddOnCommit = new HashMap<>();
     this.entriesMissedInCache = new HashSet<>();
+    this.tagsToInvalidateOnCommit = new HashSet<>();
   }
 
   @Override
@@ -85,6 +96,10 @@ public class TransactionalCache implements Cache {
     // issue #146
     if (clearOnCommit) {
       return null;
+    } else if (!tagsToInvalidateOnCommit.isEmpty() && object instanceof TaggedValue
+        && ((TaggedValue) object).hasAnyTag(tagsToInvalidateOnCommit)) {
+      // 本会话中已失效，但还没有提交
+      return null;
     } else {
       return object;
     }
@@ -111,9 +126,22 @@ public class TransactionalCache implements Cache {
     entriesToAddOnCommit.clear();
   }
 
+  /**
+   * 提交时只失效带有这些tag的缓存项，而不是清空整个缓存
+   */
+  public void invalidateTags(TagVersions tagVersions, String[] tags) {
+    this.tagVersions = tagVersions;
+    tagsToInvalidateOnCommit.add(TagVersions.UNTAGGED);
+    for (String tag : tags) {
+      tagsToInvalidateOnCommit.add(tag);
+    }
+  }
+
   public void commit() {
     if (clearOnCommit) {
       delegate.clear();
+    } else if (!tagsToInvalidateOnCommit.isEmpty()) {
+      tagVersions.invalidate(tagsToInvalidateOnCommit);
     }
     flushPendingEntries();
     reset();
@@ -124,10 +152,22 @@ public class TransactionalCache implements Cache {
     reset();
   }
 
+  /**
+   * 查询失败时调用，立即放弃该key的加载，等待中的线程（见 {@link BlockingCache}）不必等到会话结束
+   */
+  public void releaseMissedEntry(Object key) {
+    if (entriesToAddOnCommit.containsKey(key) || !entriesMissedInCache.remove(key)) {
+      // 已有待提交的结果，提交时释放
+      return;
+    }
+    unlockMissedEntry(key);
+  }
+
   private void reset() {
     clearOnCommit = false;
     entriesToAddOnCommit.clear();
     entriesMissedInCache.clear();
+    tagsToInvalidateOnCommit.clear();
   }
 
   private void flushPendingEntries() {
@@ -143,12 +183,16 @@ public class TransactionalCache implements Cache {
 
   private void unlockMissedEntries() {
     for (Object entry : entriesMissedInCache) {
-      try {
-        delegate.removeObject(entry);
-      } catch (Exception e) {
-        log.warn("Unexpected exception while notifiying a rollback to the cache adapter."
-            + "Consider upgrading your cache adapter to the latest version.  Cause: " + e);
-      }
+      unlockMissedEntry(entry);
+    }
+  }
+
+  private void unlockMissedEntry(Object entry) {
+    try {
+      delegate.removeObject(entry);
+    } catch (Exception e) {
+      log.warn("Unexpected exception while notifiying a rollback to the cache adapter."
+          + "Consider upgrading your cache adapter to the latest version.  Cause: " + e);
     }
   }
 
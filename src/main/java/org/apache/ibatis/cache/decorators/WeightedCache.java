@@ -0,0 +1,272 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.DefaultWeigher;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.cache.Weigher;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 按权重淘汰的缓存
+ * Weight-bounded LRU cache decorator.
+ * <p>
+ * 每个缓存(即每个namespace)有一个总权重上限maximumWeight，超出时按lru淘汰，直到总权重回到上限以内。
+ * 权重由 {@link Weigher} 估算，默认的 {@link DefaultWeigher} 按结果的行数计算，readWrite缓存按序列化后的字节数计算。
+ * 两种单位不同，没有设置maximumWeight时readOnly缓存默认 {@value #DEFAULT_MAXIMUM_ROWS} 行，
+ * readWrite缓存默认 {@value #DEFAULT_MAXIMUM_BYTES} 字节；使用自定义的weigher时应同时设置maximumWeight。
+ * 权重超过上限的单个结果不缓存。按条目数限制的size不适用，设置时忽略并打印警告。
+ * <pre>
+ * &lt;cache eviction="WEIGHTED"&gt;
+ *   &lt;property name="maximumWeight" value="100000"/&gt;
+ *   &lt;property name="weigherType" value="com.example.RowBytesWeigher"/&gt;
+ * &lt;/cache&gt;
+ * </pre>
+ * 与 {@link LruCache} 一样，读操作只在拿到锁时才更新访问顺序。
+ *
+ * @since 3.5.1
+ */
+public class WeightedCache implements ThreadSafeCache {
+
+  private static final Log log = LogFactory.getLog(WeightedCache.class);
+
+  /**
+   * readOnly缓存默认的总权重上限，行数
+   */
+  public static final long DEFAULT_MAXIMUM_ROWS = 10000;
+  /**
+   * readWrite缓存默认的总权重上限，序列化后的字节数
+   */
+  public static final long DEFAULT_MAXIMUM_BYTES = 16 * 1024 * 1024;
+
+  /**
+   * 修饰的缓存
+   */
+  private final Cache delegate;
+  /**
+   * key和权重，按访问顺序排列
+   */
+  private final LinkedHashMap<Object, Integer> weights = new LinkedHashMap<>(16, .75F, true);
+  /**
+   * 保护weights和totalWeight
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+  /**
+   * 当前总权重
+   */
+  private long totalWeight;
+  /**
+   * 总权重上限，0表示没有设置，按serialized使用默认值
+   */
+  private volatile long maximumWeight;
+  /**
+   * 缓存的值是否是序列化后的字节
+   */
+  private volatile boolean serialized;
+  /**
+   * 权重估算
+   */
+  private volatile Weigher weigher = new DefaultWeigher();
+
+  public WeightedCache(Cache delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  public long getMaximumWeight() {
+    long maximum = maximumWeight;
+    if (maximum > 0) {
+      return maximum;
+    }
+    return serialized ? DEFAULT_MAXIMUM_BYTES : DEFAULT_MAXIMUM_ROWS;
+  }
+
+  public void setMaximumWeight(long maximumWeight) {
+    if (maximumWeight <= 0) {
+      throw new CacheException("maximumWeight must be greater than 0 but was " + maximumWeight);
+    }
+    lock.lock();
+    try {
+      this.maximumWeight = maximumWeight;
+      evict();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean isSerialized() {
+    return serialized;
+  }
+
+  /**
+   * 缓存的值是否是序列化后的字节(readWrite缓存)，没有设置maximumWeight时决定默认上限的单位，
+   * 由CacheBuilder设置
+   */
+  public void setSerialized(boolean serialized) {
+    lock.lock();
+    try {
+      this.serialized = serialized;
+      evict();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * 按权重淘汰时条目数不起作用，忽略size并打印警告，避免配置被悄悄忽略。
+   * {@link org.apache.ibatis.annotations.CacheNamespace#size()} 总有默认值，所以不抛出异常
+   */
+  public void setSize(int size) {
+    log.warn("Cache " + getId() + " is bounded by the maximumWeight property of WeightedCache (currently "
+        + getMaximumWeight() + "), the size " + size + " is ignored.");
+  }
+
+  public Weigher getWeigher() {
+    return weigher;
+  }
+
+  public void setWeigher(Weigher weigher) {
+    this.weigher = weigher;
+  }
+
+  /**
+   * 通过类名设置权重估算，用于&lt;property&gt;配置
+   */
+  public void setWeigherType(String weigherType) {
+    try {
+      setWeigher((Weigher) Resources.classForName(weigherType).getDeclaredConstructor().newInstance());
+    } catch (Exception e) {
+      throw new CacheException("Could not instantiate weigher '" + weigherType + "'.  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * 当前总权重
+   */
+  public long getTotalWeight() {
+    lock.lock();
+    try {
+      return totalWeight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    // 估算可能较慢，在锁外进行
+    int weight = weigher.weigh(key, value);
+    if (weight < 0) {
+      throw new CacheException("Weigher returned a negative weight " + weight + " for key " + key);
+    }
+    lock.lock();
+    try {
+      Integer previous;
+      if (weight > getMaximumWeight()) {
+        // 单个结果就超过上限，不缓存，同时移除旧值
+        delegate.removeObject(key);
+        previous = weights.remove(key);
+      } else {
+        delegate.putObject(key, value);
+        previous = weights.put(key, weight);
+        totalWeight += weight;
+      }
+      if (previous != null) {
+        totalWeight -= previous;
+      }
+      evict();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    if (lock.tryLock()) {
+      try {
+        weights.get(key); //touch
+      } finally {
+        lock.unlock();
+      }
+    }
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    lock.lock();
+    try {
+      Integer weight = weights.remove(key);
+      if (weight != null) {
+        totalWeight -= weight;
+      }
+      return delegate.removeObject(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      delegate.clear();
+      weights.clear();
+      totalWeight = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  /**
+   * 按lru淘汰，直到总权重不超过上限
+   */
+  private void evict() {
+    long maximum = getMaximumWeight();
+    Iterator<Map.Entry<Object, Integer>> iterator = weights.entrySet().iterator();
+    while (totalWeight > maximum && iterator.hasNext()) {
+      Map.Entry<Object, Integer> eldest = iterator.next();
+      iterator.remove();
+      totalWeight -= eldest.getValue();
+      delegate.removeObject(eldest.getKey());
+    }
+  }
+
+}
@@ -0,0 +1,116 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.ThreadSafeCache;
+
+/**
+ * 线程安全的永久缓存，基于ConcurrentHashMap实现，按桶加锁，读不加锁。
+ * 配合线程安全的装饰器使用时，CacheBuilder不再添加SynchronizedCache。
+ *
+ * @since 3.5.1
+ */
+public class ConcurrentPerpetualCache implements ThreadSafeCache {
+
+  /**
+   * ConcurrentHashMap不能保存null，用此对象代替null值
+   */
+  private static final Object NULL_VALUE = new Object();
+
+  /**
+   * 标识
+   */
+  private final String id;
+
+  /**
+   * 存储数据的map
+   */
+  private final ConcurrentMap<Object, Object> cache = new ConcurrentHashMap<>();
+
+  public ConcurrentPerpetualCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  @Override
+  public int getSize() {
+    return cache.size();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    cache.put(key, value == null ? NULL_VALUE : value);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return unmask(cache.get(key));
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    return unmask(cache.remove(key));
+  }
+
+  @Override
+  public void clear() {
+    cache.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private static Object unmask(Object value) {
+    return value == NULL_VALUE ? null : value;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+}
@@ -0,0 +1,370 @@
+/**
+ *    Copyright 2009-2018 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.cache.codec.CacheCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * 堆外缓存，值序列化后保存在直接内存中，堆上只保留key的索引，缓存很大时不会增加gc的停顿时间。
+ * <p>
+ * 直接内存分为若干个大小相同的段（最后一段为剩余的容量），按顺序追加写入，写满一个段后写下一个段，
+ * 所有段都写满后回到第一个段，重用之前先淘汰此段中的所有条目，即按段fifo淘汰。
+ * 每个条目为4字节长度加序列化后的字节，索引中保存段号和偏移量。
+ * 清空时丢弃所有段，直接内存在段被gc回收时释放，下次写入时重新分配。
+ * <p>
+ * 通过 &lt;cache type="OFF_HEAP"&gt; 使用，可以配置capacity(总字节数)、segmentSize(每段字节数)和codecType(编解码的类名)。
+ * 取出的值都是反序列化得到的副本，与readOnly="false"的语义相同，值必须可序列化。
+ *
+ * @since 3.5.1
+ */
+public class OffHeapCache implements ThreadSafeCache {
+
+  /**
+   * 标识
+   */
+  private final String id;
+
+  /**
+   * 保护索引和写入位置，读操作只需要读锁
+   */
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * key -> 段号(高32位)和段内偏移量(低32位)
+   */
+  private final Map<Object, Long> index = new HashMap<>();
+
+  /**
+   * 总字节数
+   */
+  private long capacity = 64L * 1024 * 1024;
+
+  /**
+   * 每段字节数
+   */
+  private int segmentSize = 4 * 1024 * 1024;
+
+  /**
+   * 编解码
+   */
+  private volatile CacheCodec codec = new JavaSerializationCodec();
+
+  /**
+   * 直接内存段，第一次写入时分配
+   */
+  private ByteBuffer[] segments;
+
+  /**
+   * 最后一段的字节数，即总容量分完整段后剩余的部分
+   */
+  private int lastSegmentSize;
+
+  /**
+   * 每个段中写入过的key，淘汰段时使用
+   */
+  private List<List<Object>> segmentKeys;
+
+  /**
+   * 当前写入的段
+   */
+  private int currentSegment;
+
+  /**
+   * 当前段的写入位置
+   */
+  private int writeOffset;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  public void setCapacity(long capacity) {
+    if (capacity <= 0) {
+      throw new CacheException("capacity must be greater than 0 but was " + capacity);
+    }
+    lock.writeLock().lock();
+    try {
+      this.capacity = capacity;
+      reset();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  public void setSegmentSize(int segmentSize) {
+    if (segmentSize <= 4) {
+      throw new CacheException("segmentSize must be greater than 4 but was " + segmentSize);
+    }
+    lock.writeLock().lock();
+    try {
+      this.segmentSize = segmentSize;
+      reset();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public CacheCodec getCodec() {
+    return codec;
+  }
+
+  /**
+   * 更换编解码会清空缓存，已写入的字节无法用新的编解码读取
+   */
+  public void setCodec(CacheCodec codec) {
+    lock.writeLock().lock();
+    try {
+      this.codec = codec;
+      reset();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * 通过类名设置编解码，用于&lt;property&gt;配置
+   */
+  public void setCodecType(String codecType) {
+    try {
+      setCodec((CacheCodec) Resources.classForName(codecType).getDeclaredConstructor().newInstance());
+    } catch (Exception e) {
+      throw new CacheException("Could not instantiate codec '" + codecType + "'.  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public int getSize() {
+    lock.readLock().lock();
+    try {
+      return index.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value != null && !(value instanceof Serializable)) {
+      throw new CacheException("OffHeapCache failed to store a non-serializable object: " + value);
+    }
+    // 序列化在锁外进行
+    byte[] bytes = codec.encode(value);
+    int length = 4 + bytes.length;
+    lock.writeLock().lock();
+    try {
+      if (length > segmentSize) {
+        // 比一个段还大，不缓存
+        index.remove(key);
+        return;
+      }
+      if (segments == null) {
+        allocate();
+      }
+      // 最后一段可能比条目小，这时跳过它
+      while (writeOffset + length > sizeOf(currentSegment)) {
+        currentSegment = (currentSegment + 1) % segments.length;
+        evictSegment(currentSegment);
+        writeOffset = 0;
+      }
+      ByteBuffer segment = segments[currentSegment];
+      if (segment == null) {
+        segment = ByteBuffer.allocateDirect(sizeOf(currentSegment));
+        segments[currentSegment] = segment;
+      }
+      segment.putInt(writeOffset, bytes.length);
+      ByteBuffer target = segment.duplicate();
+      target.position(writeOffset + 4);
+      target.put(bytes);
+      index.put(key, ((long) currentSegment << 32) | writeOffset);
+      segmentKeys.get(currentSegment).add(key);
+      writeOffset += length;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    byte[] bytes;
+    lock.readLock().lock();
+    try {
+      Long address = index.get(key);
+      if (address == null) {
+        return null;
+      }
+      ByteBuffer source = segments[(int) (address >>> 32)].duplicate();
+      int offset = (int) address.longValue();
+      bytes = new byte[source.getInt(offset)];
+      source.position(offset + 4);
+      source.get(bytes);
+    } finally {
+      lock.readLock().unlock();
+    }
+    // 反序列化在锁外进行
+    return codec.decode(bytes);
+  }
+
+  /**
+   * 不反序列化被删除的值，返回值没有使用（见 {@link Cache#removeObject(Object)}），
+   * 只用非null表示删除了条目，统计装饰器据此计数
+   *
+   * @return key存在时返回 {@link Boolean#TRUE}，否则返回null
+   */
+  @Override
+  public Object removeObject(Object key) {
+    lock.writeLock().lock();
+    try {
+      // 空间在所在的段被重用时回收
+      return index.remove(key) != null ? Boolean.TRUE : null;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      // 丢弃所有段，释放直接内存
+      reset();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * 已分配的直接内存字节数
+   */
+  public long getAllocatedBytes() {
+    lock.readLock().lock();
+    try {
+      long allocated = 0;
+      if (segments != null) {
+        for (ByteBuffer segment : segments) {
+          if (segment != null) {
+            allocated += segment.capacity();
+          }
+        }
+      }
+      return allocated;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private void allocate() {
+    // 总容量小于一个段时只分配一个总容量大小的段
+    segmentSize = (int) Math.min(segmentSize, capacity);
+    long count = (capacity + segmentSize - 1) / segmentSize;
+    if (count > Integer.MAX_VALUE) {
+      throw new CacheException("Too many segments for capacity " + capacity + " and segmentSize " + segmentSize);
+    }
+    segments = new ByteBuffer[(int) count];
+    lastSegmentSize = (int) (capacity - (count - 1) * segmentSize);
+    segmentKeys = new ArrayList<>((int) count);
+    for (int i = 0; i < count; i++) {
+      segmentKeys.add(new ArrayList<>());
+    }
+    currentSegment = 0;
+    writeOffset = 0;
+  }
+
+  /**
+   * 丢弃所有段，下次写入时按新的配置重新分配
+   */
+  private void reset() {
+    index.clear();
+    segments = null;
+    segmentKeys = null;
+    currentSegment = 0;
+    writeOffset = 0;
+  }
+
+  private int sizeOf(int segment) {
+    return segment == segments.length - 1 ? lastSegmentSize : segmentSize;
+  }
+
+  /**
+   * 淘汰仍指向此段的条目
+   */
+  private void evictSegment(int segment) {
+    List<Object> keys = segmentKeys.get(segment);
+    for (Object key : keys) {
+      Long address = index.get(key);
+      if (address != null && (int) (address >>> 32) == segment) {
+        index.remove(key);
+      }
+    }
+    keys.clear();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+}
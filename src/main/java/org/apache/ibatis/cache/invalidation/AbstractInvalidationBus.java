@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 失效总线的基类，负责节点标识和监听器的分发，子类只需实现消息的发送和接收
+ *
+ * @since 3.5.1
+ */
+public abstract class AbstractInvalidationBus implements InvalidationBus {
+
+  private static final Log log = LogFactory.getLog(AbstractInvalidationBus.class);
+
+  /**
+   * 本节点的标识，用于忽略自己发出的消息
+   */
+  private final String nodeId = UUID.randomUUID().toString();
+  /**
+   * cacheId和监听器的映射
+   */
+  private final Map<String, List<InvalidationListener>> listeners = new ConcurrentHashMap<>();
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  @Override
+  public void publish(String cacheId) {
+    send(nodeId, cacheId, Collections.emptyList());
+  }
+
+  @Override
+  public void publish(String cacheId, Collection<String> tags) {
+    if (tags.isEmpty()) {
+      return;
+    }
+    send(nodeId, cacheId, tags);
+  }
+
+  @Override
+  public void subscribe(String cacheId, InvalidationListener listener) {
+    listeners.computeIfAbsent(cacheId, k -> new CopyOnWriteArrayList<>()).add(listener);
+  }
+
+  @Override
+  public void close() {
+    listeners.clear();
+  }
+
+  /**
+   * 发送消息
+   *
+   * @param sourceNodeId 发出消息的节点
+   * @param cacheId 被清空的缓存
+   * @param tags 失效的tag，为空时表示整个缓存被清空
+   */
+  protected abstract void send(String sourceNodeId, String cacheId, Collection<String> tags);
+
+  /**
+   * 收到消息时由子类调用，分发给监听该缓存的监听器
+   */
+  protected void receive(String sourceNodeId, String cacheId, Collection<String> tags) {
+    if (nodeId.equals(sourceNodeId)) {
+      return;
+    }
+    List<InvalidationListener> cacheListeners = listeners.get(cacheId);
+    if (cacheListeners == null) {
+      return;
+    }
+    for (InvalidationListener listener : cacheListeners) {
+      try {
+        if (tags.isEmpty()) {
+          listener.onInvalidate(cacheId);
+        } else {
+          listener.onInvalidateTags(cacheId, tags);
+        }
+      } catch (RuntimeException e) {
+        // 一个监听器失败不影响其他监听器
+        log.warn("Cache invalidation listener failed for cache " + cacheId + ". Cause: " + e);
+      }
+    }
+  }
+
+}
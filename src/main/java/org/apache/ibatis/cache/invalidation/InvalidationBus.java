@@ -0,0 +1,84 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.Collection;
+import java.util.Properties;
+
+/**
+ * Broadcasts second-level cache clears to the other nodes sharing the same database.
+ * <p>
+ * When a bus is configured, every cache built for a mapper namespace publishes its id here whenever it is
+ * cleared, which is what happens when a session that ran a <code>flushCache</code> statement commits.
+ * Each node subscribes its own caches and clears them locally when another node publishes the same id.
+ * Delivery is best effort: a lost message leaves a stale cache until it is cleared again or flushed by its
+ * <code>flushInterval</code>.
+ * <p>
+ * Implementations must be thread safe and have a public no-argument constructor to be used from the
+ * <code>cacheInvalidationBus</code> setting or element. Properties nested in the element are passed to
+ * {@link #setProperties(Properties)} before the first cache subscribes.
+ *
+ * @since 3.5.1
+ * @see LoopbackInvalidationBus
+ * @see MulticastInvalidationBus
+ */
+public interface InvalidationBus {
+
+  /**
+   * Tells the other nodes that a cache has been cleared on this node. Must not block the caller for long.
+   *
+   * @param cacheId id of the cleared cache
+   */
+  void publish(String cacheId);
+
+  /**
+   * Tells the other nodes that the entries of a cache carrying any of the given tags have been invalidated on
+   * this node. Transports that cannot carry tags may fall back to {@link #publish(String)}, which is what the
+   * default implementation does.
+   *
+   * @param cacheId id of the cache
+   * @param tags the invalidated tags
+   */
+  default void publish(String cacheId, Collection<String> tags) {
+    publish(cacheId);
+  }
+
+  /**
+   * Registers a listener called when another node clears the cache with the given id.
+   * Messages published by this bus itself are never delivered to its own listeners.
+   *
+   * @param cacheId id of the cache to listen to
+   * @param listener the listener
+   */
+  void subscribe(String cacheId, InvalidationListener listener);
+
+  /**
+   * Configures the bus from the <code>property</code> children of the <code>cacheInvalidationBus</code> element.
+   *
+   * @param properties the configured properties
+   */
+  default void setProperties(Properties properties) {
+    // NOP
+  }
+
+  /**
+   * Stops delivering and publishing messages and releases the sockets and threads of the bus.
+   * Neither the Configuration nor the SqlSessionFactory closes the bus, so the application that configured it must
+   * call this method once the factory is no longer used.
+   */
+  void close();
+
+}
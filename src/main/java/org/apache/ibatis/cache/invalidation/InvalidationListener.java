@@ -0,0 +1,43 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.Collection;
+
+/**
+ * Called when another node has cleared a cache, or invalidated some tags of it.
+ *
+ * @since 3.5.1
+ */
+@FunctionalInterface
+public interface InvalidationListener {
+
+  /**
+   * @param cacheId id of the cache cleared on the other node
+   */
+  void onInvalidate(String cacheId);
+
+  /**
+   * Called when another node has invalidated only the entries carrying the given tags.
+   * The default implementation ignores the message.
+   *
+   * @param cacheId id of the cache on the other node
+   * @param tags the invalidated tags, never empty
+   */
+  default void onInvalidateTags(String cacheId, Collection<String> tags) {
+  }
+
+}
@@ -0,0 +1,112 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 同一个JVM内的失效总线，用于测试或同一进程中的多个 SqlSessionFactory。
+ * <p>
+ * 同一个channel中的总线互相转发消息，在发布线程中同步投递。
+ * channel只弱引用其中的总线，Configuration被丢弃后总线及其监听的缓存可以被回收，不需要调用{@link #close()}。
+ *
+ * @since 3.5.1
+ */
+public class LoopbackInvalidationBus extends AbstractInvalidationBus {
+
+  public static final String DEFAULT_CHANNEL = "default";
+
+  /**
+   * channel和其中所有总线的映射，总线为弱引用
+   */
+  private static final Map<String, Set<LoopbackInvalidationBus>> channels = new ConcurrentHashMap<>();
+
+  private String channel;
+
+  public LoopbackInvalidationBus() {
+    this(DEFAULT_CHANNEL);
+  }
+
+  public LoopbackInvalidationBus(String channel) {
+    join(channel);
+  }
+
+  public String getChannel() {
+    return channel;
+  }
+
+  public synchronized void setChannel(String channel) {
+    leave();
+    join(channel);
+  }
+
+  @Override
+  public void setProperties(Properties properties) {
+    String configured = properties.getProperty("channel");
+    if (configured != null) {
+      setChannel(configured);
+    }
+  }
+
+  @Override
+  protected void send(String sourceNodeId, String cacheId, Collection<String> tags) {
+    Set<LoopbackInvalidationBus> buses = channels.get(channel);
+    if (buses == null) {
+      return;
+    }
+    List<LoopbackInvalidationBus> targets;
+    // 弱引用的set需要加锁遍历，复制后在锁外投递
+    synchronized (buses) {
+      targets = new ArrayList<>(buses);
+    }
+    for (LoopbackInvalidationBus bus : targets) {
+      bus.receive(sourceNodeId, cacheId, tags);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    leave();
+    super.close();
+  }
+
+  private void join(String channel) {
+    this.channel = channel;
+    channels.compute(channel, (k, buses) -> {
+      if (buses == null) {
+        buses = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+      }
+      buses.add(this);
+      return buses;
+    });
+  }
+
+  private void leave() {
+    channels.computeIfPresent(channel, (k, buses) -> {
+      buses.remove(this);
+      return buses.isEmpty() ? null : buses;
+    });
+  }
+
+}
@@ -0,0 +1,282 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 基于UDP组播的失效总线，同一组播地址和端口上的所有节点互相转发消息。
+ * <p>
+ * 第一次发布或订阅时才打开socket，并启动一个后台线程接收消息。
+ * UDP不保证送达，丢失的消息只能等缓存再次被清空或按flushInterval定时清空。
+ * <p>
+ * 不再使用时必须调用 {@link #close()} 关闭socket并结束接收线程。
+ * 接收线程只弱引用总线，没有关闭的总线被回收后，接收线程在 {@link #RECEIVE_TIMEOUT} 内自行关闭socket并退出。
+ *
+ * @since 3.5.1
+ */
+public class MulticastInvalidationBus extends AbstractInvalidationBus {
+
+  private static final Log log = LogFactory.getLog(MulticastInvalidationBus.class);
+
+  /**
+   * 消息头，用于忽略同一组播地址上的其他报文
+   */
+  private static final int MAGIC = 0x4D424349;
+  private static final int MAX_PACKET_SIZE = 1024;
+  /**
+   * 接收线程等待报文的超时毫秒数，超时后检查总线是否已被回收
+   */
+  static final int RECEIVE_TIMEOUT = 1000;
+
+  private static final AtomicInteger threadNumber = new AtomicInteger();
+
+  /**
+   * 组播地址
+   */
+  private String group = "239.255.27.1";
+  /**
+   * 端口
+   */
+  private int port = 45588;
+  /**
+   * 组播的跳数，默认只在本网段内
+   */
+  private int timeToLive = 1;
+  /**
+   * 使用的网卡名，为null时使用系统默认网卡
+   */
+  private String networkInterface;
+
+  private volatile MulticastSocket socket;
+  private InetAddress groupAddress;
+  private volatile boolean closed;
+
+  public String getGroup() {
+    return group;
+  }
+
+  public void setGroup(String group) {
+    this.group = group;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  public int getTimeToLive() {
+    return timeToLive;
+  }
+
+  public void setTimeToLive(int timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  public String getNetworkInterface() {
+    return networkInterface;
+  }
+
+  public void setNetworkInterface(String networkInterface) {
+    this.networkInterface = networkInterface;
+  }
+
+  @Override
+  public void setProperties(Properties properties) {
+    group = properties.getProperty("group", group);
+    port = Integer.parseInt(properties.getProperty("port", String.valueOf(port)));
+    timeToLive = Integer.parseInt(properties.getProperty("timeToLive", String.valueOf(timeToLive)));
+    networkInterface = properties.getProperty("networkInterface", networkInterface);
+  }
+
+  @Override
+  public void subscribe(String cacheId, InvalidationListener listener) {
+    super.subscribe(cacheId, listener);
+    start();
+  }
+
+  @Override
+  protected void send(String sourceNodeId, String cacheId, Collection<String> tags) {
+    MulticastSocket socket = start();
+    if (socket == null) {
+      return;
+    }
+    try {
+      byte[] data = encode(sourceNodeId, cacheId, tags);
+      if (data.length > MAX_PACKET_SIZE) {
+        // tag太多放不进一个报文，退化为清空整个缓存
+        data = encode(sourceNodeId, cacheId, Collections.emptyList());
+      }
+      socket.send(new DatagramPacket(data, data.length, groupAddress, port));
+    } catch (IOException e) {
+      // 本地已经提交，发送失败不能影响调用方
+      log.warn("Could not publish invalidation of cache " + cacheId + ". Cause: " + e);
+    }
+  }
+
+  private static byte[] encode(String sourceNodeId, String cacheId, Collection<String> tags) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeUTF(sourceNodeId);
+    out.writeUTF(cacheId);
+    out.writeShort(tags.size());
+    for (String tag : tags) {
+      out.writeUTF(tag);
+    }
+    return bytes.toByteArray();
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (socket != null) {
+      try {
+        socket.leaveGroup(groupAddress);
+      } catch (IOException e) {
+        // ignore
+      }
+      socket.close();
+      socket = null;
+    }
+    super.close();
+  }
+
+  private MulticastSocket start() {
+    MulticastSocket current = socket;
+    if (current != null || closed) {
+      return current;
+    }
+    synchronized (this) {
+      if (socket == null && !closed) {
+        try {
+          groupAddress = InetAddress.getByName(group);
+          MulticastSocket newSocket = new MulticastSocket(port);
+          if (networkInterface != null) {
+            newSocket.setNetworkInterface(NetworkInterface.getByName(networkInterface));
+          }
+          newSocket.setTimeToLive(timeToLive);
+          newSocket.setSoTimeout(RECEIVE_TIMEOUT);
+          newSocket.joinGroup(groupAddress);
+          socket = newSocket;
+          Thread receiver = new Thread(new Receiver(this, newSocket),
+              "mybatis-cache-invalidation-" + threadNumber.incrementAndGet());
+          receiver.setDaemon(true);
+          receiver.start();
+        } catch (IOException e) {
+          throw new CacheException("Could not join multicast group " + group + ":" + port + ". Cause: " + e, e);
+        }
+      }
+      return socket;
+    }
+  }
+
+  /**
+   * 接收报文的线程，只弱引用总线，总线被回收后关闭socket并退出
+   */
+  private static final class Receiver implements Runnable {
+
+    private final WeakReference<MulticastInvalidationBus> bus;
+    private final MulticastSocket socket;
+
+    Receiver(MulticastInvalidationBus bus, MulticastSocket socket) {
+      this.bus = new WeakReference<>(bus);
+      this.socket = socket;
+    }
+
+    @Override
+    public void run() {
+      byte[] buffer = new byte[MAX_PACKET_SIZE];
+      while (true) {
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try {
+          socket.receive(packet);
+        } catch (SocketTimeoutException e) {
+          if (bus.get() == null) {
+            // 总线没有关闭就被回收了，不会再有人调用close()
+            socket.close();
+            return;
+          }
+          continue;
+        } catch (SocketException e) {
+          // socket已关闭
+          return;
+        } catch (IOException e) {
+          log.warn("Could not read cache invalidation message. Cause: " + e);
+          continue;
+        }
+        if (!deliver(packet)) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * 把报文交给总线，总线已关闭或被回收时返回false
+     */
+    private boolean deliver(DatagramPacket packet) {
+      MulticastInvalidationBus target = bus.get();
+      if (target == null || target.closed) {
+        socket.close();
+        return false;
+      }
+      try {
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+        if (in.readInt() != MAGIC) {
+          return true;
+        }
+        String sourceNodeId = in.readUTF();
+        String cacheId = in.readUTF();
+        int tagCount = in.readUnsignedShort();
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) {
+          tags.add(in.readUTF());
+        }
+        target.receive(sourceNodeId, cacheId, tags);
+      } catch (IOException e) {
+        log.warn("Could not read cache invalidation message. Cause: " + e);
+      }
+      return true;
+    }
+
+  }
+
+}
@@ -0,0 +1,165 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * 一个二级缓存(即一个namespace)的统计，由 {@link MetricsCache} 和 {@link StoreMetricsCache} 记录。
+ * <p>
+ * 计数使用 {@link LongAdder}，记录时没有锁也不打日志，读取时汇总，并发时读到的是近似值。
+ * 命中和未命中是缓存层面的：已经被tag失效、但还没有被替换的结果也算命中。
+ *
+ * @since 3.5.1
+ * @see CacheMetricsRegistry
+ */
+public class CacheMetrics {
+
+  private final String id;
+
+  final LongAdder hits = new LongAdder();
+  final LongAdder misses = new LongAdder();
+  final LongAdder puts = new LongAdder();
+  /**
+   * 通过缓存最外层删除的条目数
+   */
+  final LongAdder removals = new LongAdder();
+  /**
+   * 在存储层被删除的条目数，包括淘汰、过期和显式删除
+   */
+  final LongAdder storeRemovals = new LongAdder();
+  /**
+   * 因timeToLive过期被删除的条目数
+   */
+  final LongAdder expirations = new LongAdder();
+  final LongAdder loads = new LongAdder();
+  final LongAdder totalLoadTime = new LongAdder();
+  final LongAdder estimatedBytes = new LongAdder();
+  /**
+   * 用于读取条目数
+   */
+  volatile Cache store;
+
+  public CacheMetrics(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * 记录一次缓存未命中后从数据库加载的耗时
+   *
+   * @param nanos 耗时，纳秒
+   */
+  public void recordLoad(long nanos) {
+    loads.increment();
+    totalLoadTime.add(nanos);
+  }
+
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getRequestCount() {
+    return hits.sum() + misses.sum();
+  }
+
+  /**
+   * @return 命中率，还没有请求时为0
+   */
+  public double getHitRatio() {
+    long hitCount = hits.sum();
+    long requests = hitCount + misses.sum();
+    return requests == 0 ? 0 : (double) hitCount / requests;
+  }
+
+  /**
+   * 记录一个条目因timeToLive过期被删除，由 {@link org.apache.ibatis.cache.decorators.ExpiringCache} 调用
+   */
+  public void recordExpiration() {
+    expirations.increment();
+  }
+
+  public long getPutCount() {
+    return puts.sum();
+  }
+
+  public long getRemovalCount() {
+    return removals.sum();
+  }
+
+  /**
+   * 被淘汰的条目数，即存储层删除的条目中既不是通过缓存最外层删除、也不是过期的部分
+   */
+  public long getEvictionCount() {
+    return Math.max(0, storeRemovals.sum() - removals.sum() - expirations.sum());
+  }
+
+  /**
+   * 因timeToLive过期被删除的条目数
+   */
+  public long getExpirationCount() {
+    return expirations.sum();
+  }
+
+  public long getLoadCount() {
+    return loads.sum();
+  }
+
+  /**
+   * @return 加载的总耗时，纳秒
+   */
+  public long getTotalLoadTime() {
+    return totalLoadTime.sum();
+  }
+
+  /**
+   * @return 平均每次加载的耗时，纳秒
+   */
+  public long getAverageLoadTime() {
+    long loadCount = loads.sum();
+    return loadCount == 0 ? 0 : totalLoadTime.sum() / loadCount;
+  }
+
+  public int getEntryCount() {
+    Cache cache = store;
+    return cache == null ? 0 : cache.getSize();
+  }
+
+  /**
+   * 缓存条目占用的估算字节数。只统计序列化后保存的结果(readWrite缓存)，readOnly缓存中的对象不计入
+   */
+  public long getEstimatedBytes() {
+    return Math.max(0, estimatedBytes.sum());
+  }
+
+  @Override
+  public String toString() {
+    return "CacheMetrics[" + id + "] hits=" + getHitCount() + ", misses=" + getMissCount() + ", puts=" + getPutCount()
+        + ", removals=" + getRemovalCount() + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount() + ", loads=" + getLoadCount()
+        + ", averageLoadTime=" + getAverageLoadTime() + "ns, entries=" + getEntryCount()
+        + ", estimatedBytes=" + getEstimatedBytes();
+  }
+
+}
@@ -0,0 +1,53 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一个Configuration中所有二级缓存的统计，按缓存id(即namespace)查询。
+ * 只有开启了cacheMetricsEnabled设置时，新建的缓存才会注册统计。
+ *
+ * @since 3.5.1
+ */
+public class CacheMetricsRegistry {
+
+  private final Map<String, CacheMetrics> metrics = new ConcurrentHashMap<>();
+
+  /**
+   * 为缓存新建统计，同一个id已有统计时替换
+   */
+  public CacheMetrics register(String cacheId) {
+    CacheMetrics cacheMetrics = new CacheMetrics(cacheId);
+    metrics.put(cacheId, cacheMetrics);
+    return cacheMetrics;
+  }
+
+  /**
+   * @return 缓存的统计，没有注册时返回null
+   */
+  public CacheMetrics getMetrics(String cacheId) {
+    return metrics.get(cacheId);
+  }
+
+  public Collection<CacheMetrics> getAllMetrics() {
+    return Collections.unmodifiableCollection(metrics.values());
+  }
+
+}
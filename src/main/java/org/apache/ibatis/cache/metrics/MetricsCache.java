@@ -0,0 +1,103 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
+
+/**
+ * 统计命中、未命中、放入和删除次数的缓存装饰器，不加锁，不打日志
+ *
+ * @since 3.5.1
+ * @see StoreMetricsCache
+ */
+public class MetricsCache implements ThreadSafeCache {
+
+  private final Cache delegate;
+  private final CacheMetrics metrics;
+
+  public MetricsCache(Cache delegate, CacheMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+    if (metrics.store == null) {
+      // 没有StoreMetricsCache时(自定义的缓存实现)从这里读取条目数
+      metrics.store = delegate;
+    }
+  }
+
+  public CacheMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    delegate.putObject(key, value);
+    metrics.puts.increment();
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (value != null) {
+      metrics.hits.increment();
+    } else {
+      metrics.misses.increment();
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Object value = delegate.removeObject(key);
+    if (value != null) {
+      metrics.removals.increment();
+    }
+    return value;
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.ThreadSafeCache;
+
+/**
+ * 直接装饰基础缓存(如PerpetualCache)的统计装饰器，位于淘汰、过期等装饰器之下。
+ * <p>
+ * 淘汰装饰器通过删除下层缓存的条目来淘汰，所以这里能看到所有被删除的条目，
+ * 减去 {@link MetricsCache} 看到的显式删除就是淘汰数。
+ * 保存的是序列化后的字节时，同时统计占用的字节数：只有这时放入前才读取原来的值，
+ * 读取和放入不是原子的，同一个key并发放入时字节数可能有偏差，所以是估算值。
+ * 本身没有状态，线程安全由被装饰的缓存和外层的装饰器保证。
+ *
+ * @since 3.5.1
+ */
+public class StoreMetricsCache implements ThreadSafeCache {
+
+  private final Cache delegate;
+  private final CacheMetrics metrics;
+
+  public StoreMetricsCache(Cache delegate, CacheMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+    metrics.store = delegate;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (!(value instanceof byte[])) {
+      // 不统计字节数，不需要读取原来的值
+      delegate.putObject(key, value);
+      return;
+    }
+    Object previous = delegate.getObject(key);
+    delegate.putObject(key, value);
+    metrics.estimatedBytes.add(sizeOf(value) - sizeOf(previous));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    return delegate.getObject(key);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    Object value = delegate.removeObject(key);
+    if (value != null) {
+      metrics.storeRemovals.increment();
+      metrics.estimatedBytes.add(-sizeOf(value));
+    }
+    return value;
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    metrics.estimatedBytes.reset();
+  }
+
+  @Override
+  public ReadWriteLock getReadWriteLock() {
+    return null;
+  }
+
+  private static long sizeOf(Object value) {
+    return value instanceof byte[] ? ((byte[]) value).length : 0;
+  }
+
+}
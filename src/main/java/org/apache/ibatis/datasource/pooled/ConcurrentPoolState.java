@@ -0,0 +1,99 @@
+/**
+ * Copyright 2009-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ConcurrentPooledDataSource} 的连接池状态，统计项与 {@link PoolState} 相同，
+ * 但使用 {@link LongAdder} 累加，读取时不加锁。
+ */
+public class ConcurrentPoolState extends PoolState {
+
+  private final ConnectionBag bag;
+
+  final LongAdder requestCounter = new LongAdder();
+  final LongAdder accumulatedRequestTimeCounter = new LongAdder();
+  final LongAdder accumulatedCheckoutTimeCounter = new LongAdder();
+  final LongAdder claimedOverdueConnectionCounter = new LongAdder();
+  final LongAdder accumulatedCheckoutTimeOfOverdueConnectionsCounter = new LongAdder();
+  final LongAdder accumulatedWaitTimeCounter = new LongAdder();
+  final LongAdder hadToWaitCounter = new LongAdder();
+  final LongAdder badConnectionCounter = new LongAdder();
+
+  ConcurrentPoolState(ConcurrentPooledDataSource dataSource, ConnectionBag bag) {
+    super(dataSource);
+    this.bag = bag;
+  }
+
+  @Override
+  public long getRequestCount() {
+    return requestCounter.sum();
+  }
+
+  @Override
+  public long getAverageRequestTime() {
+    long requests = requestCounter.sum();
+    return requests == 0 ? 0 : accumulatedRequestTimeCounter.sum() / requests;
+  }
+
+  @Override
+  public long getAverageWaitTime() {
+    long waits = hadToWaitCounter.sum();
+    return waits == 0 ? 0 : accumulatedWaitTimeCounter.sum() / waits;
+  }
+
+  @Override
+  public long getHadToWaitCount() {
+    return hadToWaitCounter.sum();
+  }
+
+  @Override
+  public long getBadConnectionCount() {
+    return badConnectionCounter.sum();
+  }
+
+  @Override
+  public long getClaimedOverdueConnectionCount() {
+    return claimedOverdueConnectionCounter.sum();
+  }
+
+  @Override
+  public long getAverageOverdueCheckoutTime() {
+    long overdue = claimedOverdueConnectionCounter.sum();
+    return overdue == 0 ? 0 : accumulatedCheckoutTimeOfOverdueConnectionsCounter.sum() / overdue;
+  }
+
+  @Override
+  public long getAverageCheckoutTime() {
+    long requests = requestCounter.sum();
+    return requests == 0 ? 0 : accumulatedCheckoutTimeCounter.sum() / requests;
+  }
+
+  @Override
+  public int getIdleConnectionCount() {
+    return bag.getCount(ConnectionBag.STATE_NOT_IN_USE);
+  }
+
+  @Override
+  public int getActiveConnectionCount() {
+    return bag.getCount(ConnectionBag.STATE_IN_USE);
+  }
+
+  @Override
+  public int getWaitingThreadCount() {
+    return bag.getWaitingThreadCount();
+  }
+
+}
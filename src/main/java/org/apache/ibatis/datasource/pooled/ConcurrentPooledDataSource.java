@@ -0,0 +1,388 @@
+/**
+ * Copyright 2009-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 无全局锁的数据库连接池。
+ * <p>
+ * 配置项和统计信息与 {@link PooledDataSource} 相同，区别在于连接保存在 {@link ConnectionBag} 中，
+ * 借出和归还都是 CAS 操作，等待连接的线程按先来后到直接接收归还的连接，
+ * 不再在 {@link PoolState} 上 synchronized/wait/notifyAll。
+ *
+ * @since 3.5.1
+ */
+public class ConcurrentPooledDataSource extends PooledDataSource {
+
+  private static final Log log = LogFactory.getLog(ConcurrentPooledDataSource.class);
+
+  /**
+   * 连接容器
+   */
+  private final ConnectionBag bag = new ConnectionBag();
+
+  /**
+   * 连接池数据源状态记录
+   */
+  private final ConcurrentPoolState state = new ConcurrentPoolState(this, bag);
+
+  /**
+   * 已创建（包括正在创建）的连接总数
+   */
+  private final AtomicInteger totalConnections = new AtomicInteger();
+
+  public ConcurrentPooledDataSource() {
+    super();
+  }
+
+  public ConcurrentPooledDataSource(UnpooledDataSource dataSource) {
+    super(dataSource);
+  }
+
+  public ConcurrentPooledDataSource(String driver, String url, String username, String password) {
+    super(driver, url, username, password);
+  }
+
+  public ConcurrentPooledDataSource(String driver, String url, Properties driverProperties) {
+    super(driver, url, driverProperties);
+  }
+
+  public ConcurrentPooledDataSource(ClassLoader driverClassLoader, String driver, String url,
+      String username, String password) {
+    super(driverClassLoader, driver, url, username, password);
+  }
+
+  public ConcurrentPooledDataSource(ClassLoader driverClassLoader, String driver, String url,
+      Properties driverProperties) {
+    super(driverClassLoader, driver, url, driverProperties);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    startMaintenanceIfNecessary();
+    return popConnection(dataSource.getUsername(), dataSource.getPassword()).getProxyConnection();
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    startMaintenanceIfNecessary();
+    return popConnection(username, password).getProxyConnection();
+  }
+
+  @Override
+  public ConcurrentPoolState getPoolState() {
+    return state;
+  }
+
+  /**
+   * 关闭所有连接池里的连接，包括空闲和活跃
+   */
+  @Override
+  public void forceCloseAll() {
+    expectedConnectionTypeCode = assembleConnectionTypeCode(dataSource.getUrl(),
+        dataSource.getUsername(), dataSource.getPassword());
+    for (ConnectionBag.Entry entry : bag.values()) {
+      closeEntry(entry);
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("ConcurrentPooledDataSource forcefully closed/removed all connections.");
+    }
+  }
+
+  /**
+   * 将连接归还到连接池
+   */
+  @Override
+  void pushConnection(PooledConnection conn) throws SQLException {
+    ConnectionBag.Entry entry = conn.getBagEntry();
+    // 已经被当作超时连接回收的代理，不能再归还
+    if (entry == null || !entry.compareAndSetOwner(conn, null)) {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode()
+            + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCounter.increment();
+      metricsListener.badConnection();
+      return;
+    }
+    state.accumulatedCheckoutTimeCounter.add(conn.getCheckoutTime());
+    metricsListener.connectionReleased(conn.getCheckoutTime());
+    if (!conn.isValid()) {
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode()
+            + ") attempted to return to the pool, discarding connection.");
+      }
+      state.badConnectionCounter.increment();
+      metricsListener.badConnection();
+      conn.invalidate();
+      closeEntry(entry);
+      return;
+    }
+    conn.invalidate();
+    try {
+      if (!conn.getRealConnection().getAutoCommit()) {
+        conn.getRealConnection().rollback();
+      }
+    } catch (SQLException e) {
+      closeEntry(entry);
+      throw e;
+    }
+    entry.setLastUsedTimestamp(conn.getLastUsedTimestamp());
+    if (conn.getConnectionTypeCode() == expectedConnectionTypeCode
+        && !isExpired(entry.getCreatedTimestamp())
+        && (bag.getWaitingThreadCount() > 0
+            || bag.getCount(ConnectionBag.STATE_NOT_IN_USE) < poolMaximumIdleConnections)) {
+      bag.requite(entry);
+      if (log.isDebugEnabled()) {
+        log.debug("Returned connection " + conn.getRealHashCode() + " to pool.");
+      }
+    } else {
+      closeEntry(entry);
+      if (log.isDebugEnabled()) {
+        log.debug("Closed connection " + conn.getRealHashCode() + ".");
+      }
+    }
+  }
+
+  /**
+   * 从连接池中取出一个连接
+   */
+  private PooledConnection popConnection(String username, String password) throws SQLException {
+    boolean countedWait = false;
+    long t = System.currentTimeMillis();
+    int localBadConnectionCount = 0;
+
+    while (true) {
+      // 空闲连接 -> 新建连接 -> 回收超时连接 -> 等待归还
+      ConnectionBag.Entry entry = bag.tryBorrow();
+      if (entry == null) {
+        entry = createEntry(ConnectionBag.STATE_IN_USE);
+      }
+      if (entry == null) {
+        entry = claimOverdueEntry();
+      }
+      if (entry == null) {
+        if (!countedWait) {
+          state.hadToWaitCounter.increment();
+          countedWait = true;
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
+        }
+        long wt = System.currentTimeMillis();
+        metricsListener.waitStarted();
+        try {
+          entry = bag.borrow(poolTimeToWait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        } finally {
+          long waited = System.currentTimeMillis() - wt;
+          state.accumulatedWaitTimeCounter.add(waited);
+          metricsListener.waitEnded(waited);
+        }
+        if (entry == null) {
+          continue;
+        }
+      }
+
+      PooledConnection conn = new PooledConnection(entry.getRealConnection(), this);
+      conn.setBagEntry(entry);
+      conn.setCreatedTimestamp(entry.getCreatedTimestamp());
+      conn.setLastUsedTimestamp(entry.getLastUsedTimestamp());
+      // 判断连接是否有效
+      if (conn.isValid()) {
+        try {
+          if (!conn.getRealConnection().getAutoCommit()) {
+            conn.getRealConnection().rollback();
+          }
+        } catch (SQLException e) {
+          closeEntry(entry);
+          throw e;
+        }
+        conn.setConnectionTypeCode(
+            assembleConnectionTypeCode(dataSource.getUrl(), username, password));
+        conn.setCheckoutTimestamp(System.currentTimeMillis());
+        conn.setLastUsedTimestamp(System.currentTimeMillis());
+        entry.setOwner(conn);
+        state.requestCounter.increment();
+        long requestTime = System.currentTimeMillis() - t;
+        state.accumulatedRequestTimeCounter.add(requestTime);
+        metricsListener.connectionAcquired(requestTime);
+        if (log.isDebugEnabled()) {
+          log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
+        }
+        return conn;
+      }
+
+      if (log.isDebugEnabled()) {
+        log.debug("A bad connection (" + conn.getRealHashCode()
+            + ") was returned from the pool, getting another connection.");
+      }
+      state.badConnectionCounter.increment();
+      metricsListener.badConnection();
+      localBadConnectionCount++;
+      closeEntry(entry);
+      if (localBadConnectionCount > (poolMaximumIdleConnections
+          + getPoolMaximumLocalBadConnectionTolerance())) {
+        if (log.isDebugEnabled()) {
+          log.debug("ConcurrentPooledDataSource: Could not get a good connection to the database.");
+        }
+        throw new SQLException(
+            "ConcurrentPooledDataSource: Could not get a good connection to the database.");
+      }
+    }
+
+    if (log.isDebugEnabled()) {
+      log.debug(
+          "ConcurrentPooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+    }
+    throw new SQLException(
+        "ConcurrentPooledDataSource: Unknown severe error condition.  The connection pool returned a null connection.");
+  }
+
+  /**
+   * 后台维护：关闭过期和空闲过久的连接，检验空闲连接，补足最小空闲连接数
+   */
+  @Override
+  void maintain() throws SQLException {
+    int idleCount = bag.getCount(ConnectionBag.STATE_NOT_IN_USE);
+    for (ConnectionBag.Entry entry : bag.values(ConnectionBag.STATE_NOT_IN_USE)) {
+      if ((isExpired(entry.getCreatedTimestamp())
+          || (idleCount > poolMinimumIdleConnections && isIdleTooLong(entry.getLastUsedTimestamp())))
+          && bag.reserveForRemoval(entry)) {
+        closeEntry(entry);
+        idleCount--;
+        if (log.isDebugEnabled()) {
+          log.debug("Evicted idle connection " + entry.getRealConnection().hashCode() + ".");
+        }
+        continue;
+      }
+      // 检验期间连接处于使用中状态，不会被借出
+      if (needsPing(entry.getLastUsedTimestamp()) && bag.reserve(entry)) {
+        PooledConnection probe = new PooledConnection(entry.getRealConnection(), this);
+        probe.setLastUsedTimestamp(entry.getLastUsedTimestamp());
+        if (pingConnection(probe, true)) {
+          bag.requite(entry);
+        } else {
+          state.badConnectionCounter.increment();
+          metricsListener.badConnection();
+          closeEntry(entry);
+          idleCount--;
+        }
+      }
+    }
+
+    // 补足最小空闲连接数
+    int target = Math.min(poolMinimumIdleConnections, poolMaximumIdleConnections);
+    while (bag.getCount(ConnectionBag.STATE_NOT_IN_USE) < target) {
+      ConnectionBag.Entry entry = createEntry(ConnectionBag.STATE_NOT_IN_USE);
+      if (entry == null) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * 连接总数未达上限时新建一个指定初始状态的连接；已达上限返回null
+   */
+  private ConnectionBag.Entry createEntry(int initialState) throws SQLException {
+    int total;
+    do {
+      total = totalConnections.get();
+      if (total >= poolMaximumActiveConnections) {
+        return null;
+      }
+    } while (!totalConnections.compareAndSet(total, total + 1));
+    try {
+      ConnectionBag.Entry entry = new ConnectionBag.Entry(dataSource.getConnection(), initialState);
+      bag.add(entry);
+      metricsListener.connectionCreated();
+      if (log.isDebugEnabled()) {
+        log.debug("Created connection " + entry.getRealConnection().hashCode() + ".");
+      }
+      return entry;
+    } catch (SQLException | RuntimeException e) {
+      totalConnections.decrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * 回收一个超过最大checkout时长的连接，回收后仍处于使用中状态，由调用者继续使用；没有返回null
+   */
+  private ConnectionBag.Entry claimOverdueEntry() {
+    for (ConnectionBag.Entry entry : bag.values(ConnectionBag.STATE_IN_USE)) {
+      PooledConnection owner = entry.getOwner();
+      if (owner == null) {
+        // 刚借出或正在归还
+        continue;
+      }
+      long longestCheckoutTime = owner.getCheckoutTime();
+      if (longestCheckoutTime > poolMaximumCheckoutTime && entry.compareAndSetOwner(owner, null)) {
+        state.claimedOverdueConnectionCounter.increment();
+        state.accumulatedCheckoutTimeOfOverdueConnectionsCounter.add(longestCheckoutTime);
+        state.accumulatedCheckoutTimeCounter.add(longestCheckoutTime);
+        metricsListener.connectionReclaimed(longestCheckoutTime);
+        owner.invalidate();
+        try {
+          if (!entry.getRealConnection().getAutoCommit()) {
+            entry.getRealConnection().rollback();
+          }
+        } catch (SQLException e) {
+          // 与 PooledDataSource 相同，坏连接在借出前的有效性检查中丢弃
+          log.debug("Bad connection. Could not roll back");
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("Claimed overdue connection " + owner.getRealHashCode() + ".");
+        }
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 从容器中移除并关闭连接
+   */
+  private void closeEntry(ConnectionBag.Entry entry) {
+    if (!bag.remove(entry)) {
+      return;
+    }
+    totalConnections.decrementAndGet();
+    PooledConnection owner = entry.getOwner();
+    if (owner != null) {
+      owner.invalidate();
+    }
+    try {
+      Connection realConn = entry.getRealConnection();
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+      metricsListener.connectionClosed();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2009-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁的连接容器。
+ * <p>
+ * 每个连接用一个状态位表示是否被占用，借出和归还只做 CAS，不需要全局锁。
+ * 线程优先从自己最近归还过的连接里取（线程亲和），取不到再扫描共享列表，
+ * 还取不到就在公平的 {@link SynchronousQueue} 上等待其他线程直接移交。
+ */
+class ConnectionBag {
+
+  /**
+   * 空闲
+   */
+  static final int STATE_NOT_IN_USE = 0;
+  /**
+   * 使用中
+   */
+  static final int STATE_IN_USE = 1;
+  /**
+   * 已移除
+   */
+  static final int STATE_REMOVED = -1;
+
+  /**
+   * 每个线程最多记住的最近归还的连接数
+   */
+  private static final int MAX_THREAD_LOCAL_ENTRIES = 16;
+
+  /**
+   * 所有连接
+   */
+  private final CopyOnWriteArrayList<Entry> sharedList = new CopyOnWriteArrayList<>();
+  /**
+   * 线程最近归还的连接，弱引用，避免线程持有已关闭的连接
+   */
+  private final ThreadLocal<List<WeakReference<Entry>>> threadList = ThreadLocal
+      .withInitial(() -> new ArrayList<>(MAX_THREAD_LOCAL_ENTRIES));
+  /**
+   * 正在等待的线程数
+   */
+  private final AtomicInteger waiters = new AtomicInteger();
+  /**
+   * 公平的移交队列，先等待的线程先拿到归还的连接
+   */
+  private final SynchronousQueue<Entry> handoffQueue = new SynchronousQueue<>(true);
+
+  /**
+   * 不等待，尝试借出一个空闲连接
+   */
+  Entry tryBorrow() {
+    // 先从本线程最近归还的连接中取
+    List<WeakReference<Entry>> list = threadList.get();
+    for (int i = list.size() - 1; i >= 0; i--) {
+      Entry entry = list.remove(i).get();
+      if (entry != null && entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    // 再扫描共享列表
+    for (Entry entry : sharedList) {
+      if (entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 借出一个空闲连接，没有则最多等待 timeout，超时返回null
+   */
+  Entry borrow(long timeout, TimeUnit unit) throws InterruptedException {
+    waiters.incrementAndGet();
+    try {
+      // 登记为等待者之后再扫描一次，避免错过刚归还的连接
+      Entry entry = tryBorrow();
+      if (entry != null) {
+        return entry;
+      }
+      long remaining = unit.toNanos(timeout);
+      while (remaining > 0) {
+        long start = System.nanoTime();
+        entry = handoffQueue.poll(remaining, TimeUnit.NANOSECONDS);
+        if (entry == null || entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE)) {
+          return entry;
+        }
+        remaining -= System.nanoTime() - start;
+      }
+      return null;
+    } finally {
+      waiters.decrementAndGet();
+    }
+  }
+
+  /**
+   * 归还连接，有等待者时直接移交，否则记入本线程的最近列表
+   */
+  void requite(Entry entry) {
+    entry.setState(STATE_NOT_IN_USE);
+    for (int i = 0; waiters.get() > 0; i++) {
+      if (entry.getState() != STATE_NOT_IN_USE || handoffQueue.offer(entry)) {
+        return;
+      } else if ((i & 0xff) == 0xff) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+      } else {
+        Thread.yield();
+      }
+    }
+    List<WeakReference<Entry>> list = threadList.get();
+    if (list.size() < MAX_THREAD_LOCAL_ENTRIES) {
+      list.add(new WeakReference<>(entry));
+    }
+  }
+
+  /**
+   * 加入一个连接，连接的初始状态由调用方设置
+   */
+  void add(Entry entry) {
+    sharedList.add(entry);
+    // 新加入的空闲连接也尽量直接交给等待者
+    while (waiters.get() > 0 && entry.getState() == STATE_NOT_IN_USE && !handoffQueue.offer(entry)) {
+      Thread.yield();
+    }
+  }
+
+  /**
+   * 移除一个连接，返回此连接之前是否还在容器中
+   */
+  boolean remove(Entry entry) {
+    entry.setState(STATE_REMOVED);
+    return sharedList.remove(entry);
+  }
+
+  /**
+   * 借出指定的空闲连接，供后台检验使用，已被借出时返回false
+   */
+  boolean reserve(Entry entry) {
+    return entry.compareAndSetState(STATE_NOT_IN_USE, STATE_IN_USE);
+  }
+
+  /**
+   * 将空闲连接标记为已移除，供关闭空闲连接使用，已被借出时返回false
+   */
+  boolean reserveForRemoval(Entry entry) {
+    return entry.compareAndSetState(STATE_NOT_IN_USE, STATE_REMOVED);
+  }
+
+  /**
+   * 所有连接的快照
+   */
+  List<Entry> values() {
+    return new ArrayList<>(sharedList);
+  }
+
+  /**
+   * 指定状态的连接快照
+   */
+  List<Entry> values(int state) {
+    List<Entry> list = new ArrayList<>();
+    for (Entry entry : sharedList) {
+      if (entry.getState() == state) {
+        list.add(entry);
+      }
+    }
+    return list;
+  }
+
+  /**
+   * 指定状态的连接个数
+   */
+  int getCount(int state) {
+    int count = 0;
+    for (Entry entry : sharedList) {
+      if (entry.getState() == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  int size() {
+    return sharedList.size();
+  }
+
+  int getWaitingThreadCount() {
+    return waiters.get();
+  }
+
+  /**
+   * 容器中的一个真实连接
+   */
+  static final class Entry {
+
+    /**
+     * 真实连接
+     */
+    private final Connection realConnection;
+    /**
+     * 状态
+     */
+    private final AtomicInteger state;
+    /**
+     * 当前持有此连接的代理，每次借出都会新建，超时回收时用于判断归还者是否仍是持有者
+     */
+    private final AtomicReference<PooledConnection> owner = new AtomicReference<>();
+    private final long createdTimestamp;
+    private volatile long lastUsedTimestamp;
+
+    Entry(Connection realConnection, int initialState) {
+      this.realConnection = realConnection;
+      this.state = new AtomicInteger(initialState);
+      this.createdTimestamp = System.currentTimeMillis();
+      this.lastUsedTimestamp = createdTimestamp;
+    }
+
+    Connection getRealConnection() {
+      return realConnection;
+    }
+
+    int getState() {
+      return state.get();
+    }
+
+    void setState(int newState) {
+      state.set(newState);
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+      return state.compareAndSet(expect, update);
+    }
+
+    PooledConnection getOwner() {
+      return owner.get();
+    }
+
+    void setOwner(PooledConnection conn) {
+      owner.set(conn);
+    }
+
+    boolean compareAndSetOwner(PooledConnection expect, PooledConnection update) {
+      return owner.compareAndSet(expect, update);
+    }
+
+    long getCreatedTimestamp() {
+      return createdTimestamp;
+    }
+
+    long getLastUsedTimestamp() {
+      return lastUsedTimestamp;
+    }
+
+    void setLastUsedTimestamp(long lastUsedTimestamp) {
+      this.lastUsedTimestamp = lastUsedTimestamp;
+    }
+  }
+
+}
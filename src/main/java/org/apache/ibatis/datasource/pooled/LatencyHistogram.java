@@ -0,0 +1,120 @@
+/**
+ * Copyright 2009-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的耗时直方图。
+ * <p>
+ * 按2的幂分桶：0、1、2~3、4~7……，记录只是一次原子自增，百分位数返回所在桶的上界。
+ *
+ * @since 3.5.1
+ */
+public class LatencyHistogram {
+
+  private static final int BUCKET_COUNT = 64;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * 记录一次耗时，负数按0处理
+   */
+  public void record(long value) {
+    long v = Math.max(value, 0);
+    buckets.incrementAndGet(bucketIndex(v));
+    count.increment();
+    sum.add(v);
+    long current = max.get();
+    while (v > current && !max.compareAndSet(current, v)) {
+      current = max.get();
+    }
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getTotal() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public long getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : sum.sum() / n;
+  }
+
+  /**
+   * 近似百分位数
+   *
+   * @param percentile 0到100之间
+   * @return 包含该百分位的桶的上界，不超过最大值；没有记录时返回0
+   */
+  public long getPercentile(double percentile) {
+    long[] snapshot = new long[BUCKET_COUNT];
+    long total = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= rank && snapshot[i] > 0) {
+        return Math.min(bucketUpperBound(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * 清空所有记录
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.set(i, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(50)
+        + ", p99=" + getPercentile(99) + ", max=" + getMax();
+  }
+
+  private static int bucketIndex(long value) {
+    return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(value));
+  }
+
+  private static long bucketUpperBound(int index) {
+    return index == 0 ? 0 : index >= 63 ? Long.MAX_VALUE : (1L << index) - 1;
+  }
+
+}
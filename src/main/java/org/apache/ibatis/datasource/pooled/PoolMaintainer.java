@@ -0,0 +1,68 @@
+/**
+ * Copyright 2009-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * 连接池的后台维护线程，定期调用 {@link PooledDataSource#maintain()}。
+ * <p>
+ * 只弱引用数据源，数据源被回收后线程自动结束。
+ */
+class PoolMaintainer implements Runnable {
+
+  private static final Log log = LogFactory.getLog(PoolMaintainer.class);
+
+  private static final AtomicInteger threadNumber = new AtomicInteger();
+
+  private final WeakReference<PooledDataSource> dataSourceRef;
+
+  private final ScheduledExecutorService executor;
+
+  PoolMaintainer(PooledDataSource dataSource, long interval) {
+    this.dataSourceRef = new WeakReference<>(dataSource);
+    this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "mybatis-pool-maintainer-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(this, 0, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void run() {
+    PooledDataSource dataSource = dataSourceRef.get();
+    if (dataSource == null) {
+      shutdown();
+      return;
+    }
+    try {
+      dataSource.maintain();
+    } catch (Exception e) {
+      // 异常不能抛出，否则后续的调度会被取消
+      log.warn("Pool maintenance failed: " + e.getMessage());
+    }
+  }
+
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+}
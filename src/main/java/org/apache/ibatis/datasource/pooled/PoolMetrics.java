@@ -0,0 +1,172 @@
+/**
+ * Copyright 2009-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 默认的连接池指标采集器，全部使用无锁计数器，读取时不影响连接池。
+ * <pre>
+ * PoolMetrics metrics = new PoolMetrics();
+ * dataSource.setPoolMetricsListener(metrics);
+ * ...
+ * metrics.getAcquireTime().getPercentile(99);
+ * </pre>
+ *
+ * @since 3.5.1
+ */
+public class PoolMetrics implements PoolMetricsListener {
+
+  private final LongAdder createdCount = new LongAdder();
+  private final LongAdder closedCount = new LongAdder();
+  private final LongAdder badConnectionCount = new LongAdder();
+  private final LongAdder reclaimedCount = new LongAdder();
+
+  /**
+   * 当前等待连接的线程数
+   */
+  private final AtomicInteger waitingThreadCount = new AtomicInteger();
+  /**
+   * 等待线程数的峰值
+   */
+  private final AtomicInteger maxWaitingThreadCount = new AtomicInteger();
+
+  /**
+   * 获取连接的耗时
+   */
+  private final LatencyHistogram acquireTime = new LatencyHistogram();
+  /**
+   * 连接的使用时长
+   */
+  private final LatencyHistogram usageTime = new LatencyHistogram();
+  /**
+   * 等待连接的耗时
+   */
+  private final LatencyHistogram waitTime = new LatencyHistogram();
+
+  @Override
+  public void connectionCreated() {
+    createdCount.increment();
+  }
+
+  @Override
+  public void connectionClosed() {
+    closedCount.increment();
+  }
+
+  @Override
+  public void connectionAcquired(long acquireMillis) {
+    acquireTime.record(acquireMillis);
+  }
+
+  @Override
+  public void connectionReleased(long usageMillis) {
+    usageTime.record(usageMillis);
+  }
+
+  @Override
+  public void connectionReclaimed(long usageMillis) {
+    reclaimedCount.increment();
+    usageTime.record(usageMillis);
+  }
+
+  @Override
+  public void badConnection() {
+    badConnectionCount.increment();
+  }
+
+  @Override
+  public void waitStarted() {
+    int waiting = waitingThreadCount.incrementAndGet();
+    int max = maxWaitingThreadCount.get();
+    while (waiting > max && !maxWaitingThreadCount.compareAndSet(max, waiting)) {
+      max = maxWaitingThreadCount.get();
+    }
+  }
+
+  @Override
+  public void waitEnded(long waitMillis) {
+    waitingThreadCount.decrementAndGet();
+    waitTime.record(waitMillis);
+  }
+
+  public long getCreatedCount() {
+    return createdCount.sum();
+  }
+
+  public long getClosedCount() {
+    return closedCount.sum();
+  }
+
+  public long getBadConnectionCount() {
+    return badConnectionCount.sum();
+  }
+
+  public long getReclaimedCount() {
+    return reclaimedCount.sum();
+  }
+
+  public int getWaitingThreadCount() {
+    return waitingThreadCount.get();
+  }
+
+  public int getMaxWaitingThreadCount() {
+    return maxWaitingThreadCount.get();
+  }
+
+  public LatencyHistogram getAcquireTime() {
+    return acquireTime;
+  }
+
+  public LatencyHistogram getUsageTime() {
+    return usageTime;
+  }
+
+  public LatencyHistogram getWaitTime() {
+    return waitTime;
+  }
+
+  /**
+   * 清空累计的指标，当前等待线程数不受影响
+   */
+  public void reset() {
+    createdCount.reset();
+    closedCount.reset();
+    badConnectionCount.reset();
+    reclaimedCount.reset();
+    maxWaitingThreadCount.set(waitingThreadCount.get());
+    acquireTime.reset();
+    usageTime.reset();
+    waitTime.reset();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    builder.append("\n===POOL METRICS================================================");
+    builder.append("\n created                        ").append(getCreatedCount());
+    builder.append("\n closed                         ").append(getClosedCount());
+    builder.append("\n badConnections                 ").append(getBadConnectionCount());
+    builder.append("\n reclaimedOverdue               ").append(getReclaimedCount());
+    builder.append("\n waitingThreads                 ").append(getWaitingThreadCount());
+    builder.append("\n maxWaitingThreads              ").append(getMaxWaitingThreadCount());
+    builder.append("\n acquireTime                    ").append(acquireTime);
+    builder.append("\n usageTime                      ").append(usageTime);
+    builder.append("\n waitTime                       ").append(waitTime);
+    builder.append("\n===============================================================");
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2009-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.ibatis.datasource.pooled;
+
+/**
+ * 连接池事件监听器，用于采集连接池指标。
+ * <p>
+ * 回调在获取或归还连接的线程中执行，部分回调发生在连接池的锁内，实现必须快速且线程安全。
+ * 所有时间单位都是毫秒。
+ *
+ * @see PoolMetrics
+ * @see PooledDataSource#setPoolMetricsListener(PoolMetricsListener)
+ * @since 3.5.1
+ */
+public interface PoolMetricsListener {
+
+  /**
+   * 不做任何事的监听器
+   */
+  PoolMetricsListener NONE = new PoolMetricsListener() {
+  };
+
+  /**
+   * 新建了一个真实连接
+   */
+  default void connectionCreated() {
+  }
+
+  /**
+   * 关闭了一个真实连接
+   */
+  default void connectionClosed() {
+  }
+
+  /**
+   * 成功获取一个连接
+   *
+   * @param acquireMillis 从请求到拿到连接的时间，包括等待时间
+   */
+  default void connectionAcquired(long acquireMillis) {
+  }
+
+  /**
+   * 归还一个连接
+   *
+   * @param usageMillis 连接被使用的时间
+   */
+  default void connectionReleased(long usageMillis) {
+  }
+
+  /**
+   * 回收了一个超时未归还的连接
+   *
+   * @param usageMillis 连接被使用的时间
+   */
+  default void connectionReclaimed(long usageMillis) {
+  }
+
+  /**
+   * 发现一个无效连接
+   */
+  default void badConnection() {
+  }
+
+  /**
+   * 一个线程开始等待连接
+   */
+  default void waitStarted() {
+  }
+
+  /**
+   * 一个线程结束等待，不论是否拿到连接
+   *
+   * @param waitMillis 本次等待的时间
+   */
+  default void waitEnded(long waitMillis) {
+  }
+
+}
@@ -15,6 +15,7 @@ package org.apache.ibatis.datasource.pooled;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 记录连接池状态
@@ -36,6 +37,10 @@ public class PoolState {
    * 正在使用的的连接列表
    */
   final List<PooledConnection> activeConnections = new ArrayList<>();
+  /**
+   * 后台维护正在检验的空闲连接数，检验期间不在任何列表中，但仍计入空闲和活动连接数的上限
+   */
+  int pingingCount = 0;
   /**
    * 请求连接的次数
    */
@@ -72,6 +77,11 @@ public class PoolState {
    */
   long badConnectionCount = 0;
 
+  /**
+   * 当前等待连接的线程数
+   */
+  final AtomicInteger waitingThreadCount = new AtomicInteger();
+
   PoolState(PooledDataSource dataSource) {
     this.dataSource = dataSource;
   }
@@ -80,7 +90,7 @@ public class PoolState {
     return requestCount;
   }
 
-  private synchronized long getAverageRequestTime() {
+  public synchronized long getAverageRequestTime() {
     return requestCount == 0 ? 0 : accumulatedRequestTime / requestCount;
   }
 
@@ -106,11 +116,18 @@ public class PoolState {
         : accumulatedCheckoutTimeOfOverdueConnections / claimedOverdueConnectionCount;
   }
 
-  private synchronized long getAverageCheckoutTime() {
+  public synchronized long getAverageCheckoutTime() {
     return requestCount == 0 ? 0 : accumulatedCheckoutTime / requestCount;
   }
 
 
+  /**
+   * 当前等待连接的线程数，读取时不加锁
+   */
+  public int getWaitingThreadCount() {
+    return waitingThreadCount.get();
+  }
+
   public synchronized int getIdleConnectionCount() {
     return idleConnections.size();
   }
@@ -119,6 +136,15 @@ public class PoolState {
     return activeConnections.size();
   }
 
+  /**
+   * 后台维护正在检验的空闲连接数
+   *
+   * @since 3.5.1
+   */
+  public synchronized int getPingingConnectionCount() {
+    return pingingCount;
+  }
+
   @Override
   public synchronized String toString() {
     StringBuilder builder = new StringBuilder();
@@ -138,9 +164,16 @@ public class PoolState {
     builder.append("\n poolPingQuery                  ").append(dataSource.poolPingQuery);
     builder.append("\n poolPingConnectionsNotUsedFor  ")
         .append(dataSource.poolPingConnectionsNotUsedFor);
+    builder.append("\n poolMaintenanceInterval        ").append(dataSource.poolMaintenanceInterval);
+    builder.append("\n poolMinIdleConnections         ")
+        .append(dataSource.poolMinimumIdleConnections);
+    builder.append("\n poolMaxConnectionLifetime      ")
+        .append(dataSource.poolMaximumConnectionLifetime);
+    builder.append("\n poolMaxIdleTime                ").append(dataSource.poolMaximumIdleTime);
     builder.append("\n ---STATUS-----------------------------------------------------");
     builder.append("\n activeConnections              ").append(getActiveConnectionCount());
     builder.append("\n idleConnections                ").append(getIdleConnectionCount());
+    builder.append("\n waitingThreads                 ").append(getWaitingThreadCount());
     builder.append("\n requestCount                   ").append(getRequestCount());
     builder.append("\n averageRequestTime             ").append(getAverageRequestTime());
     builder.append("\n averageCheckoutTime            ").append(getAverageCheckoutTime());
@@ -51,6 +51,10 @@ class PooledConnection implements InvocationHandler {
   private long lastUsedTimestamp;
   private int connectionTypeCode;
   private boolean valid;
+  /**
+   * 所属的连接容器条目，仅 {@link ConcurrentPooledDataSource} 使用
+   */
+  private ConnectionBag.Entry bagEntry;
 
   /**
    * Constructor for SimplePooledConnection that uses the Connection and PooledDataSource passed
@@ -131,6 +135,14 @@ class PooledConnection implements InvocationHandler {
     this.connectionTypeCode = connectionTypeCode;
   }
 
+  ConnectionBag.Entry getBagEntry() {
+    return bagEntry;
+  }
+
+  void setBagEntry(ConnectionBag.Entry bagEntry) {
+    this.bagEntry = bagEntry;
+  }
+
   /**
    * Getter for the time that the connection was created.
    *
@@ -20,6 +20,9 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
@@ -44,7 +47,7 @@ public class PooledDataSource implements DataSource {
   /**
    * 无连接池数据源
    */
-  private final UnpooledDataSource dataSource;
+  final UnpooledDataSource dataSource;
 
   /**
    * 最大活跃连接数
@@ -75,11 +78,37 @@ public class PooledDataSource implements DataSource {
    * 连接超过时间未使用时，发送一条测试语句，判断连接是否正常
    */
   int poolPingConnectionsNotUsedFor;
+  /**
+   * 后台维护线程的运行间隔，0表示不启用
+   */
+  int poolMaintenanceInterval;
+  /**
+   * 后台维护线程保持的最小空闲连接数
+   */
+  int poolMinimumIdleConnections;
+  /**
+   * 连接的最长存活时间，0表示不限制
+   */
+  int poolMaximumConnectionLifetime;
+  /**
+   * 空闲连接的最长空闲时间，0表示不限制
+   */
+  int poolMaximumIdleTime;
+
+  /**
+   * 连接池事件监听器
+   */
+  volatile PoolMetricsListener metricsListener = PoolMetricsListener.NONE;
+
+  /**
+   * 后台维护线程，首次获取连接时启动
+   */
+  private volatile PoolMaintainer maintainer;
 
   /**
    * hashcode，标志此连接池
    */
-  private int expectedConnectionTypeCode;
+  int expectedConnectionTypeCode;
 
   public PooledDataSource() {
     dataSource = new UnpooledDataSource();
@@ -120,11 +149,13 @@ public class PooledDataSource implements DataSource {
    */
   @Override
   public Connection getConnection() throws SQLException {
+    startMaintenanceIfNecessary();
     return popConnection(dataSource.getUsername(), dataSource.getPassword()).getProxyConnection();
   }
 
   @Override
   public Connection getConnection(String username, String password) throws SQLException {
+    startMaintenanceIfNecessary();
     return popConnection(username, password).getProxyConnection();
   }
 
@@ -267,6 +298,65 @@ public class PooledDataSource implements DataSource {
     forceCloseAll();
   }
 
+  /**
+   * How often, in milliseconds, the background maintenance thread validates, evicts and tops up idle
+   * connections. While it is enabled, connections are no longer pinged when they are checked out or
+   * returned. 0 (the default) disables it.
+   *
+   * @param milliseconds the delay between two maintenance runs
+   * @since 3.5.1
+   */
+  public void setPoolMaintenanceInterval(int milliseconds) {
+    this.poolMaintenanceInterval = milliseconds;
+    stopMaintenance();
+  }
+
+  /**
+   * The number of idle connections the maintenance thread tries to keep in the pool.
+   *
+   * @param poolMinimumIdleConnections The minimum number of idle connections
+   * @since 3.5.1
+   */
+  public void setPoolMinimumIdleConnections(int poolMinimumIdleConnections) {
+    this.poolMinimumIdleConnections = poolMinimumIdleConnections;
+  }
+
+  /**
+   * The maximum time a connection may live. Older connections are closed when they are returned or
+   * by the maintenance thread. 0 (the default) means no limit.
+   *
+   * @param milliseconds the maximum lifetime
+   * @since 3.5.1
+   */
+  public void setPoolMaximumConnectionLifetime(int milliseconds) {
+    this.poolMaximumConnectionLifetime = milliseconds;
+  }
+
+  /**
+   * The maximum time a connection may stay idle before the maintenance thread closes it, as long as
+   * more than poolMinimumIdleConnections connections are idle. 0 (the default) means no limit.
+   *
+   * @param milliseconds the maximum idle time
+   * @since 3.5.1
+   */
+  public void setPoolMaximumIdleTime(int milliseconds) {
+    this.poolMaximumIdleTime = milliseconds;
+  }
+
+  /**
+   * Receives pool events such as checkouts, returns and waits, e.g. a {@link PoolMetrics}.
+   *
+   * @param metricsListener the listener, or null to remove it
+   * @since 3.5.1
+   */
+  public void setPoolMetricsListener(PoolMetricsListener metricsListener) {
+    this.metricsListener = metricsListener == null ? PoolMetricsListener.NONE : metricsListener;
+  }
+
+  public PoolMetricsListener getPoolMetricsListener() {
+    return metricsListener;
+  }
+
   public String getDriver() {
     return dataSource.getDriver();
   }
@@ -327,6 +417,22 @@ public class PooledDataSource implements DataSource {
     return poolPingConnectionsNotUsedFor;
   }
 
+  public int getPoolMaintenanceInterval() {
+    return poolMaintenanceInterval;
+  }
+
+  public int getPoolMinimumIdleConnections() {
+    return poolMinimumIdleConnections;
+  }
+
+  public int getPoolMaximumConnectionLifetime() {
+    return poolMaximumConnectionLifetime;
+  }
+
+  public int getPoolMaximumIdleTime() {
+    return poolMaximumIdleTime;
+  }
+
   /**
    * 关闭所有连接池里的连接，包括空闲和活跃
    **/
@@ -346,6 +452,7 @@ public class PooledDataSource implements DataSource {
             realConn.rollback();
           }
           realConn.close();
+          metricsListener.connectionClosed();
         } catch (Exception e) {
           // ignore
         }
@@ -361,6 +468,7 @@ public class PooledDataSource implements DataSource {
             realConn.rollback();
           }
           realConn.close();
+          metricsListener.connectionClosed();
         } catch (Exception e) {
           // ignore
         }
@@ -378,7 +486,7 @@ public class PooledDataSource implements DataSource {
   /**
    * 生成连接池的唯一标识
    */
-  private int assembleConnectionTypeCode(String url, String username, String password) {
+  int assembleConnectionTypeCode(String url, String username, String password) {
     return ("" + url + username + password).hashCode();
   }
 
@@ -390,8 +498,10 @@ public class PooledDataSource implements DataSource {
     synchronized (state) {
       state.activeConnections.remove(conn);
       if (conn.isValid()) {
-        if (state.idleConnections.size() < poolMaximumIdleConnections
-            && conn.getConnectionTypeCode() == expectedConnectionTypeCode) {
+        metricsListener.connectionReleased(conn.getCheckoutTime());
+        if (state.idleConnections.size() + state.pingingCount < poolMaximumIdleConnections
+            && conn.getConnectionTypeCode() == expectedConnectionTypeCode
+            && !isExpired(conn.getCreatedTimestamp())) {
           state.accumulatedCheckoutTime += conn.getCheckoutTime();
           if (!conn.getRealConnection().getAutoCommit()) {
             conn.getRealConnection().rollback();
@@ -411,6 +521,7 @@ public class PooledDataSource implements DataSource {
             conn.getRealConnection().rollback();
           }
           conn.getRealConnection().close();
+          metricsListener.connectionClosed();
           if (log.isDebugEnabled()) {
             log.debug("Closed connection " + conn.getRealHashCode() + ".");
           }
@@ -422,6 +533,7 @@ public class PooledDataSource implements DataSource {
               + ") attempted to return to the pool, discarding connection.");
         }
         state.badConnectionCount++;
+        metricsListener.badConnection();
       }
     }
   }
@@ -445,26 +557,28 @@ public class PooledDataSource implements DataSource {
             log.debug("Checked out connection " + conn.getRealHashCode() + " from pool.");
           }
         } else {
-          // 没有空闲的连接，但是活动的连接数小于最大连接数
-          if (state.activeConnections.size() < poolMaximumActiveConnections) {
+          // 没有空闲的连接，但是活动的连接数（包括正在检验的空闲连接）小于最大连接数
+          if (state.activeConnections.size() + state.pingingCount < poolMaximumActiveConnections) {
             // 创建一个新的连接
             conn = new PooledConnection(dataSource.getConnection(), this);
+            metricsListener.connectionCreated();
             if (log.isDebugEnabled()) {
               log.debug("Created connection " + conn.getRealHashCode() + ".");
             }
           } else {
-            // 否侧，不能创建连接
-            PooledConnection oldestActiveConnection = state.activeConnections.get(0);
+            // 否侧，不能创建连接；连接都在检验中时没有活动连接，只能等待
+            PooledConnection oldestActiveConnection = state.activeConnections.isEmpty() ? null : state.activeConnections.get(0);
             //获取第一个连接的已使用时间
-            long longestCheckoutTime = oldestActiveConnection.getCheckoutTime();
+            long longestCheckoutTime = oldestActiveConnection == null ? 0 : oldestActiveConnection.getCheckoutTime();
             //如果此连接超时
-            if (longestCheckoutTime > poolMaximumCheckoutTime) {
+            if (oldestActiveConnection != null && longestCheckoutTime > poolMaximumCheckoutTime) {
               //超时连接个数加一
               state.claimedOverdueConnectionCount++;
               //累计超时时间
               state.accumulatedCheckoutTimeOfOverdueConnections += longestCheckoutTime;
               //累计使用时间
               state.accumulatedCheckoutTime += longestCheckoutTime;
+              metricsListener.connectionReclaimed(longestCheckoutTime);
               //从活跃连接列表中移除
               state.activeConnections.remove(oldestActiveConnection);
               //如果不是自动提交
@@ -507,9 +621,17 @@ public class PooledDataSource implements DataSource {
                       "Waiting as long as " + poolTimeToWait + " milliseconds for connection.");
                 }
                 long wt = System.currentTimeMillis();
-                //等待
-                state.wait(poolTimeToWait);
-                state.accumulatedWaitTime += System.currentTimeMillis() - wt;
+                state.waitingThreadCount.incrementAndGet();
+                metricsListener.waitStarted();
+                try {
+                  //等待
+                  state.wait(poolTimeToWait);
+                } finally {
+                  long waited = System.currentTimeMillis() - wt;
+                  state.waitingThreadCount.decrementAndGet();
+                  state.accumulatedWaitTime += waited;
+                  metricsListener.waitEnded(waited);
+                }
               } catch (InterruptedException e) {
                 break;
               }
@@ -528,13 +650,16 @@ public class PooledDataSource implements DataSource {
             conn.setLastUsedTimestamp(System.currentTimeMillis());
             state.activeConnections.add(conn);
             state.requestCount++;
-            state.accumulatedRequestTime += System.currentTimeMillis() - t;
+            long requestTime = System.currentTimeMillis() - t;
+            state.accumulatedRequestTime += requestTime;
+            metricsListener.connectionAcquired(requestTime);
           } else {
             if (log.isDebugEnabled()) {
               log.debug("A bad connection (" + conn.getRealHashCode()
                   + ") was returned from the pool, getting another connection.");
             }
             state.badConnectionCount++;
+            metricsListener.badConnection();
             localBadConnectionCount++;
             conn = null;
             if (localBadConnectionCount > (poolMaximumIdleConnections
@@ -564,9 +689,18 @@ public class PooledDataSource implements DataSource {
   }
 
   /**
-   * 检验连接是否可用
+   * 检验连接是否可用，启用后台维护时不在此执行测试语句
    */
   boolean pingConnection(PooledConnection conn) {
+    return pingConnection(conn, poolMaintenanceInterval <= 0);
+  }
+
+  /**
+   * 检验连接是否可用
+   *
+   * @param runPingQuery 是否允许执行测试语句
+   */
+  boolean pingConnection(PooledConnection conn, boolean runPingQuery) {
     boolean result = true;
 
     try {
@@ -580,7 +714,7 @@ public class PooledDataSource implements DataSource {
     }
     //如果未关闭进入判断
     if (result) {
-      if (poolPingEnabled) {
+      if (runPingQuery && poolPingEnabled) {
         if (poolPingConnectionsNotUsedFor >= 0
             && conn.getTimeElapsedSinceLastUse() > poolPingConnectionsNotUsedFor) {
           try {
@@ -616,6 +750,161 @@ public class PooledDataSource implements DataSource {
     return result;
   }
 
+  /**
+   * 连接是否超过最长存活时间
+   */
+  boolean isExpired(long createdTimestamp) {
+    return poolMaximumConnectionLifetime > 0
+        && System.currentTimeMillis() - createdTimestamp > poolMaximumConnectionLifetime;
+  }
+
+  /**
+   * 空闲连接是否超过最长空闲时间
+   */
+  boolean isIdleTooLong(long lastUsedTimestamp) {
+    return poolMaximumIdleTime > 0
+        && System.currentTimeMillis() - lastUsedTimestamp > poolMaximumIdleTime;
+  }
+
+  /**
+   * 空闲连接是否需要执行测试语句
+   */
+  boolean needsPing(long lastUsedTimestamp) {
+    return poolPingEnabled && poolPingConnectionsNotUsedFor >= 0
+        && System.currentTimeMillis() - lastUsedTimestamp > poolPingConnectionsNotUsedFor;
+  }
+
+  /**
+   * 按需启动后台维护线程
+   */
+  void startMaintenanceIfNecessary() {
+    if (poolMaintenanceInterval > 0 && maintainer == null) {
+      synchronized (this) {
+        if (maintainer == null) {
+          maintainer = new PoolMaintainer(this, poolMaintenanceInterval);
+        }
+      }
+    }
+  }
+
+  /**
+   * 停止后台维护线程，下次获取连接时按新配置重新启动
+   */
+  void stopMaintenance() {
+    synchronized (this) {
+      if (maintainer != null) {
+        maintainer.shutdown();
+        maintainer = null;
+      }
+    }
+  }
+
+  /**
+   * 后台维护：关闭过期和空闲过久的连接，检验空闲连接，补足最小空闲连接数。
+   * 测试语句和新建连接都在锁外执行，不阻塞获取连接的线程。
+   */
+  void maintain() throws SQLException {
+    // 关闭过期和空闲过久的连接
+    List<PooledConnection> evicted = new ArrayList<>();
+    synchronized (state) {
+      int idleCount = state.idleConnections.size();
+      for (Iterator<PooledConnection> it = state.idleConnections.iterator(); it.hasNext(); ) {
+        PooledConnection conn = it.next();
+        if (isExpired(conn.getCreatedTimestamp())
+            || (idleCount > poolMinimumIdleConnections && isIdleTooLong(conn.getLastUsedTimestamp()))) {
+          it.remove();
+          evicted.add(conn);
+          idleCount--;
+        }
+      }
+    }
+    for (PooledConnection conn : evicted) {
+      closeIdleConnection(conn);
+      if (log.isDebugEnabled()) {
+        log.debug("Evicted idle connection " + conn.getRealHashCode() + ".");
+      }
+    }
+
+    // 逐个检验空闲连接，检验期间从空闲列表中取出，避免被借出，但仍计入连接数上限
+    List<PooledConnection> candidates;
+    synchronized (state) {
+      candidates = new ArrayList<>(state.idleConnections);
+    }
+    for (PooledConnection conn : candidates) {
+      if (!needsPing(conn.getLastUsedTimestamp())) {
+        continue;
+      }
+      synchronized (state) {
+        if (!state.idleConnections.remove(conn)) {
+          continue;
+        }
+        state.pingingCount++;
+      }
+      boolean good = false;
+      boolean kept = false;
+      try {
+        good = pingConnection(conn, true);
+      } finally {
+        // 放回空闲列表和减少检验中的个数在同一个锁内，连接始终被计入
+        synchronized (state) {
+          state.pingingCount--;
+          if (good && state.idleConnections.size() < poolMaximumIdleConnections) {
+            state.idleConnections.add(conn);
+            kept = true;
+          } else if (!good) {
+            state.badConnectionCount++;
+            metricsListener.badConnection();
+          }
+          // 不论结果都唤醒等待的线程，关闭连接后空出的名额可以新建连接
+          state.notifyAll();
+        }
+      }
+      if (!kept) {
+        closeIdleConnection(conn);
+      }
+    }
+
+    // 补足最小空闲连接数
+    while (hasRoomForIdleConnection()) {
+      PooledConnection conn = new PooledConnection(dataSource.getConnection(), this);
+      metricsListener.connectionCreated();
+      synchronized (state) {
+        if (hasRoomForIdleConnection()) {
+          state.idleConnections.add(conn);
+          state.notifyAll();
+          if (log.isDebugEnabled()) {
+            log.debug("Created idle connection " + conn.getRealHashCode() + ".");
+          }
+          continue;
+        }
+      }
+      closeIdleConnection(conn);
+      break;
+    }
+  }
+
+  private boolean hasRoomForIdleConnection() {
+    synchronized (state) {
+      int idle = state.idleConnections.size() + state.pingingCount;
+      return idle < poolMinimumIdleConnections && idle < poolMaximumIdleConnections
+          && idle + state.activeConnections.size() < poolMaximumActiveConnections;
+    }
+  }
+
+  private void closeIdleConnection(PooledConnection conn) {
+    conn.invalidate();
+    try {
+      Connection realConn = conn.getRealConnection();
+      if (!realConn.getAutoCommit()) {
+        realConn.rollback();
+      }
+      realConn.close();
+      metricsListener.connectionClosed();
+    } catch (Exception e) {
+      // ignore
+    }
+  }
+
   /**
    * Unwraps a pooled connection to get to the 'real' connection
    *
@@ -634,6 +923,7 @@ public class PooledDataSource implements DataSource {
 
   @Override
   protected void finalize() throws Throwable {
+    stopMaintenance();
     forceCloseAll();
     super.finalize();
   }
@@ -223,13 +223,8 @@ public abstract class BaseExecutor implements Executor {
     if (closed) {
       throw new ExecutorException("Executor was closed.");
     }
-    //创建key
-    CacheKey cacheKey = new CacheKey();
-    //设置 id、offset、limit、sql 到CacheKey中
-    cacheKey.update(ms.getId());
-    cacheKey.update(rowBounds.getOffset());
-    cacheKey.update(rowBounds.getLimit());
-    cacheKey.update(boundSql.getSql());
+    //创建key，以 id、offset、limit、sql 开头
+    CacheKey cacheKey = ms.newCacheKey(rowBounds, boundSql.getSql());
     //设置ParameterMapping数组的元素对应的value到CacheKey中
     List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
     //参数对应的处理方法
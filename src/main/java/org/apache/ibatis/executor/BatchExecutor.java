@@ -17,11 +17,20 @@ package org.apache.ibatis.executor;
 
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
@@ -30,6 +39,8 @@ import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.StatementType;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
@@ -43,10 +54,41 @@ public class BatchExecutor extends BaseExecutor {
 
   public static final int BATCH_UPDATE_RETURN_VALUE = Integer.MIN_VALUE + 1002;
 
+  private static final AtomicInteger workerNumber = new AtomicInteger();
+
   private final List<Statement> statementList = new ArrayList<>();
   private final List<BatchResult> batchResultList = new ArrayList<>();
+  /**
+   * 与statementList一一对应，只缓存参数值的位置是BufferedStatement，对应的Statement为null，其余为null
+   */
+  private final List<BufferedStatement> bufferedStatementList = new ArrayList<>();
   private String currentSql;
   private MappedStatement currentStatement;
+  /**
+   * 声明为 batchIndependent 的语句已打开的Statement在statementList中的下标，按语句和SQL查找
+   */
+  private final Map<MappedStatement, Map<String, Integer>> independentStatements = new HashMap<>();
+  /**
+   * 当前批次累积的行数
+   */
+  private int batchRows;
+  /**
+   * 当前批次参数估算的字节数，只在设置了batchFlushBytes时统计
+   */
+  private long batchBytes;
+  /**
+   * 达到阈值自动执行的结果，没有batchResultHandler时保留到下次flushStatements()一起返回
+   */
+  private final List<BatchResult> autoFlushedResults = new ArrayList<>();
+  /**
+   * batchPipelining开启时在后台执行的上一个批次，同一时刻最多一个，保证批次按顺序执行。
+   * 它执行期间只有后台线程使用连接，调用线程要使用连接时必须先等它结束
+   */
+  private Future<List<BatchResult>> pendingBatch;
+  /**
+   * 在本Executor的连接上执行批次的后台线程，第一次异步执行时创建
+   */
+  private ExecutorService batchWorker;
 
   public BatchExecutor(Configuration configuration, Transaction transaction) {
     super(configuration, transaction);
@@ -55,27 +97,77 @@ public class BatchExecutor extends BaseExecutor {
   @Override
   public int doUpdate(MappedStatement ms, Object parameterObject) throws SQLException {
     final Configuration configuration = ms.getConfiguration();
+    final boolean pipelined = configuration.isBatchPipelining() && isBufferable(ms);
+    if (pendingBatch != null && (pendingBatch.isDone() || !pipelined)) {
+      // 后台批次已结束时尽早报告它的异常；
+      // 不能只缓存参数值的语句要在调用线程上预编译、生成主键，必须等后台批次结束才能使用连接
+      collectAutoFlushedResults(awaitPendingBatchOrClose());
+    }
     final StatementHandler handler = configuration.newStatementHandler(this, ms, parameterObject, RowBounds.DEFAULT, null, null);
     final BoundSql boundSql = handler.getBoundSql();
     final String sql = boundSql.getSql();
-    final Statement stmt;
+    BufferedRow row = null;
+    Statement stmt;
+    int index = -1;
     if (sql.equals(currentSql) && ms.equals(currentStatement)) {
-      int last = statementList.size() - 1;
-      stmt = statementList.get(last);
-      applyTransactionTimeout(stmt);
-      handler.parameterize(stmt);//fix Issues 322
-      BatchResult batchResult = batchResultList.get(last);
-      batchResult.addParameterObject(parameterObject);
+      index = statementList.size() - 1;
+    } else if (ms.isBatchIndependent()) {
+      // 与中间执行的语句无关，可以加入之前打开的同一SQL的Statement，currentSql仍指向最后一个
+      index = findIndependentStatement(ms, sql);
+    }
+    if (index >= 0) {
+      BufferedStatement bufferedStatement = bufferedStatementList.get(index);
+      if (bufferedStatement != null) {
+        // 现在取出参数值，执行时再绑定，参数对象之后被修改也不影响这一行
+        row = BufferedRow.capture(ms, boundSql, parameterObject);
+        bufferedStatement.addRow(row);
+      } else {
+        stmt = statementList.get(index);
+        applyTransactionTimeout(stmt);
+        handler.parameterize(stmt);//fix Issues 322
+        handler.batch(stmt);
+      }
+      batchResultList.get(index).addParameterObject(parameterObject);
     } else {
-      Connection connection = getConnection(ms.getStatementLog());
-      stmt = handler.prepare(connection, transaction.getTimeout());
-      handler.parameterize(stmt);    //fix Issues 322
+      MultiRowInsert multiRowInsert = isInsertRewritable(ms) ? MultiRowInsert.parse(sql) : null;
+      BufferedStatement bufferedStatement = null;
+      if (multiRowInsert != null || pipelined) {
+        // 多行插入和后台执行的语句都在执行时才预编译，调用线程不使用连接
+        bufferedStatement = new BufferedStatement(multiRowInsert);
+        row = BufferedRow.capture(ms, boundSql, parameterObject);
+        bufferedStatement.addRow(row);
+        stmt = null;
+      } else {
+        Connection connection = getConnection(ms.getStatementLog());
+        stmt = handler.prepare(connection, transaction.getTimeout());
+        handler.parameterize(stmt);    //fix Issues 322
+        handler.batch(stmt);
+      }
       currentSql = sql;
       currentStatement = ms;
+      if (ms.isBatchIndependent()) {
+        independentStatements.computeIfAbsent(ms, k -> new HashMap<>()).put(sql, statementList.size());
+      }
       statementList.add(stmt);
+      bufferedStatementList.add(bufferedStatement);
       batchResultList.add(new BatchResult(ms, sql, parameterObject));
     }
-    handler.batch(stmt);
+    batchRows++;
+    if (configuration.getBatchFlushBytes() > 0) {
+      batchBytes += (row != null ? row : BufferedRow.capture(ms, boundSql, parameterObject)).estimateBytes();
+    }
+    if (index < 0) {
+      index = statementList.size() - 1;
+    }
+    if (isFlushRequired(batchResultList.get(index).getParameterObjects().size())) {
+      // 执行整个批次而不只是达到阈值的Statement，保持语句的执行顺序；
+      // 后台线程只执行缓存了参数值的语句，有在调用线程上预编译的语句时同步执行
+      if (configuration.isBatchPipelining() && !bufferedStatementList.contains(null)) {
+        executeBatchAsync();
+      } else {
+        collectAutoFlushedResults(executeBatch());
+      }
+    }
     return BATCH_UPDATE_RETURN_VALUE;
   }
 
@@ -110,15 +202,159 @@ public class BatchExecutor extends BaseExecutor {
 
   @Override
   public List<BatchResult> doFlushStatements(boolean isRollback) throws SQLException {
+    if (isRollback) {
+      try {
+        // 后台批次还在使用连接，必须等它结束才能回滚，它的异常已无意义
+        awaitPendingBatch();
+      } catch (RuntimeException | SQLException e) {
+        // ignore
+      } finally {
+        autoFlushedResults.clear();
+        closeBatch();
+      }
+      return Collections.emptyList();
+    }
+    List<BatchResult> results = executeBatch();
+    if (configuration.getBatchResultHandler() != null) {
+      return Collections.emptyList();
+    }
+    if (autoFlushedResults.isEmpty()) {
+      return results;
+    }
+    List<BatchResult> allResults = new ArrayList<>(autoFlushedResults);
+    allResults.addAll(results);
+    autoFlushedResults.clear();
+    return allResults;
+  }
+
+  @Override
+  public void close(boolean forceRollback) {
     try {
-      List<BatchResult> results = new ArrayList<>();
-      if (isRollback) {
-        return Collections.emptyList();
+      super.close(forceRollback);
+    } finally {
+      if (batchWorker != null) {
+        batchWorker.shutdown();
       }
-      for (int i = 0, n = statementList.size(); i < n; i++) {
-        Statement stmt = statementList.get(i);
+    }
+  }
+
+  /**
+   * 执行当前批次的所有Statement，后台还有批次时先等它执行完
+   */
+  private List<BatchResult> executeBatch() throws SQLException {
+    try {
+      List<BatchResult> results = awaitPendingBatch();
+      results.addAll(executeStatements(statementList, bufferedStatementList, batchResultList));
+      return results;
+    } finally {
+      closeBatch();
+    }
+  }
+
+  /**
+   * 把当前批次交给后台线程执行，调用线程继续缓存下一批的参数值。
+   * 后台同一时刻只执行一个批次，上一个批次失败时它的异常在这里抛出，之后的批次不再执行。
+   * 这个批次的StatementHandler、ParameterHandler插件和batchResultHandler都在后台线程上执行
+   */
+  private void executeBatchAsync() throws SQLException {
+    collectAutoFlushedResults(awaitPendingBatchOrClose());
+    List<Statement> statements = new ArrayList<>(statementList);
+    List<BufferedStatement> bufferedStatements = new ArrayList<>(bufferedStatementList);
+    List<BatchResult> batchResults = new ArrayList<>(batchResultList);
+    closeBatch();
+    if (batchWorker == null) {
+      batchWorker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "mybatis-batch-flush-" + workerNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    pendingBatch = batchWorker.submit(() -> executeStatements(statements, bufferedStatements, batchResults));
+  }
+
+  /**
+   * 等待后台批次执行完，返回它的结果，后台批次的异常原样抛出
+   */
+  private List<BatchResult> awaitPendingBatch() throws SQLException {
+    if (pendingBatch == null) {
+      return new ArrayList<>();
+    }
+    Future<List<BatchResult>> future = pendingBatch;
+    pendingBatch = null;
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException e) {
+          // 后台线程还在使用连接，不能提前返回
+          interrupted = true;
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof SQLException) {
+            throw (SQLException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new ExecutorException("Error executing batch. Cause: " + cause, cause);
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * 等待后台批次，它失败时同时丢弃当前批次，失败之后的批次都不再执行
+   */
+  private List<BatchResult> awaitPendingBatchOrClose() throws SQLException {
+    try {
+      return awaitPendingBatch();
+    } catch (RuntimeException | SQLException e) {
+      closeBatch();
+      throw e;
+    }
+  }
+
+  private void collectAutoFlushedResults(List<BatchResult> results) {
+    if (configuration.getBatchResultHandler() == null) {
+      autoFlushedResults.addAll(results);
+    }
+  }
+
+  /**
+   * 按顺序执行statements，设置了batchResultHandler时每执行一个就交给它处理，结束后关闭所有Statement
+   */
+  private List<BatchResult> executeStatements(List<Statement> statements, List<BufferedStatement> bufferedStatements,
+      List<BatchResult> batchResults) throws SQLException {
+    try {
+      List<BatchResult> results = new ArrayList<>();
+      BatchResultHandler batchResultHandler = configuration.getBatchResultHandler();
+      for (int i = 0, n = statements.size(); i < n; i++) {
+        BatchResult batchResult = batchResults.get(i);
+        BufferedStatement bufferedStatement = bufferedStatements.get(i);
+        if (bufferedStatement != null) {
+          try {
+            if (bufferedStatement.getMultiRowInsert() != null) {
+              executeMultiRowInsert(bufferedStatement, batchResult);
+            } else {
+              executeBufferedBatch(bufferedStatement, batchResult);
+            }
+          } catch (BatchUpdateException e) {
+            throw batchExecutorException(i, e, results, batchResult);
+          }
+          results.add(batchResult);
+          if (batchResultHandler != null) {
+            batchResultHandler.handleBatchResult(batchResult);
+          }
+          continue;
+        }
+        Statement stmt = statements.get(i);
         applyTransactionTimeout(stmt);
-        BatchResult batchResult = batchResultList.get(i);
         try {
           batchResult.setUpdateCounts(stmt.executeBatch());
           MappedStatement ms = batchResult.getMappedStatement();
@@ -135,30 +371,168 @@ public class BatchExecutor extends BaseExecutor {
           // Close statement to close cursor #1109
           closeStatement(stmt);
         } catch (BatchUpdateException e) {
-          StringBuilder message = new StringBuilder();
-          message.append(batchResult.getMappedStatement().getId())
-              .append(" (batch index #")
-              .append(i + 1)
-              .append(")")
-              .append(" failed.");
-          if (i > 0) {
-            message.append(" ")
-                .append(i)
-                .append(" prior sub executor(s) completed successfully, but will be rolled back.");
-          }
-          throw new BatchExecutorException(message.toString(), e, results, batchResult);
+          throw batchExecutorException(i, e, results, batchResult);
         }
         results.add(batchResult);
+        if (batchResultHandler != null) {
+          batchResultHandler.handleBatchResult(batchResult);
+        }
       }
       return results;
     } finally {
-      for (Statement stmt : statementList) {
+      for (Statement stmt : statements) {
+        closeStatement(stmt);
+      }
+    }
+  }
+
+  private BatchExecutorException batchExecutorException(int index, BatchUpdateException e, List<BatchResult> results,
+      BatchResult batchResult) {
+    StringBuilder message = new StringBuilder();
+    message.append(batchResult.getMappedStatement().getId())
+        .append(" (batch index #")
+        .append(index + 1)
+        .append(")")
+        .append(" failed.");
+    if (index > 0) {
+      message.append(" ")
+          .append(index)
+          .append(" prior sub executor(s) completed successfully, but will be rolled back.");
+    }
+    return new BatchExecutorException(message.toString(), e, results, batchResult);
+  }
+
+  /**
+   * 预编译、不需要逐行取主键或者用JDBC返回主键的语句可以只缓存参数值，执行时再使用连接。
+   * selectKey等其他主键生成器在调用线程上使用连接，不能缓存
+   */
+  private boolean isBufferable(MappedStatement ms) {
+    if (ms.getStatementType() != StatementType.PREPARED) {
+      return false;
+    }
+    Class<?> keyGeneratorType = ms.getKeyGenerator().getClass();
+    return NoKeyGenerator.class.equals(keyGeneratorType) || Jdbc3KeyGenerator.class.equals(keyGeneratorType);
+  }
+
+  /**
+   * 只有可以缓存参数值的INSERT才改写为多行插入
+   */
+  private boolean isInsertRewritable(MappedStatement ms) {
+    return configuration.getBatchInsertRewriteRows() > 1
+        && ms.getSqlCommandType() == SqlCommandType.INSERT
+        && isBufferable(ms);
+  }
+
+  /**
+   * 预编译只缓存了参数值的语句，逐行绑定后作为JDBC批量执行，再回填JDBC返回的主键
+   */
+  private void executeBufferedBatch(BufferedStatement bufferedStatement, BatchResult batchResult) throws SQLException {
+    MappedStatement ms = batchResult.getMappedStatement();
+    List<Object> parameterObjects = batchResult.getParameterObjects();
+    List<BufferedRow> rows = bufferedStatement.getRows();
+    Statement stmt = null;
+    try {
+      for (int i = 0, n = rows.size(); i < n; i++) {
+        StatementHandler handler = newRowHandler(ms, rows.get(i));
+        if (stmt == null) {
+          stmt = handler.prepare(getConnection(ms.getStatementLog()), transaction.getTimeout());
+        }
+        handler.parameterize(stmt);
+        handler.batch(stmt);
+      }
+      batchResult.setUpdateCounts(stmt.executeBatch());
+      if (Jdbc3KeyGenerator.class.equals(ms.getKeyGenerator().getClass())) {
+        ((Jdbc3KeyGenerator) ms.getKeyGenerator()).processBatch(ms, stmt, parameterObjects);
+      }
+    } finally {
+      closeStatement(stmt);
+    }
+  }
+
+  /**
+   * 把累积的行按batchInsertRewriteRows和batchInsertRewriteParameters分段，每段执行一条多行插入。
+   * 驱动返回的影响行数与行数相同时每行记为1，否则记为 {@link Statement#SUCCESS_NO_INFO}；
+   * 失败时包装为BatchUpdateException，其中的影响行数只包括已执行成功的段。
+   * 绑定的是加入批次时取出的参数值
+   */
+  private void executeMultiRowInsert(BufferedStatement bufferedStatement, BatchResult batchResult) throws SQLException {
+    MappedStatement ms = batchResult.getMappedStatement();
+    List<Object> parameterObjects = batchResult.getParameterObjects();
+    MultiRowInsert multiRowInsert = bufferedStatement.getMultiRowInsert();
+    List<BufferedRow> rows = bufferedStatement.getRows();
+    int rowsPerStatement = MultiRowInsert.getRowsPerStatement(configuration.getBatchInsertRewriteRows(),
+        configuration.getBatchInsertRewriteParameters(), rows.get(0).getParameterCount());
+    int[] updateCounts = new int[rows.size()];
+    for (int start = 0; start < rows.size(); start += rowsPerStatement) {
+      int end = Math.min(rows.size(), start + rowsPerStatement);
+      Object firstParameter = parameterObjects.get(start);
+      BufferedRow firstRow = rows.get(start);
+      BoundSql boundSql = new BoundSql(configuration, multiRowInsert.getSql(end - start),
+          firstRow.getParameterMappings(), firstParameter);
+      // 传入BoundSql时StatementHandler不会再次生成主键
+      StatementHandler handler = configuration.newStatementHandler(this, ms, firstParameter, RowBounds.DEFAULT, null, boundSql);
+      Statement stmt = null;
+      try {
+        stmt = handler.prepare(getConnection(ms.getStatementLog()), transaction.getTimeout());
+        PreparedStatement ps = (PreparedStatement) stmt;
+        int offset = 0;
+        for (int i = start; i < end; i++) {
+          BufferedRow row = rows.get(i);
+          newRowHandler(ms, row).parameterize(MultiRowInsert.offset(ps, offset));
+          offset += row.getParameterCount();
+        }
+        int count = ps.executeUpdate();
+        Arrays.fill(updateCounts, start, end, count == end - start ? 1 : Statement.SUCCESS_NO_INFO);
+        if (Jdbc3KeyGenerator.class.equals(ms.getKeyGenerator().getClass())) {
+          ((Jdbc3KeyGenerator) ms.getKeyGenerator()).processBatch(ms, stmt, new ArrayList<>(parameterObjects.subList(start, end)));
+        }
+      } catch (SQLException e) {
+        throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(),
+            Arrays.copyOf(updateCounts, start), e);
+      } finally {
         closeStatement(stmt);
       }
-      currentSql = null;
-      statementList.clear();
-      batchResultList.clear();
     }
+    batchResult.setUpdateCounts(updateCounts);
+  }
+
+  /**
+   * 绑定一行参数的StatementHandler，参数值从加入批次时取出的值中读取，
+   * 仍经过配置的ParameterHandler和插件。传入BoundSql时StatementHandler不会再次生成主键
+   */
+  private StatementHandler newRowHandler(MappedStatement ms, BufferedRow row) {
+    return configuration.newStatementHandler(this, ms, row.getParameterObject(), RowBounds.DEFAULT, null, row);
+  }
+
+  private void closeBatch() {
+    for (Statement stmt : statementList) {
+      closeStatement(stmt);
+    }
+    currentSql = null;
+    statementList.clear();
+    bufferedStatementList.clear();
+    batchResultList.clear();
+    independentStatements.clear();
+    batchRows = 0;
+    batchBytes = 0;
+  }
+
+  private boolean isFlushRequired(int statementRows) {
+    int rowsPerStatement = configuration.getBatchFlushRowsPerStatement();
+    int rows = configuration.getBatchFlushRows();
+    int bytes = configuration.getBatchFlushBytes();
+    return (rowsPerStatement > 0 && statementRows >= rowsPerStatement)
+        || (rows > 0 && batchRows >= rows)
+        || (bytes > 0 && batchBytes >= bytes);
+  }
+
+  private int findIndependentStatement(MappedStatement ms, String sql) {
+    Map<String, Integer> statements = independentStatements.get(ms);
+    if (statements == null) {
+      return -1;
+    }
+    Integer index = statements.get(sql);
+    return index == null ? -1 : index;
   }
 
 }
@@ -0,0 +1,34 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+/**
+ * Receives the results of a batch as soon as its statements have been executed, so that the batch executor does
+ * not have to keep them until {@link Executor#flushStatements()} returns.
+ * <p>
+ * A single handler is shared by all the batch sessions of a configuration and must be thread safe.
+ *
+ * @since 3.5.1
+ */
+@FunctionalInterface
+public interface BatchResultHandler {
+
+  /**
+   * @param batchResult the update counts and parameter objects of one executed statement
+   */
+  void handleBatchResult(BatchResult batchResult);
+
+}
@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+
+/**
+ * 批量中一行的BoundSql，加入批次时就取出了每个参数的值，执行时才绑定到PreparedStatement。
+ * <p>
+ * 取出的值作为附加参数返回，执行时仍由配置的 {@link org.apache.ibatis.executor.parameter.ParameterHandler}
+ * 和插件绑定参数，之后修改或复用参数对象不会影响这一行。
+ */
+final class BufferedRow extends BoundSql {
+
+  /**
+   * 原来的BoundSql，没有取出的附加参数仍从它读取
+   */
+  private final BoundSql boundSql;
+  /**
+   * 参数映射的属性名和取出的值
+   */
+  private final Map<String, Object> values;
+
+  private BufferedRow(MappedStatement ms, BoundSql boundSql, Map<String, Object> values) {
+    super(ms.getConfiguration(), boundSql.getSql(), boundSql.getParameterMappings(), boundSql.getParameterObject());
+    this.boundSql = boundSql;
+    this.values = values;
+  }
+
+  /**
+   * 按 {@link DefaultParameterHandler} 的取法读出 boundSql 每个参数的值，OUT参数不读取
+   */
+  static BufferedRow capture(MappedStatement ms, BoundSql boundSql, Object parameterObject) {
+    DefaultParameterHandler resolver = new DefaultParameterHandler(ms, parameterObject, boundSql);
+    Map<String, Object> values = new HashMap<>();
+    for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+      if (parameterMapping.getMode() != ParameterMode.OUT) {
+        values.put(parameterMapping.getProperty(), resolver.getParameterValue(parameterMapping));
+      }
+    }
+    return new BufferedRow(ms, boundSql, values);
+  }
+
+  int getParameterCount() {
+    return getParameterMappings().size();
+  }
+
+  @Override
+  public boolean hasAdditionalParameter(String name) {
+    return values.containsKey(name) || boundSql.hasAdditionalParameter(name);
+  }
+
+  @Override
+  public void setAdditionalParameter(String name, Object value) {
+    boundSql.setAdditionalParameter(name, value);
+  }
+
+  @Override
+  public Object getAdditionalParameter(String name) {
+    return values.containsKey(name) ? values.get(name) : boundSql.getAdditionalParameter(name);
+  }
+
+  /**
+   * 估算这一行参数占用的字节数
+   */
+  long estimateBytes() {
+    long bytes = 0;
+    for (Object value : values.values()) {
+      bytes += estimateSize(value);
+    }
+    return bytes;
+  }
+
+  private static long estimateSize(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof CharSequence) {
+      return 2L * ((CharSequence) value).length();
+    } else if (value instanceof byte[]) {
+      return ((byte[]) value).length;
+    } else if (value instanceof char[]) {
+      return 2L * ((char[]) value).length;
+    }
+    // 数字、日期等定长的值
+    return 8;
+  }
+
+}
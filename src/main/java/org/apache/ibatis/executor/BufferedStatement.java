@@ -0,0 +1,53 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量中只缓存了参数值的语句，执行时才在连接上预编译和绑定参数。
+ * <p>
+ * 改写为多行插入时按多行语句分段执行，否则逐行加入JDBC批量后一起执行。
+ */
+final class BufferedStatement {
+
+  /**
+   * 改写后的多行插入，不改写时为null
+   */
+  private final MultiRowInsert multiRowInsert;
+  /**
+   * 每一行加入时取出的参数值，与BatchResult中的参数对象一一对应
+   */
+  private final List<BufferedRow> rows = new ArrayList<>();
+
+  BufferedStatement(MultiRowInsert multiRowInsert) {
+    this.multiRowInsert = multiRowInsert;
+  }
+
+  MultiRowInsert getMultiRowInsert() {
+    return multiRowInsert;
+  }
+
+  void addRow(BufferedRow row) {
+    rows.add(row);
+  }
+
+  List<BufferedRow> getRows() {
+    return rows;
+  }
+
+}
@@ -0,0 +1,150 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheGeneration;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.TagVersions;
+import org.apache.ibatis.cache.TaggedValue;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+
+/**
+ * 在后台重新查询过期的二级缓存结果，见 {@link MappedStatement#getRefreshAfter()}。
+ * <p>
+ * 线程数和排队数都有上限，排满时放弃这次刷新，调用方继续使用旧值，下次读取时再尝试。
+ * 同一个key同时只会有一个刷新任务。
+ * 刷新使用新的连接和不带二级缓存的 {@link SimpleExecutor}，结果直接放入二级缓存，
+ * 查询期间缓存被清空时放弃结果（见 {@link CacheGeneration}）。
+ * 线程空闲60秒后退出，不需要关闭。
+ *
+ * @since 3.5.1
+ */
+public class CacheRefresher {
+
+  private static final Log log = LogFactory.getLog(CacheRefresher.class);
+
+  private static final AtomicInteger threadNumber = new AtomicInteger();
+
+  private final Configuration configuration;
+  private final ThreadPoolExecutor executor;
+  /**
+   * 正在刷新的key
+   */
+  private final Set<CacheKey> refreshing = ConcurrentHashMap.newKeySet();
+
+  public CacheRefresher(Configuration configuration, int threads, int queueSize) {
+    this.configuration = configuration;
+    this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueSize), r -> {
+          Thread thread = new Thread(r, "mybatis-cache-refresh-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * 提交一次刷新，同一个key已在刷新或排队已满时返回false
+   */
+  public boolean refresh(MappedStatement ms, Object parameterObject, RowBounds rowBounds, CacheKey key, BoundSql boundSql) {
+    if (!refreshing.add(key)) {
+      return false;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          doRefresh(ms, parameterObject, rowBounds, key, boundSql);
+        } catch (Exception e) {
+          log.warn("Could not refresh cached result of " + ms.getId() + ". Cause: " + e);
+        } finally {
+          refreshing.remove(key);
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(key);
+      return false;
+    }
+  }
+
+  /**
+   * 正在刷新或排队的key的个数
+   */
+  public int getRefreshingCount() {
+    return refreshing.size();
+  }
+
+  private void doRefresh(MappedStatement ms, Object parameterObject, RowBounds rowBounds, CacheKey key,
+      BoundSql boundSql) throws Exception {
+    Cache cache = ms.getCache();
+    TagVersions tagVersions = configuration.getCacheTagVersions(cache.getId());
+    TaggedValue tagged = tagVersions == null ? null : tagVersions.tag(ms.resolveCacheTags(parameterObject));
+    //和tag版本号一样在查询之前读取，查询期间的清空会使结果作废
+    CacheGeneration generation = configuration.getCacheGeneration(cache.getId());
+    long expectedGeneration = generation == null ? 0 : generation.current();
+    Executor localExecutor = newExecutor();
+    try {
+      CacheMetrics metrics = configuration.getCacheMetricsRegistry().getMetrics(cache.getId());
+      long start = System.nanoTime();
+      List<Object> list = localExecutor.query(ms, parameterObject, rowBounds, Executor.NO_RESULT_HANDLER, key, boundSql);
+      if (metrics != null) {
+        metrics.recordLoad(System.nanoTime() - start);
+      }
+      Object value = CachingExecutor.wrapResult(list, tagged, ms.getRefreshAfter());
+      if (generation == null) {
+        cache.putObject(key, value);
+      } else if (!generation.putIfCurrent(cache, key, value, expectedGeneration) && log.isDebugEnabled()) {
+        log.debug("Discarded refreshed result of " + ms.getId() + " because the cache was cleared while refreshing");
+      }
+    } finally {
+      localExecutor.close(false);
+    }
+  }
+
+  private Executor newExecutor() {
+    final Environment environment = configuration.getEnvironment();
+    if (environment == null) {
+      throw new ExecutorException("CacheRefresher could not refresh.  Environment was not configured.");
+    }
+    final DataSource ds = environment.getDataSource();
+    if (ds == null) {
+      throw new ExecutorException("CacheRefresher could not refresh.  DataSource was not configured.");
+    }
+    final Transaction tx = environment.getTransactionFactory().newTransaction(ds, null, false);
+    return new SimpleExecutor(configuration, tx);
+  }
+
+}
@@ -20,6 +20,10 @@ import java.util.List;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.TagVersions;
+import org.apache.ibatis.cache.TaggedValue;
+import org.apache.ibatis.cache.TimestampedValue;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
 import org.apache.ibatis.cache.TransactionalCacheManager;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.mapping.BoundSql;
@@ -80,7 +84,7 @@ public class CachingExecutor implements Executor {
   @Override
   public int update(MappedStatement ms, Object parameterObject) throws SQLException {
     //更新时，namespace中所有缓存都清空
-    flushCacheIfRequired(ms);
+    flushCacheIfRequired(ms, parameterObject);
     return delegate.update(ms, parameterObject);
   }
 
@@ -93,7 +97,7 @@ public class CachingExecutor implements Executor {
 
   @Override
   public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
-    flushCacheIfRequired(ms);
+    flushCacheIfRequired(ms, parameter);
     return delegate.queryCursor(ms, parameter, rowBounds);
   }
 
@@ -102,14 +106,18 @@ public class CachingExecutor implements Executor {
       throws SQLException {
     Cache cache = ms.getCache();
     if (cache != null) {
-      flushCacheIfRequired(ms);
+      flushCacheIfRequired(ms, parameterObject);
       if (ms.isUseCache() && resultHandler == null) {
         ensureNoOutParams(ms, boundSql);
+        TagVersions tagVersions = ms.getConfiguration().getCacheTagVersions(cache.getId());
+        if (tagVersions != null || ms.getRefreshAfter() > 0) {
+          return queryWrapped(tagVersions, ms, parameterObject, rowBounds, key, boundSql);
+        }
         //缓存中取数据
         List<E> list = (List<E>) tcm.getObject(cache, key);
         if (list == null) {
           //没有缓存，查数据库
-          list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+          list = queryAndReleaseOnFailure(ms, parameterObject, rowBounds, key, boundSql);
           tcm.putObject(cache, key, list); // issue #578 and #116
         }
         return list;
@@ -118,6 +126,62 @@ public class CachingExecutor implements Executor {
     return delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
   }
 
+  /**
+   * 缓存启用了tag失效，或语句设置了refreshAfter时，缓存的是包装过的结果：
+   * tag失效后视为未命中；超过refreshAfter后先返回旧值，再在后台刷新
+   */
+  private <E> List<E> queryWrapped(TagVersions tagVersions, MappedStatement ms, Object parameterObject, RowBounds rowBounds,
+      CacheKey key, BoundSql boundSql) throws SQLException {
+    Cache cache = ms.getCache();
+    Object cached = tcm.getObject(cache, key);
+    if (tagVersions != null) {
+      cached = cached instanceof TaggedValue && tagVersions.isCurrent((TaggedValue) cached)
+          ? ((TaggedValue) cached).getValue() : null;
+    }
+    if (cached instanceof TimestampedValue) {
+      TimestampedValue timestamped = (TimestampedValue) cached;
+      if (timestamped.isStale(ms.getRefreshAfter(), System.currentTimeMillis())) {
+        ms.getConfiguration().getCacheRefresher().refresh(ms, parameterObject, rowBounds, key, boundSql);
+      }
+      return (List<E>) timestamped.getValue();
+    } else if (cached != null) {
+      return (List<E>) cached;
+    }
+    //查询之前记录版本号，查询期间提交的失效也会使结果过期
+    TaggedValue tagged = tagVersions == null ? null : tagVersions.tag(ms.resolveCacheTags(parameterObject));
+    List<E> list = queryAndReleaseOnFailure(ms, parameterObject, rowBounds, key, boundSql);
+    tcm.putObject(cache, key, wrapResult(list, tagged, ms.getRefreshAfter()));
+    return list;
+  }
+
+  /**
+   * 包装放入二级缓存的结果，{@link CacheRefresher} 也使用
+   */
+  static Object wrapResult(List<?> list, TaggedValue tagged, long refreshAfter) {
+    Object value = refreshAfter > 0 ? new TimestampedValue(list, System.currentTimeMillis()) : list;
+    return tagged == null ? value : tagged.value(value);
+  }
+
+  private <E> List<E> queryAndReleaseOnFailure(MappedStatement ms, Object parameterObject, RowBounds rowBounds,
+      CacheKey key, BoundSql boundSql) throws SQLException {
+    boolean loaded = false;
+    CacheMetrics metrics = ms.getConfiguration().getCacheMetricsRegistry().getMetrics(ms.getCache().getId());
+    long start = metrics == null ? 0 : System.nanoTime();
+    try {
+      List<E> list = delegate.query(ms, parameterObject, rowBounds, null, key, boundSql);
+      loaded = true;
+      return list;
+    } finally {
+      if (metrics != null) {
+        metrics.recordLoad(System.nanoTime() - start);
+      }
+      if (!loaded) {
+        //查询失败，立即放弃该key的加载，其他等待的线程不必等到会话结束
+        tcm.releaseMissedEntry(ms.getCache(), key);
+      }
+    }
+  }
+
   @Override
   public List<BatchResult> flushStatements() throws SQLException {
     return delegate.flushStatements();
@@ -170,10 +234,17 @@ public class CachingExecutor implements Executor {
     delegate.clearLocalCache();
   }
 
-  private void flushCacheIfRequired(MappedStatement ms) {
+  private void flushCacheIfRequired(MappedStatement ms, Object parameterObject) {
     Cache cache = ms.getCache();
     if (cache != null && ms.isFlushCacheRequired()) {
-      tcm.clear(cache);
+      String[] tags = ms.resolveCacheTags(parameterObject);
+      TagVersions tagVersions = tags == null ? null : ms.getConfiguration().getCacheTagVersions(cache.getId());
+      if (tagVersions != null) {
+        //声明了tag时，提交时只失效带有这些tag的缓存项
+        tcm.invalidateTags(cache, tagVersions, tags);
+      } else {
+        tcm.clear(cache);
+      }
     }
   }
 
@@ -0,0 +1,165 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * 批量中连续的单行插入，执行时改写为 INSERT ... VALUES (...), (...) 的多行语句。
+ * <p>
+ * 只支持以一个 VALUES 元组结尾的语句，INSERT ... SELECT、ON DUPLICATE KEY 等都不改写。
+ */
+final class MultiRowInsert {
+
+  /**
+   * VALUES 元组之前的部分，包括 VALUES 关键字
+   */
+  private final String prefix;
+  /**
+   * 一行的 VALUES 元组，包括括号
+   */
+  private final String tuple;
+
+  private MultiRowInsert(String prefix, String tuple) {
+    this.prefix = prefix;
+    this.tuple = tuple;
+  }
+
+  /**
+   * 解析单行插入语句，不能改写时返回null
+   */
+  static MultiRowInsert parse(String sql) {
+    int length = sql.length();
+    int depth = 0;
+    int tupleStart = -1;
+    for (int i = 0; i < length && tupleStart < 0; i++) {
+      char c = sql.charAt(i);
+      if (c == '\'' || c == '"') {
+        i = skipQuoted(sql, i);
+        if (i < 0) {
+          return null;
+        }
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (depth == 0 && (c == 'v' || c == 'V') && sql.regionMatches(true, i, "values", 0, 6)
+          && (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))) {
+        int j = i + 6;
+        while (j < length && Character.isWhitespace(sql.charAt(j))) {
+          j++;
+        }
+        if (j < length && sql.charAt(j) == '(') {
+          tupleStart = j;
+        }
+      }
+    }
+    if (tupleStart < 0) {
+      return null;
+    }
+    int tupleEnd = -1;
+    depth = 0;
+    for (int i = tupleStart; i < length; i++) {
+      char c = sql.charAt(i);
+      if (c == '\'' || c == '"') {
+        i = skipQuoted(sql, i);
+        if (i < 0) {
+          return null;
+        }
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')' && --depth == 0) {
+        tupleEnd = i + 1;
+        break;
+      }
+    }
+    if (tupleEnd < 0) {
+      return null;
+    }
+    // 元组之后只能是空白，否则是多行插入、ON DUPLICATE KEY 等不能改写的语句
+    for (int i = tupleEnd; i < length; i++) {
+      if (!Character.isWhitespace(sql.charAt(i))) {
+        return null;
+      }
+    }
+    return new MultiRowInsert(sql.substring(0, tupleStart), sql.substring(tupleStart, tupleEnd));
+  }
+
+  /**
+   * 返回引号结束的位置，没有结束引号时返回-1
+   */
+  private static int skipQuoted(String sql, int start) {
+    char quote = sql.charAt(start);
+    for (int i = start + 1, n = sql.length(); i < n; i++) {
+      if (sql.charAt(i) == quote) {
+        // 两个连续的引号是转义
+        if (i + 1 < n && sql.charAt(i + 1) == quote) {
+          i++;
+        } else {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * 一次插入 rowCount 行的SQL
+   */
+  String getSql(int rowCount) {
+    StringBuilder sql = new StringBuilder(prefix.length() + (tuple.length() + 2) * rowCount);
+    sql.append(prefix).append(tuple);
+    for (int i = 1; i < rowCount; i++) {
+      sql.append(", ").append(tuple);
+    }
+    return sql.toString();
+  }
+
+  /**
+   * 每行有 parameters 个参数时一条多行语句最多插入的行数，maxParameters为0时不限制参数个数
+   */
+  static int getRowsPerStatement(int maxRows, int maxParameters, int parameters) {
+    if (maxParameters > 0 && parameters > 0) {
+      return Math.max(1, Math.min(maxRows, maxParameters / parameters));
+    }
+    return maxRows;
+  }
+
+  /**
+   * 包装PreparedStatement，把 setXxx(index, ...) 的参数下标加上offset，
+   * 这样每一行仍可以用原来的ParameterHandler从1开始设置参数
+   */
+  static PreparedStatement offset(PreparedStatement statement, int offset) {
+    if (offset == 0) {
+      return statement;
+    }
+    return (PreparedStatement) Proxy.newProxyInstance(MultiRowInsert.class.getClassLoader(),
+        new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+          if (args != null && args.length >= 2 && args[0] instanceof Integer && method.getName().startsWith("set")) {
+            args[0] = (Integer) args[0] + offset;
+          }
+          try {
+            return method.invoke(statement, args);
+          } catch (Throwable t) {
+            throw ExceptionUtil.unwrapThrowable(t);
+          }
+        });
+  }
+
+}
@@ -21,13 +21,24 @@ import java.util.Properties;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.ThreadSafeCache;
+import org.apache.ibatis.cache.CacheGeneration;
+import org.apache.ibatis.cache.codec.CacheCodec;
 import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.BroadcastingCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.GenerationCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.metrics.MetricsCache;
+import org.apache.ibatis.cache.metrics.StoreMetricsCache;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
 
@@ -43,9 +54,14 @@ public class CacheBuilder {
   private final List<Class<? extends Cache>> decorators;
   private Integer size;
   private Long clearInterval;
+  private Long timeToLive;
   private boolean readWrite;
   private Properties properties;
   private boolean blocking;
+  private Class<? extends CacheCodec> codec;
+  private InvalidationBus invalidationBus;
+  private CacheGeneration generation;
+  private CacheMetrics metrics;
 
   public CacheBuilder(String id) {
     this.id = id;
@@ -74,6 +90,16 @@ public class CacheBuilder {
     return this;
   }
 
+  /**
+   * 缓存项的生存时间，毫秒，为null时缓存项不过期
+   *
+   * @since 3.5.1
+   */
+  public CacheBuilder timeToLive(Long timeToLive) {
+    this.timeToLive = timeToLive;
+    return this;
+  }
+
   public CacheBuilder readWrite(boolean readWrite) {
     this.readWrite = readWrite;
     return this;
@@ -84,6 +110,46 @@ public class CacheBuilder {
     return this;
   }
 
+  /**
+   * readWrite缓存使用的编解码，为null时使用java序列化
+   *
+   * @since 3.5.1
+   */
+  public CacheBuilder codec(Class<? extends CacheCodec> codec) {
+    this.codec = codec;
+    return this;
+  }
+
+  /**
+   * 清空时通知其他节点的失效总线，为null时只清空本地缓存
+   *
+   * @since 3.5.1
+   */
+  public CacheBuilder invalidationBus(InvalidationBus invalidationBus) {
+    this.invalidationBus = invalidationBus;
+    return this;
+  }
+
+  /**
+   * 记录缓存被清空的次数，后台刷新据此放弃查询期间被清空的结果，为null时不记录
+   *
+   * @since 3.5.1
+   */
+  public CacheBuilder generation(CacheGeneration generation) {
+    this.generation = generation;
+    return this;
+  }
+
+  /**
+   * 记录缓存统计，为null时不统计
+   *
+   * @since 3.5.1
+   */
+  public CacheBuilder metrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
   public CacheBuilder properties(Properties properties) {
     this.properties = properties;
     return this;
@@ -100,18 +166,46 @@ public class CacheBuilder {
     //设置cache的属性
     setCacheProperties(cache);
     //判断是否是PerpetualCahe类型，如果是，添加装饰器集合中的装饰器
-    if (PerpetualCache.class.equals(cache.getClass())) {
+    if (PerpetualCache.class.equals(cache.getClass())
+        || ConcurrentPerpetualCache.class.equals(cache.getClass())) {
+      //基础缓存和所有装饰器都线程安全时，不需要SynchronizedCache
+      boolean threadSafe = cache instanceof ThreadSafeCache;
+      //统计装饰器直接装饰基础缓存，淘汰装饰器删除的条目都经过它
+      if (metrics != null) {
+        cache = new StoreMetricsCache(cache, metrics);
+      }
+      //过期装饰器在淘汰装饰器之上，通过它得知被淘汰的条目
+      ExpiringCache.RemovalTracker removals = null;
+      if (timeToLive != null) {
+        removals = new ExpiringCache.RemovalTracker(cache);
+        cache = removals;
+      }
       //遍历所有装饰器
       for (Class<? extends Cache> decorator : decorators) {
         //获取参数类型为cache的构造函数，并初始化装饰器，赋值给cache
         cache = newCacheDecoratorInstance(decorator, cache);
+        threadSafe &= cache instanceof ThreadSafeCache;
         //设置cache的属性
         setCacheProperties(cache);
       }
       //添加标准装饰器
-      cache = setStandardDecorators(cache);
-    } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
-      cache = new LoggingCache(cache);
+      cache = setStandardDecorators(cache, threadSafe, removals);
+    } else {
+      if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
+        cache = new LoggingCache(cache);
+      }
+      //自定义的缓存实现看不到内部的淘汰，只在外层统计
+      if (metrics != null) {
+        cache = new MetricsCache(cache, metrics);
+      }
+    }
+    //在BroadcastingCache之下，本地提交和其他节点通知的清空都经过这里，自定义的缓存实现也一样
+    if (generation != null) {
+      cache = new GenerationCache(cache, generation);
+    }
+    //最外层，包括TransactionalCache提交时的清空在内，所有清空都通知其他节点
+    if (invalidationBus != null) {
+      cache = new BroadcastingCache(cache, invalidationBus);
     }
     return cache;
   }
@@ -131,13 +225,25 @@ public class CacheBuilder {
   /**
    * 设置标准装饰器
    */
-  private Cache setStandardDecorators(Cache cache) {
+  private Cache setStandardDecorators(Cache cache, boolean threadSafe, ExpiringCache.RemovalTracker removals) {
     try {
       //获取元对象
       MetaObject metaCache = SystemMetaObject.forObject(cache);
       if (size != null && metaCache.hasSetter("size")) {
         metaCache.setValue("size", size);
       }
+      //按权重淘汰的装饰器根据值是否序列化选择默认上限的单位
+      if (metaCache.hasSetter("serialized")) {
+        metaCache.setValue("serialized", readWrite);
+      }
+      //是否指定了timeToLive，后台线程也会访问被装饰的缓存，所以不线程安全时在下面加上SynchronizedCache
+      if (timeToLive != null) {
+        cache = new ExpiringCache(threadSafe ? cache : new SynchronizedCache(cache), removals);
+        threadSafe = true;
+        ((ExpiringCache) cache).setTimeToLive(timeToLive);
+        ((ExpiringCache) cache).setMetrics(metrics);
+        setCacheProperties(cache);
+      }
       //是否指定了clearInterval
       if (clearInterval != null) {
         //添加scheduleCache装饰器
@@ -147,11 +253,16 @@ public class CacheBuilder {
       }
       //是否只读
       if (readWrite) {
-        cache = new SerializedCache(cache);
+        cache = codec == null ? new SerializedCache(cache) : new SerializedCache(cache, newCodecInstance(codec));
       }
-      //添加两个装饰器
+      //添加两个装饰器，已经线程安全时不再添加SynchronizedCache
       cache = new LoggingCache(cache);
-      cache = new SynchronizedCache(cache);
+      if (metrics != null) {
+        cache = new MetricsCache(cache, metrics);
+      }
+      if (!threadSafe) {
+        cache = new SynchronizedCache(cache);
+      }
       if (blocking) {
         cache = new BlockingCache(cache);
       }
@@ -260,4 +371,13 @@ public class CacheBuilder {
           + e, e);
     }
   }
+
+  private CacheCodec newCodecInstance(Class<? extends CacheCodec> codecClass) {
+    try {
+      return codecClass.getConstructor().newInstance();
+    } catch (Exception e) {
+      throw new CacheException(
+          "Could not instantiate cache codec (" + codecClass + "). Cause: " + e, e);
+    }
+  }
 }
@@ -18,15 +18,22 @@ package org.apache.ibatis.mapping;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheKey;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.parsing.GenericTokenParser;
 import org.apache.ibatis.scripting.LanguageDriver;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
 
 /**
  * 每个sql对应一个
@@ -34,6 +41,11 @@ import org.apache.ibatis.session.Configuration;
  */
 public final class MappedStatement {
 
+  /**
+   * 最多缓存的缓存key前缀数，动态sql生成的sql不同时前缀也不同，超出后先淘汰最早加入的
+   */
+  private static final int MAX_CACHE_KEY_PREFIXES = 64;
+
   private String resource;
   private Configuration configuration;
   private String id;
@@ -58,6 +70,30 @@ public final class MappedStatement {
   private Log statementLog;
   private LanguageDriver lang;
   private String[] resultSets;
+  /**
+   * 查询结果打上的tag，或更新时失效的tag，可以包含 #{property} 占位符
+   */
+  private String[] cacheTags;
+  /**
+   * cacheTags中是否有占位符
+   */
+  private boolean dynamicCacheTags;
+  /**
+   * 二级缓存的结果超过多少毫秒后先返回旧值、再在后台刷新，0表示不刷新
+   */
+  private long refreshAfter;
+  /**
+   * 批量执行时，是否与批次中的其他语句无关，可以提前到同一SQL已打开的Statement中一起执行
+   */
+  private boolean batchIndependent;
+  /**
+   * sql文本和最近一次用它创建的缓存key前缀
+   */
+  private final Map<String, CacheKeyPrefix> cacheKeyPrefixes = new ConcurrentHashMap<>();
+  /**
+   * 缓存key前缀的加入顺序
+   */
+  private final Queue<String> cacheKeyPrefixOrder = new ConcurrentLinkedQueue<>();
 
   MappedStatement() {
     // constructor disabled
@@ -176,6 +212,42 @@ public final class MappedStatement {
       return this;
     }
 
+    /**
+     * @since 3.5.1
+     */
+    public Builder cacheTags(String[] cacheTags) {
+      if (cacheTags == null || cacheTags.length == 0) {
+        mappedStatement.cacheTags = null;
+        mappedStatement.dynamicCacheTags = false;
+      } else {
+        String[] tags = new String[cacheTags.length];
+        boolean dynamic = false;
+        for (int i = 0; i < tags.length; i++) {
+          tags[i] = cacheTags[i].trim();
+          dynamic |= tags[i].contains("#{");
+        }
+        mappedStatement.cacheTags = tags;
+        mappedStatement.dynamicCacheTags = dynamic;
+      }
+      return this;
+    }
+
+    /**
+     * @since 3.5.1
+     */
+    public Builder refreshAfter(long refreshAfter) {
+      mappedStatement.refreshAfter = refreshAfter;
+      return this;
+    }
+
+    /**
+     * @since 3.5.1
+     */
+    public Builder batchIndependent(boolean batchIndependent) {
+      mappedStatement.batchIndependent = batchIndependent;
+      return this;
+    }
+
     /**
      * @deprecated Use {@link #resultSets}
      */
@@ -295,6 +367,52 @@ public final class MappedStatement {
     return resultSets;
   }
 
+  /**
+   * @since 3.5.1
+   */
+  public String[] getCacheTags() {
+    return cacheTags;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public long getRefreshAfter() {
+    return refreshAfter;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public boolean isBatchIndependent() {
+    return batchIndependent;
+  }
+
+  /**
+   * 用参数替换tag中的 #{property} 占位符，参数是简单类型时直接使用参数值，没有tag时返回null
+   *
+   * @since 3.5.1
+   */
+  public String[] resolveCacheTags(Object parameterObject) {
+    if (!dynamicCacheTags) {
+      return cacheTags;
+    }
+    GenericTokenParser parser = new GenericTokenParser("#{", "}", property -> {
+      if (parameterObject == null) {
+        return "null";
+      }
+      if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+        return String.valueOf(parameterObject);
+      }
+      return String.valueOf(configuration.newMetaObject(parameterObject).getValue(property));
+    });
+    String[] tags = new String[cacheTags.length];
+    for (int i = 0; i < tags.length; i++) {
+      tags[i] = parser.parse(cacheTags[i]);
+    }
+    return tags;
+  }
+
   public BoundSql getBoundSql(Object parameterObject) {
     BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
     List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
@@ -316,6 +434,36 @@ public final class MappedStatement {
     return boundSql;
   }
 
+  /**
+   * 创建以id、offset、limit、sql开头的缓存key。
+   * sql文本和分页参数与上次用这个sql时相同时，复制上次计算好的前缀，不再重新计算hash，
+   * 并且key中保存的是同一个sql字符串，比较key时直接按引用相等。
+   *
+   * @since 3.5.1
+   */
+  public CacheKey newCacheKey(RowBounds rowBounds, String sql) {
+    CacheKeyPrefix prefix = cacheKeyPrefixes.get(sql);
+    if (prefix == null || !prefix.matches(rowBounds, sql)) {
+      prefix = new CacheKeyPrefix(id, rowBounds, sql);
+      // 分页参数不同时替换，只在第一次加入时记录加入顺序
+      if (cacheKeyPrefixes.put(sql, prefix) == null) {
+        cacheKeyPrefixOrder.offer(sql);
+        evictCacheKeyPrefixes();
+      }
+    }
+    return new CacheKey(prefix.key);
+  }
+
+  private void evictCacheKeyPrefixes() {
+    while (cacheKeyPrefixes.size() > MAX_CACHE_KEY_PREFIXES) {
+      String eldest = cacheKeyPrefixOrder.poll();
+      if (eldest == null) {
+        return;
+      }
+      cacheKeyPrefixes.remove(eldest);
+    }
+  }
+
   private static String[] delimitedStringToArray(String in) {
     if (in == null || in.trim().length() == 0) {
       return null;
@@ -324,4 +472,29 @@ public final class MappedStatement {
     }
   }
 
+  /**
+   * 缓存key的前缀，创建后不再修改
+   */
+  private static final class CacheKeyPrefix {
+    private final int offset;
+    private final int limit;
+    private final String sql;
+    private final CacheKey key;
+
+    CacheKeyPrefix(String id, RowBounds rowBounds, String sql) {
+      this.offset = rowBounds.getOffset();
+      this.limit = rowBounds.getLimit();
+      this.sql = sql;
+      this.key = new CacheKey();
+      key.update(id);
+      key.update(offset);
+      key.update(limit);
+      key.update(sql);
+    }
+
+    boolean matches(RowBounds rowBounds, String sql) {
+      return offset == rowBounds.getOffset() && limit == rowBounds.getLimit() && this.sql.equals(sql);
+    }
+  }
+
 }
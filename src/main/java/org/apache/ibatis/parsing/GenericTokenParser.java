@@ -49,61 +49,78 @@ public class GenericTokenParser {
     if (text == null || text.isEmpty()) {
       return "";
     }
-    //查找开始标记
-    int start = text.indexOf(openToken);
-    //没有开始标记
-    if (start == -1) {
+    //没有开始标记，直接返回原字符串
+    if (text.indexOf(openToken) == -1) {
       return text;
     }
-    //转化为字符数组
-    char[] src = text.toCharArray();
+    StringBuilder builder = StringBuilderPool.acquire(text.length());
+    parse(text, builder);
+    return StringBuilderPool.toStringAndRelease(builder);
+  }
+
+  /**
+   * 解析text并将结果追加到builder，直接在原字符串上查找，不复制字符数组
+   *
+   * @since 3.5.1
+   */
+  public void parse(String text, StringBuilder builder) {
+    if (text == null || text.isEmpty()) {
+      return;
+    }
+    //查找开始标记
+    int start = text.indexOf(openToken);
     int offset = 0;
-    StringBuilder builder = new StringBuilder();
+    //只有closeToken被转义时才需要拼接表达式
     StringBuilder expression = null;
     while (start > -1) {
       //如果text中在openToken前存在转义符就将转义符去掉。如果openToken前存在转义符，start的值必然大于0，最小也为1
       //因为此时openToken是不需要进行处理的，所以也不需要处理endToken。接着查找下一个openToken
-      if (start > 0 && src[start - 1] == '\\') {
+      if (start > 0 && text.charAt(start - 1) == '\\') {
         //开始标记已转义。删除反斜杠并继续。
-        builder.append(src, offset, start - offset - 1).append(openToken);
+        builder.append(text, offset, start - 1).append(openToken);
         offset = start + openToken.length();
       } else {
         //找到openToken，继续查找closeToken
-        if (expression == null) {
-          expression = new StringBuilder();
-        } else {
+        builder.append(text, offset, start);
+        offset = start + openToken.length();
+        String content = null;
+        if (expression != null) {
           expression.setLength(0);
         }
-        builder.append(src, offset, start - offset);
-        offset = start + openToken.length();
         //对应的closeToken的下标
         int end = text.indexOf(closeToken, offset);
         while (end > -1) {
-          if (end > offset && src[end - 1] == '\\') {
+          if (end > offset && text.charAt(end - 1) == '\\') {
             // this close token is escaped. remove the backslash and continue.
-            expression.append(src, offset, end - offset - 1).append(closeToken);
+            if (expression == null) {
+              expression = new StringBuilder();
+            }
+            expression.append(text, offset, end - 1).append(closeToken);
             offset = end + closeToken.length();
             end = text.indexOf(closeToken, offset);
           } else {
-            expression.append(src, offset, end - offset);
+            if (expression == null || expression.length() == 0) {
+              content = text.substring(offset, end);
+            } else {
+              content = expression.append(text, offset, end).toString();
+            }
             offset = end + closeToken.length();
             break;
           }
         }
         if (end == -1) {
           // 没有结束标志，剩余所有字符添加到builder
-          builder.append(src, start, src.length - start);
-          offset = src.length;
+          builder.append(text, start, text.length());
+          offset = text.length();
         } else {
-          builder.append(handler.handleToken(expression.toString()));
+          builder.append(handler.handleToken(content));
           offset = end + closeToken.length();
         }
       }
       start = text.indexOf(openToken, offset);
     }
-    if (offset < src.length) {
-      builder.append(src, offset, src.length - offset);
+    if (offset < text.length()) {
+      builder.append(text, offset, text.length());
     }
-    return builder.toString();
   }
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2009-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.ibatis.parsing;
+
+
+/**
+ * 线程内复用的 {@link StringBuilder}，拼接SQL时避免每次都新建并扩容缓冲区。
+ * <p>
+ * 每个线程只保留一个缓冲区，{@link #acquire(int)} 取走后到 {@link #release(StringBuilder)} 之前，
+ * 同一线程上的嵌套调用会拿到新建的缓冲区，因此不会互相覆盖。
+ *
+ * @since 3.5.1
+ */
+public final class StringBuilderPool {
+
+  /**
+   * 超过这个容量（字符数）的缓冲区用完后不再保留，避免一次超大的SQL长期占用内存，
+   * 线程很多时每个线程最多保留8K个字符的缓冲区
+   */
+  static final int MAX_RETAINED_CAPACITY = 8 * 1024;
+
+  private static final int DEFAULT_CAPACITY = 256;
+
+  private static final ThreadLocal<StringBuilder> buffers = new ThreadLocal<>();
+
+  private StringBuilderPool() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * 取出本线程空闲的缓冲区，没有则新建
+   */
+  public static StringBuilder acquire(int capacity) {
+    StringBuilder builder = buffers.get();
+    if (builder == null) {
+      return new StringBuilder(Math.max(capacity, DEFAULT_CAPACITY));
+    }
+    buffers.remove();
+    builder.setLength(0);
+    builder.ensureCapacity(capacity);
+    return builder;
+  }
+
+  /**
+   * 归还缓冲区，归还后调用方不能再使用它
+   */
+  public static void release(StringBuilder builder) {
+    if (builder.capacity() <= MAX_RETAINED_CAPACITY) {
+      buffers.set(builder);
+    }
+  }
+
+  /**
+   * 取出内容并归还缓冲区
+   */
+  public static String toStringAndRelease(StringBuilder builder) {
+    String value = builder.toString();
+    release(builder);
+    return value;
+  }
+
+}
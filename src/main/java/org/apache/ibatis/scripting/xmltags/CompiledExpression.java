@@ -0,0 +1,540 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.scripting.xmltags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ognl.OgnlOps;
+
+import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+
+/**
+ * 不经过OGNL求值的简单表达式。
+ * <p>
+ * 支持test中最常见的写法：
+ * <ul>
+ * <li>属性路径：<code>user.name</code>，末尾可以调用 <code>size()</code>、<code>isEmpty()</code>、<code>length()</code></li>
+ * <li>字面量：<code>null</code>、<code>true</code>、<code>false</code>、整数、字符串(<code>'A'</code>与OGNL一样是字符)</li>
+ * <li>比较：<code>== != &lt; &gt; &lt;= &gt;=</code> 以及 <code>eq neq lt gt lte gte</code></li>
+ * <li>逻辑：<code>and or not && || !</code> 和括号</li>
+ * </ul>
+ * 比较和真假判断直接使用 {@link OgnlOps}，与OGNL的结果一致。
+ * 属性通过 {@link MetaClass} 的getter读取，每一级缓存上次的类型和getter。
+ * 遇到OGNL有特殊处理的情况(集合、数组、中间值为null、没有getter、Map中没有此key等)或求值出错时，
+ * 整体交给OGNL重新求值，结果和异常都与OGNL一致。
+ *
+ * @since 3.5.1
+ */
+public final class CompiledExpression {
+
+  /**
+   * 表示需要交给OGNL求值
+   */
+  private static final Object UNRESOLVED = new Object();
+
+  private final String expression;
+  private final Node root;
+  private final ReflectorFactory reflectorFactory;
+
+  private CompiledExpression(String expression, Node root, ReflectorFactory reflectorFactory) {
+    this.expression = expression;
+    this.root = root;
+    this.reflectorFactory = reflectorFactory;
+  }
+
+  /**
+   * 编译表达式
+   *
+   * @return 不是支持的形式时返回null，调用方应继续使用OGNL
+   */
+  public static CompiledExpression compile(String expression, ReflectorFactory reflectorFactory) {
+    if (expression == null) {
+      return null;
+    }
+    Node node = new Parser(expression).parse();
+    return node == null ? null : new CompiledExpression(expression, node, reflectorFactory);
+  }
+
+  /**
+   * 编译表达式，不绑定ReflectorFactory，求值时由调用方传入
+   */
+  static CompiledExpression compile(String expression) {
+    return compile(expression, null);
+  }
+
+  public String getExpression() {
+    return expression;
+  }
+
+  /**
+   * 求值，root一般是 {@link DynamicContext} 的绑定参数
+   */
+  public Object getValue(Object root) {
+    return getValue(root, reflectorFactory);
+  }
+
+  /**
+   * 用指定的ReflectorFactory求值
+   */
+  Object getValue(Object root, ReflectorFactory reflectorFactory) {
+    Object value;
+    try {
+      value = this.root.evaluate(root, reflectorFactory);
+    } catch (Exception e) {
+      // 交给OGNL抛出同样的异常
+      value = UNRESOLVED;
+    }
+    return value == UNRESOLVED ? OgnlCache.getValue(expression, root) : value;
+  }
+
+  private abstract static class Node {
+    abstract Object evaluate(Object root, ReflectorFactory reflectorFactory) throws Exception;
+  }
+
+  private static final class Literal extends Node {
+
+    private final Object value;
+
+    Literal(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    Object evaluate(Object root, ReflectorFactory reflectorFactory) {
+      return value;
+    }
+  }
+
+  /**
+   * 与OGNL的ASTNot相同
+   */
+  private static final class Not extends Node {
+
+    private final Node operand;
+
+    Not(Node operand) {
+      this.operand = operand;
+    }
+
+    @Override
+    Object evaluate(Object root, ReflectorFactory reflectorFactory) throws Exception {
+      Object value = operand.evaluate(root, reflectorFactory);
+      return value == UNRESOLVED ? UNRESOLVED : !OgnlOps.booleanValue(value);
+    }
+  }
+
+  /**
+   * 与OGNL的ASTAnd、ASTOr相同，返回最后求值的操作数
+   */
+  private static final class Logical extends Node {
+
+    private final boolean and;
+    private final Node left;
+    private final Node right;
+
+    Logical(boolean and, Node left, Node right) {
+      this.and = and;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Object evaluate(Object root, ReflectorFactory reflectorFactory) throws Exception {
+      Object value = left.evaluate(root, reflectorFactory);
+      if (value == UNRESOLVED || OgnlOps.booleanValue(value) != and) {
+        return value;
+      }
+      return right.evaluate(root, reflectorFactory);
+    }
+  }
+
+  /**
+   * 与OGNL的ASTEq、ASTNotEq、ASTLess、ASTGreater、ASTLessEq、ASTGreaterEq相同
+   */
+  private static final class Comparison extends Node {
+
+    private final String operator;
+    private final Node left;
+    private final Node right;
+
+    Comparison(String operator, Node left, Node right) {
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    Object evaluate(Object root, ReflectorFactory reflectorFactory) throws Exception {
+      Object v1 = left.evaluate(root, reflectorFactory);
+      if (v1 == UNRESOLVED) {
+        return UNRESOLVED;
+      }
+      Object v2 = right.evaluate(root, reflectorFactory);
+      if (v2 == UNRESOLVED) {
+        return UNRESOLVED;
+      }
+      switch (operator) {
+        case "==":
+          return OgnlOps.equal(v1, v2);
+        case "!=":
+          return !OgnlOps.equal(v1, v2);
+        case "<":
+          return OgnlOps.less(v1, v2);
+        case ">":
+          return OgnlOps.greater(v1, v2);
+        case "<=":
+          return !OgnlOps.greater(v1, v2);
+        default:
+          return !OgnlOps.less(v1, v2);
+      }
+    }
+  }
+
+  /**
+   * 属性路径，末尾可以有一个无参方法调用
+   */
+  private static final class Path extends Node {
+
+    private final Segment[] segments;
+    private final String method;
+
+    Path(List<String> names, String method) {
+      this.segments = new Segment[names.size()];
+      for (int i = 0; i < segments.length; i++) {
+        segments[i] = new Segment(names.get(i));
+      }
+      this.method = method;
+    }
+
+    @Override
+    Object evaluate(Object root, ReflectorFactory reflectorFactory) throws Exception {
+      Object value = root instanceof DynamicContext.ContextMap
+          ? getRootProperty((Map<String, Object>) root, segments[0].name)
+          : segments[0].getValue(root, reflectorFactory);
+      for (int i = 1; i < segments.length && value != UNRESOLVED; i++) {
+        value = segments[i].getValue(value, reflectorFactory);
+      }
+      return method == null || value == UNRESOLVED ? value : invoke(value);
+    }
+
+    /**
+     * 与 {@link DynamicContext.ContextAccessor#getProperty} 相同
+     */
+    private static Object getRootProperty(Map<String, Object> bindings, String name) {
+      Object result = bindings.get(name);
+      if (result != null || bindings.containsKey(name)) {
+        return result;
+      }
+      Object parameterObject = bindings.get(DynamicContext.PARAMETER_OBJECT_KEY);
+      if (parameterObject instanceof Map) {
+        return ((Map<?, ?>) parameterObject).get(name);
+      }
+      return null;
+    }
+
+    private Object invoke(Object target) {
+      switch (method) {
+        case "size":
+          if (target instanceof Collection) {
+            return ((Collection<?>) target).size();
+          } else if (target instanceof Map) {
+            return ((Map<?, ?>) target).size();
+          }
+          return UNRESOLVED;
+        case "isEmpty":
+          if (target instanceof Collection) {
+            return ((Collection<?>) target).isEmpty();
+          } else if (target instanceof Map) {
+            return ((Map<?, ?>) target).isEmpty();
+          } else if (target instanceof String) {
+            return ((String) target).isEmpty();
+          }
+          return UNRESOLVED;
+        default:
+          return target instanceof String ? ((String) target).length() : UNRESOLVED;
+      }
+    }
+  }
+
+  /**
+   * 属性路径中的一级
+   */
+  private static final class Segment {
+
+    private final String name;
+    /**
+     * 上次求值的类型和getter，类型相同时直接调用
+     */
+    private volatile Getter getter;
+
+    Segment(String name) {
+      this.name = name;
+    }
+
+    Object getValue(Object target, ReflectorFactory reflectorFactory) throws Exception {
+      if (target == null || target instanceof Collection || target instanceof Iterator
+          || target instanceof Enumeration || target instanceof Class || target.getClass().isArray()) {
+        return UNRESOLVED;
+      }
+      if (target instanceof Map) {
+        Map<?, ?> map = (Map<?, ?>) target;
+        return map.containsKey(name) ? map.get(name) : UNRESOLVED;
+      }
+      Getter current = getter;
+      if (current == null || current.type != target.getClass()) {
+        MetaClass metaClass = MetaClass.forClass(target.getClass(), reflectorFactory);
+        if (!metaClass.hasGetter(name)) {
+          return UNRESOLVED;
+        }
+        current = new Getter(target.getClass(), metaClass.getGetInvoker(name));
+        getter = current;
+      }
+      return current.invoker.invoke(target, null);
+    }
+  }
+
+  private static final class Getter {
+
+    private final Class<?> type;
+    private final Invoker invoker;
+
+    Getter(Class<?> type, Invoker invoker) {
+      this.type = type;
+      this.invoker = invoker;
+    }
+  }
+
+  /**
+   * 递归下降解析，优先级与OGNL相同：or &lt; and &lt; 相等 &lt; 大小比较 &lt; not。
+   * 遇到不支持的语法返回null。
+   */
+  private static final class Parser {
+
+    private static final Set<String> METHODS = new HashSet<>(Arrays.asList("size", "isEmpty", "length"));
+    /**
+     * 不支持的OGNL关键字
+     */
+    private static final Set<String> RESERVED = new HashSet<>(Arrays.asList(
+        "in", "instanceof", "new", "bor", "xor", "band", "shl", "shr", "ushr"));
+
+    private final List<String> tokens = new ArrayList<>();
+    private int position;
+
+    Parser(String expression) {
+      tokenize(expression);
+    }
+
+    Node parse() {
+      if (tokens.isEmpty()) {
+        return null;
+      }
+      Node node = parseOr();
+      return node != null && position == tokens.size() ? node : null;
+    }
+
+    private Node parseOr() {
+      Node left = parseAnd();
+      while (left != null && (accept("or") || accept("||"))) {
+        Node right = parseAnd();
+        left = right == null ? null : new Logical(false, left, right);
+      }
+      return left;
+    }
+
+    private Node parseAnd() {
+      Node left = parseEquality();
+      while (left != null && (accept("and") || accept("&&"))) {
+        Node right = parseEquality();
+        left = right == null ? null : new Logical(true, left, right);
+      }
+      return left;
+    }
+
+    private Node parseEquality() {
+      Node left = parseRelational();
+      String operator;
+      while (left != null && (operator = acceptOperator("==", "eq", "!=", "neq")) != null) {
+        Node right = parseRelational();
+        left = right == null ? null : new Comparison(operator, left, right);
+      }
+      return left;
+    }
+
+    private Node parseRelational() {
+      Node left = parseUnary();
+      String operator;
+      while (left != null && (operator = acceptOperator("<=", "lte", ">=", "gte", "<", "lt", ">", "gt")) != null) {
+        Node right = parseUnary();
+        left = right == null ? null : new Comparison(operator, left, right);
+      }
+      return left;
+    }
+
+    private Node parseUnary() {
+      if (accept("!") || accept("not")) {
+        Node operand = parseUnary();
+        return operand == null ? null : new Not(operand);
+      }
+      return parsePrimary();
+    }
+
+    private Node parsePrimary() {
+      if (position >= tokens.size()) {
+        return null;
+      }
+      if (accept("(")) {
+        Node node = parseOr();
+        return node != null && accept(")") ? node : null;
+      }
+      String token = tokens.get(position++);
+      switch (token) {
+        case "null":
+          return new Literal(null);
+        case "true":
+          return new Literal(Boolean.TRUE);
+        case "false":
+          return new Literal(Boolean.FALSE);
+        default:
+          break;
+      }
+      char first = token.charAt(0);
+      if (first == '\'' || first == '"') {
+        String text = token.substring(1, token.length() - 1);
+        // 与OGNL相同，单引号中只有一个字符时是Character
+        return new Literal(first == '\'' && text.length() == 1 ? (Object) text.charAt(0) : text);
+      }
+      if (Character.isDigit(first)) {
+        return new Literal(Integer.valueOf(token));
+      }
+      if (!isIdentifier(token)) {
+        return null;
+      }
+      List<String> names = new ArrayList<>();
+      names.add(token);
+      while (accept(".")) {
+        if (position >= tokens.size() || !isIdentifier(tokens.get(position))) {
+          return null;
+        }
+        String name = tokens.get(position++);
+        if (accept("(")) {
+          return METHODS.contains(name) && accept(")") ? new Path(names, name) : null;
+        }
+        names.add(name);
+      }
+      return new Path(names, null);
+    }
+
+    private boolean accept(String token) {
+      if (position < tokens.size() && tokens.get(position).equals(token)) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * @return 匹配到的运算符，eq等关键字转换为对应的符号
+     */
+    private String acceptOperator(String... operators) {
+      for (int i = 0; i < operators.length; i += 2) {
+        if (accept(operators[i]) || accept(operators[i + 1])) {
+          return operators[i];
+        }
+      }
+      return null;
+    }
+
+    private boolean isIdentifier(String token) {
+      if (!Character.isJavaIdentifierStart(token.charAt(0)) || RESERVED.contains(token)) {
+        return false;
+      }
+      switch (token) {
+        case "and":
+        case "or":
+        case "not":
+        case "eq":
+        case "neq":
+        case "lt":
+        case "lte":
+        case "gt":
+        case "gte":
+        case "null":
+        case "true":
+        case "false":
+          return false;
+        default:
+          return true;
+      }
+    }
+
+    /**
+     * 切分为标识符、字面量和运算符，遇到不支持的字符时清空tokens
+     */
+    private void tokenize(String expression) {
+      int length = expression.length();
+      int i = 0;
+      while (i < length) {
+        char c = expression.charAt(i);
+        int start = i;
+        if (Character.isWhitespace(c)) {
+          i++;
+          continue;
+        } else if (Character.isJavaIdentifierStart(c)) {
+          while (i < length && Character.isJavaIdentifierPart(expression.charAt(i))) {
+            i++;
+          }
+        } else if (c >= '1' && c <= '9' || c == '0' && (i + 1 >= length || !Character.isDigit(expression.charAt(i + 1)))) {
+          // 0开头的是八进制，不支持
+          while (i < length && Character.isDigit(expression.charAt(i))) {
+            i++;
+          }
+          if (i - start > 9 || i < length && Character.isJavaIdentifierPart(expression.charAt(i))) {
+            tokens.clear();
+            return;
+          }
+        } else if (c == '\'' || c == '"') {
+          int end = expression.indexOf(c, i + 1);
+          // 不支持转义
+          if (end < 0 || expression.substring(i + 1, end).indexOf('\\') >= 0) {
+            tokens.clear();
+            return;
+          }
+          i = end + 1;
+        } else if (expression.startsWith("==", i) || expression.startsWith("!=", i) || expression.startsWith("<=", i)
+            || expression.startsWith(">=", i) || expression.startsWith("&&", i) || expression.startsWith("||", i)) {
+          i += 2;
+        } else if ("<>!().".indexOf(c) >= 0) {
+          i++;
+        } else {
+          tokens.clear();
+          return;
+        }
+        tokens.add(expression.substring(start, i));
+      }
+    }
+  }
+
+}
@@ -17,12 +17,12 @@ package org.apache.ibatis.scripting.xmltags;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.StringJoiner;
 
 import ognl.OgnlContext;
 import ognl.OgnlRuntime;
 import ognl.PropertyAccessor;
 
+import org.apache.ibatis.parsing.StringBuilderPool;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.session.Configuration;
 
@@ -39,7 +39,22 @@ public class DynamicContext {
   }
 
   private final ContextMap bindings;
-  private final StringJoiner sqlBuilder = new StringJoiner(" ");
+  /**
+   * 拼接中的SQL，第一次追加时才从 {@link StringBuilderPool} 取出，{@link #getSql()} 时归还
+   */
+  private StringBuilder sqlBuilder;
+  /**
+   * 是否追加过SQL片段，片段之间用一个空格分隔
+   */
+  private boolean sqlAppended;
+  /**
+   * 调用 {@link #getSql()} 之后的结果，之后如果继续追加，从这里恢复
+   */
+  private String builtSql;
+  /**
+   * {@link #getSql()} 去掉的末尾空白，继续追加时一并恢复
+   */
+  private String builtTrailingWhitespace;
   private int uniqueNumber = 0;
 
   public DynamicContext(Configuration configuration, Object parameterObject) {
@@ -53,6 +68,13 @@ public class DynamicContext {
     bindings.put(DATABASE_ID_KEY, configuration.getDatabaseId());
   }
 
+  /**
+   * 供把SQL和绑定都转发给delegate的包装类使用，共用delegate的绑定，不再新建
+   */
+  DynamicContext(DynamicContext delegate) {
+    this.bindings = delegate.bindings;
+  }
+
   public Map<String, Object> getBindings() {
     return bindings;
   }
@@ -62,11 +84,39 @@ public class DynamicContext {
   }
 
   public void appendSql(String sql) {
-    sqlBuilder.add(sql);
+    if (sqlBuilder == null) {
+      sqlBuilder = StringBuilderPool.acquire(0);
+      if (builtSql != null) {
+        sqlBuilder.append(builtSql).append(builtTrailingWhitespace);
+        builtSql = null;
+        builtTrailingWhitespace = null;
+      }
+    }
+    if (sqlAppended) {
+      sqlBuilder.append(' ');
+    }
+    sqlBuilder.append(sql);
+    sqlAppended = true;
   }
 
   public String getSql() {
-    return sqlBuilder.toString().trim();
+    if (sqlBuilder == null) {
+      return builtSql == null ? "" : builtSql;
+    }
+    // 直接在缓冲区上去掉首尾空白，只复制一次
+    int end = sqlBuilder.length();
+    while (end > 0 && sqlBuilder.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    int start = 0;
+    while (start < end && sqlBuilder.charAt(start) <= ' ') {
+      start++;
+    }
+    builtSql = sqlBuilder.substring(start, end);
+    builtTrailingWhitespace = end == sqlBuilder.length() ? "" : sqlBuilder.substring(end);
+    StringBuilderPool.release(sqlBuilder);
+    sqlBuilder = null;
+    return builtSql;
   }
 
   public int getUniqueNumber() {
@@ -15,7 +15,13 @@
  */
 package org.apache.ibatis.scripting.xmltags;
 
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import org.apache.ibatis.builder.SqlSourceBuilder;
+import org.apache.ibatis.builder.SqlSourceBuilder.ParsedSql;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.SqlSource;
 import org.apache.ibatis.session.Configuration;
@@ -25,24 +31,91 @@ import org.apache.ibatis.session.Configuration;
  */
 public class DynamicSqlSource implements SqlSource {
 
+  /**
+   * 每个语句最多缓存的解析结果数，foreach的元素个数不同时生成的sql也不同，超出后先淘汰最早加入的
+   */
+  private static final int MAX_PARSED_SQL = 64;
+
   private final Configuration configuration;
   private final SqlNode rootSqlNode;
+  private final SqlSourceBuilder sqlSourceParser;
+  /**
+   * 生成的sql和参数类型相同时复用#{}的解析结果
+   */
+  private final Map<ParsedSqlKey, ParsedSql> parsedSqlCache = new ConcurrentHashMap<>();
+  /**
+   * 解析结果的加入顺序
+   */
+  private final Queue<ParsedSqlKey> insertionOrder = new ConcurrentLinkedQueue<>();
 
   public DynamicSqlSource(Configuration configuration, SqlNode rootSqlNode) {
     this.configuration = configuration;
     this.rootSqlNode = rootSqlNode;
+    this.sqlSourceParser = new SqlSourceBuilder(configuration);
   }
 
   @Override
   public BoundSql getBoundSql(Object parameterObject) {
     DynamicContext context = new DynamicContext(configuration, parameterObject);
     rootSqlNode.apply(context);
-    SqlSourceBuilder sqlSourceParser = new SqlSourceBuilder(configuration);
     Class<?> parameterType = parameterObject == null ? Object.class : parameterObject.getClass();
-    SqlSource sqlSource = sqlSourceParser.parse(context.getSql(), parameterType, context.getBindings());
+    SqlSource sqlSource = parse(context.getSql(), parameterType, context.getBindings());
     BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
     context.getBindings().forEach(boundSql::setAdditionalParameter);
     return boundSql;
   }
 
+  private SqlSource parse(String sql, Class<?> parameterType, Map<String, Object> bindings) {
+    ParsedSqlKey key = new ParsedSqlKey(sql, parameterType);
+    ParsedSql parsedSql = parsedSqlCache.get(key);
+    if (parsedSql != null) {
+      return sqlSourceParser.parse(parsedSql, bindings);
+    }
+    parsedSql = sqlSourceParser.parseReusable(sql, parameterType, bindings);
+    // 并发解析同一个sql时只记录一次加入顺序
+    if (parsedSqlCache.putIfAbsent(key, parsedSql) == null) {
+      insertionOrder.offer(key);
+      evictIfNecessary();
+    }
+    return sqlSourceParser.parse(parsedSql, bindings);
+  }
+
+  private void evictIfNecessary() {
+    while (parsedSqlCache.size() > MAX_PARSED_SQL) {
+      ParsedSqlKey eldest = insertionOrder.poll();
+      if (eldest == null) {
+        return;
+      }
+      parsedSqlCache.remove(eldest);
+    }
+  }
+
+  private static final class ParsedSqlKey {
+
+    private final String sql;
+    private final Class<?> parameterType;
+
+    ParsedSqlKey(String sql, Class<?> parameterType) {
+      this.sql = sql;
+      this.parameterType = parameterType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ParsedSqlKey)) {
+        return false;
+      }
+      ParsedSqlKey other = (ParsedSqlKey) o;
+      return parameterType == other.parameterType && sql.equals(other.sql);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * sql.hashCode() + parameterType.hashCode();
+    }
+  }
+
 }
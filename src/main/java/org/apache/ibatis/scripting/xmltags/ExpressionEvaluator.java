@@ -20,16 +20,107 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.ReflectorFactory;
 
 /**
  * @author Clinton Begin
  */
 public class ExpressionEvaluator {
 
+  /**
+   * 表示表达式不能编译，直接使用OGNL
+   */
+  private static final Object NOT_COMPILABLE = new Object();
+  /**
+   * 没有指定ReflectorFactory时使用
+   */
+  private static final ReflectorFactory DEFAULT_REFLECTOR_FACTORY = new DefaultReflectorFactory();
+  /**
+   * 表达式和不绑定ReflectorFactory的 {@link CompiledExpression}，简单的表达式不经过OGNL。
+   * 与 {@link OgnlCache} 使用同样的上限，超出时先淘汰最早加入的
+   */
+  private static final Map<String, Object> compiledExpressions = new ConcurrentHashMap<>();
+  /**
+   * 表达式的加入顺序
+   */
+  private static final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+  private final ReflectorFactory reflectorFactory;
+
+  public ExpressionEvaluator() {
+    this(DEFAULT_REFLECTOR_FACTORY);
+  }
+
+  /**
+   * @param reflectorFactory 读取属性时使用，一般是 {@link org.apache.ibatis.session.Configuration#getReflectorFactory()}
+   * @since 3.5.1
+   */
+  public ExpressionEvaluator(ReflectorFactory reflectorFactory) {
+    this.reflectorFactory = reflectorFactory;
+  }
+
   public boolean evaluateBoolean(String expression, Object parameterObject) {
-    Object value = OgnlCache.getValue(expression, parameterObject);
+    return toBoolean(getValue(expression, parameterObject));
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public boolean evaluateBoolean(CompiledExpression expression, Object parameterObject) {
+    return toBoolean(expression.getValue(parameterObject));
+  }
+
+  public Iterable<?> evaluateIterable(String expression, Object parameterObject) {
+    return toIterable(expression, getValue(expression, parameterObject));
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public Iterable<?> evaluateIterable(CompiledExpression expression, Object parameterObject) {
+    return toIterable(expression.getExpression(), expression.getValue(parameterObject));
+  }
+
+  private Object getValue(String expression, Object parameterObject) {
+    Object compiled = getCompiled(expression);
+    return compiled == NOT_COMPILABLE
+        ? OgnlCache.getValue(expression, parameterObject)
+        : ((CompiledExpression) compiled).getValue(parameterObject, reflectorFactory);
+  }
+
+  private static Object getCompiled(String expression) {
+    Object compiled = compiledExpressions.get(expression);
+    if (compiled != null) {
+      return compiled;
+    }
+    compiled = CompiledExpression.compile(expression);
+    if (compiled == null) {
+      compiled = NOT_COMPILABLE;
+    }
+    // 并发编译同一个表达式时只保留先放入的结果，避免重复记录加入顺序
+    Object previous = compiledExpressions.putIfAbsent(expression, compiled);
+    if (previous != null) {
+      return previous;
+    }
+    insertionOrder.offer(expression);
+    int maximumSize = OgnlCache.getMaximumSize();
+    while (compiledExpressions.size() > maximumSize) {
+      String eldest = insertionOrder.poll();
+      if (eldest == null) {
+        break;
+      }
+      compiledExpressions.remove(eldest);
+    }
+    return compiled;
+  }
+
+  private boolean toBoolean(Object value) {
     if (value instanceof Boolean) {
       return (Boolean) value;
     }
@@ -39,8 +130,7 @@ public class ExpressionEvaluator {
     return value != null;
   }
 
-  public Iterable<?> evaluateIterable(String expression, Object parameterObject) {
-    Object value = OgnlCache.getValue(expression, parameterObject);
+  private Iterable<?> toIterable(String expression, Object value) {
     if (value == null) {
       throw new BuilderException("The expression '" + expression + "' evaluated to a null value.");
     }
@@ -28,6 +28,10 @@ public class ForEachSqlNode implements SqlNode {
 
   private final ExpressionEvaluator evaluator;
   private final String collectionExpression;
+  /**
+   * 预编译的collection，为null时使用OGNL
+   */
+  private final CompiledExpression compiledCollectionExpression;
   private final SqlNode contents;
   private final String open;
   private final String close;
@@ -35,10 +39,24 @@ public class ForEachSqlNode implements SqlNode {
   private final String item;
   private final String index;
   private final Configuration configuration;
+  /**
+   * 是否把元素个数补齐到2的幂，补齐的元素重复最后一个元素
+   */
+  private final boolean padding;
 
   public ForEachSqlNode(Configuration configuration, SqlNode contents, String collectionExpression, String index, String item, String open, String close, String separator) {
-    this.evaluator = new ExpressionEvaluator();
+    this(configuration, contents, collectionExpression, null, index, item, open, close, separator, false);
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public ForEachSqlNode(Configuration configuration, SqlNode contents, String collectionExpression,
+      CompiledExpression compiledCollectionExpression, String index, String item, String open, String close,
+      String separator, boolean padding) {
+    this.evaluator = new ExpressionEvaluator(configuration.getReflectorFactory());
     this.collectionExpression = collectionExpression;
+    this.compiledCollectionExpression = compiledCollectionExpression;
     this.contents = contents;
     this.open = open;
     this.close = close;
@@ -46,49 +64,74 @@ public class ForEachSqlNode implements SqlNode {
     this.index = index;
     this.item = item;
     this.configuration = configuration;
+    this.padding = padding;
   }
 
   @Override
   public boolean apply(DynamicContext context) {
     Map<String, Object> bindings = context.getBindings();
-    final Iterable<?> iterable = evaluator.evaluateIterable(collectionExpression, bindings);
+    final Iterable<?> iterable = compiledCollectionExpression != null
+        ? evaluator.evaluateIterable(compiledCollectionExpression, bindings)
+        : evaluator.evaluateIterable(collectionExpression, bindings);
     if (!iterable.iterator().hasNext()) {
       return true;
     }
     boolean first = true;
     applyOpen(context);
     int i = 0;
+    Object last = null;
     for (Object o : iterable) {
-      DynamicContext oldContext = context;
-      if (first || separator == null) {
-        context = new PrefixedContext(context, "");
-      } else {
-        context = new PrefixedContext(context, separator);
-      }
-      int uniqueNumber = context.getUniqueNumber();
-      // Issue #709
-      if (o instanceof Map.Entry) {
-        @SuppressWarnings("unchecked")
-        Map.Entry<Object, Object> mapEntry = (Map.Entry<Object, Object>) o;
-        applyIndex(context, mapEntry.getKey(), uniqueNumber);
-        applyItem(context, mapEntry.getValue(), uniqueNumber);
-      } else {
-        applyIndex(context, i, uniqueNumber);
-        applyItem(context, o, uniqueNumber);
-      }
-      contents.apply(new FilteredDynamicContext(configuration, context, index, item, uniqueNumber));
-      if (first) {
-        first = !((PrefixedContext) context).isPrefixApplied();
-      }
-      context = oldContext;
+      first = applyElement(context, o, i, first);
+      last = o;
       i++;
     }
+    if (padding) {
+      // 补齐到2的幂，IN列表的SQL只有少数几种，语句缓存和数据库的执行计划缓存可以复用
+      for (int lastIndex = i - 1, size = paddedSize(i); i < size; i++) {
+        first = applyElement(context, last, lastIndex, first);
+      }
+    }
     applyClose(context);
     context.getBindings().remove(item);
     context.getBindings().remove(index);
     return true;
   }
 
+  /**
+   * 拼接一个元素，返回下一个元素是否仍是第一个（之前的元素都没有输出内容）
+   */
+  private boolean applyElement(DynamicContext context, Object o, int i, boolean first) {
+    if (first || separator == null) {
+      context = new PrefixedContext(context, "");
+    } else {
+      context = new PrefixedContext(context, separator);
+    }
+    int uniqueNumber = context.getUniqueNumber();
+    // Issue #709
+    if (o instanceof Map.Entry) {
+      @SuppressWarnings("unchecked")
+      Map.Entry<Object, Object> mapEntry = (Map.Entry<Object, Object>) o;
+      applyIndex(context, mapEntry.getKey(), uniqueNumber);
+      applyItem(context, mapEntry.getValue(), uniqueNumber);
+    } else {
+      applyIndex(context, i, uniqueNumber);
+      applyItem(context, o, uniqueNumber);
+    }
+    contents.apply(new FilteredDynamicContext(context, index, item, uniqueNumber));
+    return first && !((PrefixedContext) context).isPrefixApplied();
+  }
+
+  /**
+   * 不小于size的最小的2的幂
+   */
+  private static int paddedSize(int size) {
+    if (size <= 1) {
+      return size;
+    }
+    int highest = Integer.highestOneBit(size);
+    return highest == size || highest == 1 << 30 ? size : highest << 1;
+  }
+
   private void applyIndex(DynamicContext context, Object o, int i) {
     if (index != null) {
       context.bind(index, o);
@@ -125,8 +168,8 @@ public class ForEachSqlNode implements SqlNode {
     private final String itemIndex;
     private final String item;
 
-    public FilteredDynamicContext(Configuration configuration,DynamicContext delegate, String itemIndex, String item, int i) {
-      super(configuration, null);
+    public FilteredDynamicContext(DynamicContext delegate, String itemIndex, String item, int i) {
+      super(delegate);
       this.delegate = delegate;
       this.index = i;
       this.itemIndex = itemIndex;
@@ -151,16 +194,45 @@ public class ForEachSqlNode implements SqlNode {
     @Override
     public void appendSql(String sql) {
       GenericTokenParser parser = new GenericTokenParser("#{", "}", content -> {
-        String newContent = content.replaceFirst("^\\s*" + item + "(?![^.,:\\s])", itemizeItem(item, index));
-        if (itemIndex != null && newContent.equals(content)) {
-          newContent = content.replaceFirst("^\\s*" + itemIndex + "(?![^.,:\\s])", itemizeItem(itemIndex, index));
+        String newContent = item == null ? null : itemize(content, item);
+        if (itemIndex != null && newContent == null) {
+          newContent = itemize(content, itemIndex);
         }
-        return "#{" + newContent + "}";
+        return "#{" + (newContent == null ? content : newContent) + "}";
       });
 
       delegate.appendSql(parser.parse(sql));
     }
 
+    /**
+     * 与正则 {@code ^\s*name(?![^.,:\s])} 的替换相同：去掉开头空白后以name开头，且其后是结尾或 .,: 或空白时，
+     * 将这部分替换为带序号的名称，不匹配时返回null。逐字符比较，避免每个元素都编译正则
+     */
+    private String itemize(String content, String name) {
+      int start = 0;
+      while (start < content.length() && isWhitespace(content.charAt(start))) {
+        start++;
+      }
+      int end = start + name.length();
+      if (!content.startsWith(name, start)) {
+        return null;
+      }
+      if (end < content.length()) {
+        char next = content.charAt(end);
+        if (next != '.' && next != ',' && next != ':' && !isWhitespace(next)) {
+          return null;
+        }
+      }
+      return itemizeItem(name, index) + content.substring(end);
+    }
+
+    /**
+     * 正则中 {@code \s} 匹配的字符
+     */
+    private static boolean isWhitespace(char c) {
+      return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
     @Override
     public int getUniqueNumber() {
       return delegate.getUniqueNumber();
@@ -175,7 +247,7 @@ public class ForEachSqlNode implements SqlNode {
     private boolean prefixApplied;
 
     public PrefixedContext(DynamicContext delegate, String prefix) {
-      super(configuration, null);
+      super(delegate);
       this.delegate = delegate;
       this.prefix = prefix;
       this.prefixApplied = false;
@@ -197,7 +269,7 @@ public class ForEachSqlNode implements SqlNode {
 
     @Override
     public void appendSql(String sql) {
-      if (!prefixApplied && sql != null && sql.trim().length() > 0) {
+      if (!prefixApplied && sql != null && !isBlank(sql)) {
         delegate.appendSql(prefix);
         prefixApplied = true;
       }
@@ -213,6 +285,18 @@ public class ForEachSqlNode implements SqlNode {
     public int getUniqueNumber() {
       return delegate.getUniqueNumber();
     }
+
+    /**
+     * 与 {@code sql.trim().length() == 0} 相同，但不复制字符串
+     */
+    private boolean isBlank(String sql) {
+      for (int i = 0; i < sql.length(); i++) {
+        if (sql.charAt(i) > ' ') {
+          return false;
+        }
+      }
+      return true;
+    }
   }
 
 }
@@ -21,17 +21,32 @@ package org.apache.ibatis.scripting.xmltags;
 public class IfSqlNode implements SqlNode {
   private final ExpressionEvaluator evaluator;
   private final String test;
+  /**
+   * 预编译的test，为null时使用OGNL
+   */
+  private final CompiledExpression compiledTest;
   private final SqlNode contents;
 
   public IfSqlNode(SqlNode contents, String test) {
+    this(contents, test, null);
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public IfSqlNode(SqlNode contents, String test, CompiledExpression compiledTest) {
     this.test = test;
+    this.compiledTest = compiledTest;
     this.contents = contents;
     this.evaluator = new ExpressionEvaluator();
   }
 
   @Override
   public boolean apply(DynamicContext context) {
-    if (evaluator.evaluateBoolean(test, context.getBindings())) {
+    boolean matched = compiledTest != null
+        ? evaluator.evaluateBoolean(compiledTest, context.getBindings())
+        : evaluator.evaluateBoolean(test, context.getBindings());
+    if (matched) {
       contents.apply(context);
       return true;
     }
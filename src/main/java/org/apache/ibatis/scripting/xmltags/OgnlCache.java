@@ -16,7 +16,10 @@
 package org.apache.ibatis.scripting.xmltags;
 
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 import ognl.Ognl;
 import ognl.OgnlException;
@@ -34,7 +37,20 @@ public final class OgnlCache {
 
   private static final OgnlMemberAccess MEMBER_ACCESS = new OgnlMemberAccess();
   private static final OgnlClassResolver CLASS_RESOLVER = new OgnlClassResolver();
+  /**
+   * 默认最多缓存的表达式个数
+   */
+  public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
   private static final Map<String, Object> expressionCache = new ConcurrentHashMap<>();
+  /**
+   * 表达式的加入顺序，超出上限时先淘汰最早加入的
+   */
+  private static final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+  private static final LongAdder hits = new LongAdder();
+  private static final LongAdder misses = new LongAdder();
+  private static final LongAdder evictions = new LongAdder();
+  private static volatile int maximumSize = DEFAULT_MAXIMUM_SIZE;
 
   private OgnlCache() {
     // Prevent Instantiation of Static Class
@@ -49,13 +65,112 @@ public final class OgnlCache {
     }
   }
 
+  /**
+   * 预先解析表达式，解析失败时不抛出异常，留到求值时再报告
+   *
+   * @return 表达式是否能被解析
+   * @since 3.5.1
+   */
+  public static boolean prepare(String expression) {
+    try {
+      parseExpression(expression);
+      return true;
+    } catch (OgnlException e) {
+      return false;
+    }
+  }
+
+  /**
+   * 设置最多缓存的表达式个数，{@code ${}} 中的内容随参数变化时可以避免缓存无限增长
+   *
+   * @since 3.5.1
+   */
+  public static void setMaximumSize(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("Maximum size must be greater than zero but was " + maximumSize);
+    }
+    OgnlCache.maximumSize = maximumSize;
+    evictIfNecessary();
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public static int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public static int getSize() {
+    return expressionCache.size();
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public static long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * 未命中缓存、需要解析的次数
+   *
+   * @since 3.5.1
+   */
+  public static long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public static long getEvictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * 清空缓存和统计
+   *
+   * @since 3.5.1
+   */
+  public static void clear() {
+    expressionCache.clear();
+    insertionOrder.clear();
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
   private static Object parseExpression(String expression) throws OgnlException {
     Object node = expressionCache.get(expression);
-    if (node == null) {
-      node = Ognl.parseExpression(expression);
-      expressionCache.put(expression, node);
+    if (node != null) {
+      hits.increment();
+      return node;
+    }
+    misses.increment();
+    node = Ognl.parseExpression(expression);
+    // 并发解析同一个表达式时只保留先放入的结果，避免重复记录加入顺序
+    Object previous = expressionCache.putIfAbsent(expression, node);
+    if (previous != null) {
+      return previous;
     }
+    insertionOrder.offer(expression);
+    evictIfNecessary();
     return node;
   }
 
+  private static void evictIfNecessary() {
+    while (expressionCache.size() > maximumSize) {
+      String eldest = insertionOrder.poll();
+      if (eldest == null) {
+        return;
+      }
+      if (expressionCache.remove(eldest) != null) {
+        evictions.increment();
+      }
+    }
+  }
+
 }
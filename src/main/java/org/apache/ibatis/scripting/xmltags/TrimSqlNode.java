@@ -76,7 +76,7 @@ public class TrimSqlNode implements SqlNode {
     private StringBuilder sqlBuffer;
 
     public FilteredDynamicContext(DynamicContext delegate) {
-      super(configuration, null);
+      super(delegate);
       this.delegate = delegate;
       this.prefixApplied = false;
       this.suffixApplied = false;
@@ -84,11 +84,12 @@ public class TrimSqlNode implements SqlNode {
     }
 
     public void applyAll() {
-      sqlBuffer = new StringBuilder(sqlBuffer.toString().trim());
-      String trimmedUppercaseSql = sqlBuffer.toString().toUpperCase(Locale.ENGLISH);
-      if (trimmedUppercaseSql.length() > 0) {
-        applyPrefix(sqlBuffer, trimmedUppercaseSql);
-        applySuffix(sqlBuffer, trimmedUppercaseSql);
+      trim(sqlBuffer);
+      if (sqlBuffer.length() > 0) {
+        // 前后缀都按去掉首尾空白后的原始SQL判断，删除前缀不影响后缀的判断
+        int suffixLength = suffixToRemove(sqlBuffer);
+        applyPrefix(sqlBuffer);
+        applySuffix(sqlBuffer, suffixLength);
       }
       delegate.appendSql(sqlBuffer.toString());
     }
@@ -118,12 +119,12 @@ public class TrimSqlNode implements SqlNode {
       return delegate.getSql();
     }
 
-    private void applyPrefix(StringBuilder sql, String trimmedUppercaseSql) {
+    private void applyPrefix(StringBuilder sql) {
       if (!prefixApplied) {
         prefixApplied = true;
         if (prefixesToOverride != null) {
           for (String toRemove : prefixesToOverride) {
-            if (trimmedUppercaseSql.startsWith(toRemove)) {
+            if (regionMatchesUpperCase(sql, 0, toRemove)) {
               sql.delete(0, toRemove.trim().length());
               break;
             }
@@ -136,19 +137,26 @@ public class TrimSqlNode implements SqlNode {
       }
     }
 
-    private void applySuffix(StringBuilder sql, String trimmedUppercaseSql) {
-      if (!suffixApplied) {
-        suffixApplied = true;
-        if (suffixesToOverride != null) {
-          for (String toRemove : suffixesToOverride) {
-            if (trimmedUppercaseSql.endsWith(toRemove) || trimmedUppercaseSql.endsWith(toRemove.trim())) {
-              int start = sql.length() - toRemove.trim().length();
-              int end = sql.length();
-              sql.delete(start, end);
-              break;
-            }
+    /**
+     * 需要从末尾删除的字符数，没有匹配的后缀时返回0
+     */
+    private int suffixToRemove(StringBuilder sql) {
+      if (!suffixApplied && suffixesToOverride != null) {
+        for (String toRemove : suffixesToOverride) {
+          String trimmed = toRemove.trim();
+          if (regionMatchesUpperCase(sql, sql.length() - toRemove.length(), toRemove)
+              || regionMatchesUpperCase(sql, sql.length() - trimmed.length(), trimmed)) {
+            return trimmed.length();
           }
         }
+      }
+      return 0;
+    }
+
+    private void applySuffix(StringBuilder sql, int suffixLength) {
+      if (!suffixApplied) {
+        suffixApplied = true;
+        sql.delete(sql.length() - suffixLength, sql.length());
         if (suffix != null) {
           sql.append(" ");
           sql.append(suffix);
@@ -158,4 +166,35 @@ public class TrimSqlNode implements SqlNode {
 
   }
 
+  /**
+   * 去掉首尾空白，与 {@link String#trim()} 相同，但直接修改缓冲区
+   */
+  private static void trim(StringBuilder sql) {
+    int end = sql.length();
+    while (end > 0 && sql.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    sql.setLength(end);
+    int start = 0;
+    while (start < end && sql.charAt(start) <= ' ') {
+      start++;
+    }
+    sql.delete(0, start);
+  }
+
+  /**
+   * sql从offset开始是否与大写的toMatch相同，逐字符转换为大写比较，不复制整段SQL
+   */
+  private static boolean regionMatchesUpperCase(CharSequence sql, int offset, String toMatch) {
+    if (offset < 0 || offset + toMatch.length() > sql.length()) {
+      return false;
+    }
+    for (int i = 0; i < toMatch.length(); i++) {
+      if (Character.toUpperCase(sql.charAt(offset + i)) != toMatch.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
 }
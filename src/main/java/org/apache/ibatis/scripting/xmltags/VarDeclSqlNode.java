@@ -22,15 +22,29 @@ public class VarDeclSqlNode implements SqlNode {
 
   private final String name;
   private final String expression;
+  /**
+   * 预编译的value，为null时使用OGNL
+   */
+  private final CompiledExpression compiledExpression;
 
   public VarDeclSqlNode(String var, String exp) {
+    this(var, exp, null);
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public VarDeclSqlNode(String var, String exp, CompiledExpression compiledExp) {
     name = var;
     expression = exp;
+    compiledExpression = compiledExp;
   }
 
   @Override
   public boolean apply(DynamicContext context) {
-    final Object value = OgnlCache.getValue(expression, context.getBindings());
+    final Object value = compiledExpression != null
+        ? compiledExpression.getValue(context.getBindings())
+        : OgnlCache.getValue(expression, context.getBindings());
     context.bind(name, value);
     return true;
   }
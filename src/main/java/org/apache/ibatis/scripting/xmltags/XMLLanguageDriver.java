@@ -40,7 +40,8 @@ public class XMLLanguageDriver implements LanguageDriver {
 
   @Override
   public SqlSource createSqlSource(Configuration configuration, XNode script, Class<?> parameterType) {
-    XMLScriptBuilder builder = new XMLScriptBuilder(configuration, script, parameterType);
+    XMLScriptBuilder builder = new XMLScriptBuilder(configuration, script, parameterType,
+        configuration.isCompileDynamicSql());
     return builder.parseScriptNode();
   }
 
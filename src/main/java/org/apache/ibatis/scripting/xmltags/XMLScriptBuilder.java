@@ -51,15 +51,27 @@ public class XMLScriptBuilder extends BaseBuilder {
    * nodeHandler的映射
    */
   private final Map<String, NodeHandler> nodeHandlerMap = new HashMap<>();
+  /**
+   * 是否预编译bind的表达式，test和collection的表达式总是预编译
+   */
+  private final boolean compile;
 
   public XMLScriptBuilder(Configuration configuration, XNode context) {
     this(configuration, context, null);
   }
 
   public XMLScriptBuilder(Configuration configuration, XNode context, Class<?> parameterType) {
+    this(configuration, context, parameterType, false);
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public XMLScriptBuilder(Configuration configuration, XNode context, Class<?> parameterType, boolean compile) {
     super(configuration);
     this.context = context;
     this.parameterType = parameterType;
+    this.compile = compile;
     initNodeHandlerMap();
   }
 
@@ -128,6 +140,27 @@ public class XMLScriptBuilder extends BaseBuilder {
     return new MixedSqlNode(contents);
   }
 
+  /**
+   * 预先解析并编译 test 和 collection 表达式，不支持的表达式返回null，继续使用OGNL
+   */
+  private CompiledExpression prepareEvaluated(String expression) {
+    if (expression == null) {
+      return null;
+    }
+    OgnlCache.prepare(expression);
+    return CompiledExpression.compile(expression, configuration.getReflectorFactory());
+  }
+
+  /**
+   * 预先解析 bind 表达式，编译模式下同时返回编译后的表达式
+   */
+  private CompiledExpression prepareBound(String expression) {
+    if (expression != null) {
+      OgnlCache.prepare(expression);
+    }
+    return compile ? CompiledExpression.compile(expression, configuration.getReflectorFactory()) : null;
+  }
+
   private interface NodeHandler {
     void handleNode(XNode nodeToHandle, List<SqlNode> targetContents);
   }
@@ -141,7 +174,7 @@ public class XMLScriptBuilder extends BaseBuilder {
     public void handleNode(XNode nodeToHandle, List<SqlNode> targetContents) {
       final String name = nodeToHandle.getStringAttribute("name");
       final String expression = nodeToHandle.getStringAttribute("value");
-      final VarDeclSqlNode node = new VarDeclSqlNode(name, expression);
+      final VarDeclSqlNode node = new VarDeclSqlNode(name, expression, prepareBound(expression));
       targetContents.add(node);
     }
   }
@@ -203,7 +236,9 @@ public class XMLScriptBuilder extends BaseBuilder {
       String open = nodeToHandle.getStringAttribute("open");
       String close = nodeToHandle.getStringAttribute("close");
       String separator = nodeToHandle.getStringAttribute("separator");
-      ForEachSqlNode forEachSqlNode = new ForEachSqlNode(configuration, mixedSqlNode, collection, index, item, open, close, separator);
+      boolean padding = nodeToHandle.getBooleanAttribute("padding", false);
+      ForEachSqlNode forEachSqlNode = new ForEachSqlNode(configuration, mixedSqlNode, collection, prepareEvaluated(collection),
+          index, item, open, close, separator, padding);
       targetContents.add(forEachSqlNode);
     }
   }
@@ -217,7 +252,7 @@ public class XMLScriptBuilder extends BaseBuilder {
     public void handleNode(XNode nodeToHandle, List<SqlNode> targetContents) {
       MixedSqlNode mixedSqlNode = parseDynamicTags(nodeToHandle);
       String test = nodeToHandle.getStringAttribute("test");
-      IfSqlNode ifSqlNode = new IfSqlNode(mixedSqlNode, test);
+      IfSqlNode ifSqlNode = new IfSqlNode(mixedSqlNode, test, prepareEvaluated(test));
       targetContents.add(ifSqlNode);
     }
   }
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import org.apache.ibatis.binding.MapperRegistry;
 import org.apache.ibatis.builder.CacheRefResolver;
@@ -31,15 +32,30 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheGeneration;
+import org.apache.ibatis.cache.TagVersions;
+import org.apache.ibatis.cache.codec.CompactCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.InvalidationBus;
+import org.apache.ibatis.cache.metrics.CacheMetricsRegistry;
+import org.apache.ibatis.cache.invalidation.LoopbackInvalidationBus;
+import org.apache.ibatis.cache.invalidation.MulticastInvalidationBus;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
+import org.apache.ibatis.datasource.pooled.ConcurrentPooledDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.BatchResultHandler;
+import org.apache.ibatis.executor.CacheRefresher;
 import org.apache.ibatis.executor.CachingExecutor;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ReuseExecutor;
@@ -132,6 +148,53 @@ public class Configuration {
   protected boolean lazyLoadingEnabled = false;
   protected ProxyFactory proxyFactory = new JavassistProxyFactory(); // #224 Using internal Javassist instead of OGNL
 
+  /**
+   * 二级缓存清空时通知其他节点的失效总线，为null时只清空本地缓存
+   */
+  protected InvalidationBus cacheInvalidationBus;
+  /**
+   * 后台刷新二级缓存（refreshAfter）的线程数
+   */
+  protected int cacheRefreshThreads = 2;
+  private CacheRefresher cacheRefresher;
+  /**
+   * 是否统计二级缓存的命中率等，统计结果见cacheMetricsRegistry
+   */
+  protected boolean cacheMetricsEnabled;
+  protected final CacheMetricsRegistry cacheMetricsRegistry = new CacheMetricsRegistry();
+  /**
+   * XML动态sql是否预编译简单的test、collection和bind表达式，不经过OGNL
+   */
+  protected boolean compileDynamicSql;
+  /**
+   * 批量执行时，一个Statement累积多少行后自动执行整个批次，0表示不限制
+   */
+  protected int batchFlushRowsPerStatement;
+  /**
+   * 批量执行时，所有Statement一共累积多少行后自动执行整个批次，0表示不限制
+   */
+  protected int batchFlushRows;
+  /**
+   * 批量执行时，参数估算的字节数累积到多少后自动执行整个批次，0表示不限制
+   */
+  protected int batchFlushBytes;
+  /**
+   * 接收批量执行结果的处理器，设置后结果不再由flushStatements()返回
+   */
+  protected BatchResultHandler batchResultHandler;
+  /**
+   * 批量执行达到自动执行的阈值时，是否在后台线程执行该批次，同时继续绑定下一批的参数
+   */
+  protected boolean batchPipelining;
+  /**
+   * 批量执行时，连续的单行INSERT最多合并为多少行的 INSERT ... VALUES (...), (...)，0或1表示不合并
+   */
+  protected int batchInsertRewriteRows;
+  /**
+   * 合并后的一条INSERT最多包含多少个参数，0表示不限制
+   */
+  protected int batchInsertRewriteParameters;
+
   protected String databaseId;
   /**
    * Configuration factory class.
@@ -152,6 +215,14 @@ public class Configuration {
       .conflictMessageProducer((savedValue, targetValue) ->
           ". please check " + savedValue.getResource() + " and " + targetValue.getResource());
   protected final Map<String, Cache> caches = new StrictMap<>("Caches collection");
+  /**
+   * 有语句声明了cacheTags的缓存，缓存id和tag版本号的映射
+   */
+  protected final Map<String, TagVersions> cacheTagVersions = new ConcurrentHashMap<>();
+  /**
+   * 缓存id和清空次数的映射
+   */
+  protected final Map<String, CacheGeneration> cacheGenerations = new ConcurrentHashMap<>();
   protected final Map<String, ResultMap> resultMaps = new StrictMap<>("Result Maps collection");
   private final Map<String, ParameterMap> parameterMaps = new StrictMap<>(
       "Parameter Maps collection");
@@ -185,13 +256,24 @@ public class Configuration {
 
     typeAliasRegistry.registerAlias("JNDI", JndiDataSourceFactory.class);
     typeAliasRegistry.registerAlias("POOLED", PooledDataSourceFactory.class);
+    typeAliasRegistry.registerAlias("CONCURRENT_POOLED", ConcurrentPooledDataSourceFactory.class);
     typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
 
     typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+    typeAliasRegistry.registerAlias("CONCURRENT_PERPETUAL", ConcurrentPerpetualCache.class);
+    typeAliasRegistry.registerAlias("OFF_HEAP", OffHeapCache.class);
     typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+    typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+    typeAliasRegistry.registerAlias("WEIGHTED", WeightedCache.class);
+
+    typeAliasRegistry.registerAlias("JAVA_SERIALIZATION", JavaSerializationCodec.class);
+    typeAliasRegistry.registerAlias("COMPACT", CompactCodec.class);
+
+    typeAliasRegistry.registerAlias("LOOPBACK", LoopbackInvalidationBus.class);
+    typeAliasRegistry.registerAlias("MULTICAST", MulticastInvalidationBus.class);
 
     typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
@@ -365,6 +447,179 @@ public class Configuration {
     this.proxyFactory = proxyFactory;
   }
 
+  /**
+   * @since 3.5.1
+   */
+  public InvalidationBus getCacheInvalidationBus() {
+    return cacheInvalidationBus;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setCacheInvalidationBus(InvalidationBus cacheInvalidationBus) {
+    this.cacheInvalidationBus = cacheInvalidationBus;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public int getCacheRefreshThreads() {
+    return cacheRefreshThreads;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setCacheRefreshThreads(int cacheRefreshThreads) {
+    this.cacheRefreshThreads = cacheRefreshThreads;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public boolean isCacheMetricsEnabled() {
+    return cacheMetricsEnabled;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setCacheMetricsEnabled(boolean cacheMetricsEnabled) {
+    this.cacheMetricsEnabled = cacheMetricsEnabled;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public boolean isCompileDynamicSql() {
+    return compileDynamicSql;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setCompileDynamicSql(boolean compileDynamicSql) {
+    this.compileDynamicSql = compileDynamicSql;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public int getBatchFlushRowsPerStatement() {
+    return batchFlushRowsPerStatement;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setBatchFlushRowsPerStatement(int batchFlushRowsPerStatement) {
+    this.batchFlushRowsPerStatement = batchFlushRowsPerStatement;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public int getBatchFlushRows() {
+    return batchFlushRows;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setBatchFlushRows(int batchFlushRows) {
+    this.batchFlushRows = batchFlushRows;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public int getBatchFlushBytes() {
+    return batchFlushBytes;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setBatchFlushBytes(int batchFlushBytes) {
+    this.batchFlushBytes = batchFlushBytes;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public BatchResultHandler getBatchResultHandler() {
+    return batchResultHandler;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setBatchResultHandler(BatchResultHandler batchResultHandler) {
+    this.batchResultHandler = batchResultHandler;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public boolean isBatchPipelining() {
+    return batchPipelining;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setBatchPipelining(boolean batchPipelining) {
+    this.batchPipelining = batchPipelining;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public int getBatchInsertRewriteRows() {
+    return batchInsertRewriteRows;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setBatchInsertRewriteRows(int batchInsertRewriteRows) {
+    this.batchInsertRewriteRows = batchInsertRewriteRows;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public int getBatchInsertRewriteParameters() {
+    return batchInsertRewriteParameters;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public void setBatchInsertRewriteParameters(int batchInsertRewriteParameters) {
+    this.batchInsertRewriteParameters = batchInsertRewriteParameters;
+  }
+
+  /**
+   * @since 3.5.1
+   */
+  public CacheMetricsRegistry getCacheMetricsRegistry() {
+    return cacheMetricsRegistry;
+  }
+
+  /**
+   * 后台刷新二级缓存的执行器，第一次使用时创建
+   *
+   * @since 3.5.1
+   */
+  public synchronized CacheRefresher getCacheRefresher() {
+    if (cacheRefresher == null) {
+      cacheRefresher = new CacheRefresher(this, cacheRefreshThreads, 256);
+    }
+    return cacheRefresher;
+  }
+
   public boolean isAggressiveLazyLoading() {
     return aggressiveLazyLoading;
   }
@@ -634,6 +889,40 @@ public class Configuration {
     caches.put(cache.getId(), cache);
   }
 
+  /**
+   * 启用缓存的tag失效，已启用时返回已有的tag版本号
+   *
+   * @since 3.5.1
+   */
+  public TagVersions addCacheTagVersions(String cacheId) {
+    return cacheTagVersions.computeIfAbsent(cacheId, id -> new TagVersions(id, cacheInvalidationBus));
+  }
+
+  /**
+   * @return 缓存的tag版本号，缓存没有启用tag失效时返回null
+   * @since 3.5.1
+   */
+  public TagVersions getCacheTagVersions(String cacheId) {
+    return cacheTagVersions.get(cacheId);
+  }
+
+  /**
+   * 记录缓存的清空次数，已记录时返回已有的
+   *
+   * @since 3.5.1
+   */
+  public CacheGeneration addCacheGeneration(String cacheId) {
+    return cacheGenerations.computeIfAbsent(cacheId, CacheGeneration::new);
+  }
+
+  /**
+   * @return 缓存的清空次数，不是由 {@link org.apache.ibatis.builder.MapperBuilderAssistant} 创建的缓存返回null
+   * @since 3.5.1
+   */
+  public CacheGeneration getCacheGeneration(String cacheId) {
+    return cacheGenerations.get(cacheId);
+  }
+
   public Collection<String> getCacheNames() {
     return caches.keySet();
   }
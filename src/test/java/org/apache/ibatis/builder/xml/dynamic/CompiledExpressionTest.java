@@ -0,0 +1,170 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder.xml.dynamic;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.scripting.xmltags.CompiledExpression;
+import org.apache.ibatis.scripting.xmltags.DynamicContext;
+import org.apache.ibatis.scripting.xmltags.OgnlCache;
+import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class CompiledExpressionTest {
+
+  private final Configuration configuration = new Configuration();
+
+  @Test
+  void shouldCompileOnlySupportedExpressions() {
+    assertNotNull(compile("username"));
+    assertNotNull(compile("author.username != null"));
+    assertNotNull(compile("null == password"));
+    assertNotNull(compile("id > 0 and (name == 'A' or not active)"));
+    assertNotNull(compile("list != null && list.size() gt 0"));
+    assertNull(compile("id in {1, 2}"));
+    assertNull(compile("id + 1 > 2"));
+    assertNull(compile("-1 < id"));
+    assertNull(compile("010 == id"));
+    assertNull(compile("1.5 < id"));
+    assertNull(compile("name == 'it\\'s'"));
+    assertNull(compile("name.substring(1) == 'a'"));
+    assertNull(compile("@java.lang.Math@max(1, 2) > id"));
+    assertNull(compile("id > "));
+    assertNull(compile("(id > 0"));
+  }
+
+  @Test
+  void shouldEvaluateOperatorsLikeOgnl() {
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("id", 1);
+    parameterObject.put("amount", 2.5d);
+    parameterObject.put("name", "abc");
+    parameterObject.put("status", "A");
+    parameterObject.put("empty", "");
+    parameterObject.put("active", Boolean.FALSE);
+    parameterObject.put("list", new ArrayList<>(Arrays.asList(1, 2)));
+    parameterObject.put("none", new ArrayList<>());
+    parameterObject.put("nothing", null);
+    String[] expressions = {
+        "id == 1", "id != 1", "id eq 1", "id neq 2", "id < 2", "id lt 1", "id > 0", "id gt 1", "id <= 1",
+        "id lte 0", "id >= 1", "id gte 2", "amount > 2", "amount == 2", "name == 'abc'", "name == \"abc\"",
+        "status == \"A\"", "status == 'A'", "empty == ''", "empty != ''", "name != null and name != ''",
+        "nothing == null or id == 2", "nothing and id", "id and name", "nothing or name", "not active", "!active",
+        "!(id == 1 and active)", "list != null and list.size() > 0", "none.isEmpty()", "list.isEmpty()",
+        "name.length() == 3", "true == !active", "active == false", "(id == 1 or id == 2) and name != null",
+        "id == 1 and name == 'abc' or active", "missing == null", "name.length() > id.size()"};
+    for (String expression : expressions) {
+      assertSameAsOgnl(expression, parameterObject);
+    }
+  }
+
+  @Test
+  void shouldEvaluateLikeOgnlOnBeanParameter() {
+    Author author = new Author(1, "cbegin", null, "cbegin@apache.org", "N/A", Section.NEWS);
+    assertSameAsOgnl("username", author);
+    assertSameAsOgnl("password", author);
+    assertSameAsOgnl("password == null", author);
+    assertSameAsOgnl("null != username", author);
+    assertSameAsOgnl("id", author);
+    assertSameAsOgnl("_parameter.favouriteSection", author);
+  }
+
+  @Test
+  void shouldEvaluateLikeOgnlOnMapParameter() {
+    Map<String, Object> nested = new HashMap<>();
+    nested.put("a", 1);
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("name", "x");
+    parameterObject.put("nested", nested);
+    parameterObject.put("list", new ArrayList<>(Arrays.asList(1, 2)));
+    assertSameAsOgnl("name", parameterObject);
+    assertSameAsOgnl("nested.a", parameterObject);
+    assertSameAsOgnl("missing == null", parameterObject);
+    // List和Map中不存在的key交给OGNL
+    assertSameAsOgnl("list.size", parameterObject);
+    assertSameAsOgnl("nested.size", parameterObject);
+  }
+
+  @Test
+  void shouldFailLikeOgnlOnNullIntermediateValue() {
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("author", null);
+    Map<String, Object> bindings = new DynamicContext(configuration, parameterObject).getBindings();
+    assertThrows(BuilderException.class, () -> OgnlCache.getValue("author.username", bindings));
+    assertThrows(BuilderException.class, () -> compile("author.username").getValue(bindings));
+  }
+
+  @Test
+  void shouldResolveSamePathOnDifferentClasses() {
+    CompiledExpression expression = compile("_parameter.username");
+    Author author = new Author(1, "cbegin", null, null, null, null);
+    Map<String, Object> map = new HashMap<>();
+    map.put("username", "map");
+    Map<String, Object> holder = new HashMap<>();
+    holder.put("_parameter", map);
+    assertEquals("cbegin", expression.getValue(new DynamicContext(configuration, author).getBindings()));
+    assertEquals("map", expression.getValue(new DynamicContext(configuration, map).getBindings()));
+    assertEquals("cbegin", expression.getValue(new DynamicContext(configuration, author).getBindings()));
+  }
+
+  @Test
+  void shouldBuildSameSqlInCompileMode() {
+    String script = "<script>select * from author <where><if test='username != null'>username = #{username}</if>"
+        + "<foreach collection='ids' item='id' open='and id in (' separator=',' close=')'>#{id}</foreach></where></script>";
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("username", "cbegin");
+    parameterObject.put("ids", Arrays.asList(1, 2));
+    BoundSql interpreted = new XMLLanguageDriver().createSqlSource(configuration, script, Map.class)
+        .getBoundSql(parameterObject);
+    configuration.setCompileDynamicSql(true);
+    BoundSql compiled = new XMLLanguageDriver().createSqlSource(configuration, script, Map.class)
+        .getBoundSql(parameterObject);
+    assertEquals(interpreted.getSql(), compiled.getSql());
+    assertEquals(3, compiled.getParameterMappings().size());
+  }
+
+  private CompiledExpression compile(String expression) {
+    return CompiledExpression.compile(expression, new DefaultReflectorFactory());
+  }
+
+  private void assertSameAsOgnl(String expression, Object parameterObject) {
+    Map<String, Object> bindings = new DynamicContext(configuration, parameterObject).getBindings();
+    CompiledExpression compiled = compile(expression);
+    assertNotNull(compiled, expression);
+    Object expected;
+    try {
+      expected = OgnlCache.getValue(expression, bindings);
+    } catch (RuntimeException e) {
+      // OGNL 本身会失败的表达式（例如 'A' 是 Character，与 String 比较），回退后抛出相同的异常
+      RuntimeException actual = assertThrows(e.getClass(), () -> compiled.getValue(bindings), expression);
+      assertEquals(e.getMessage(), actual.getMessage(), expression);
+      return;
+    }
+    assertEquals(expected, compiled.getValue(bindings), expression);
+  }
+
+}
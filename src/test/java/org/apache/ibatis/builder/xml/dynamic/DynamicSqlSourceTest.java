@@ -16,12 +16,14 @@
 package org.apache.ibatis.builder.xml.dynamic;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -376,6 +378,109 @@ class DynamicSqlSourceTest extends BaseDataTest {
     assertEquals("__frch_u_0", boundSql.getParameterMappings().get(3).getProperty());
   }
 
+  @Test
+  void shouldReuseParameterMappingsForSameSqlAndParameterType() throws Exception {
+    DynamicSqlSource source = createDynamicSqlSource(new TextSqlNode("SELECT * FROM BLOG WHERE ID = #{id}"));
+    BoundSql first = source.getBoundSql(new Bean("one"));
+    BoundSql second = source.getBoundSql(new Bean("two"));
+    assertEquals("SELECT * FROM BLOG WHERE ID = ?", second.getSql());
+    assertSame(first.getParameterMappings().get(0), second.getParameterMappings().get(0));
+    assertEquals(String.class, second.getParameterMappings().get(0).getJavaType());
+  }
+
+  @Test
+  void shouldResolveForEachParameterMappingsOnEveryCall() throws Exception {
+    DynamicSqlSource source = createDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG WHERE ID in"),
+        new ForEachSqlNode(new Configuration(), mixedContents(new TextSqlNode("#{item}")), "array", null, "item", "(", ")", ","));
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("array", new Integer[] {1, 2});
+    BoundSql first = source.getBoundSql(parameterObject);
+    parameterObject.put("array", new String[] {"1", "2"});
+    BoundSql second = source.getBoundSql(parameterObject);
+    assertEquals(first.getSql(), second.getSql());
+    assertEquals(Integer.class, first.getParameterMappings().get(0).getJavaType());
+    assertEquals(String.class, second.getParameterMappings().get(0).getJavaType());
+  }
+
+  @Test
+  void shouldItemizeOnlyWholeItemAndIndexNames() throws Exception {
+    DynamicSqlSource source = createDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG"),
+        new WhereSqlNode(new Configuration(), mixedContents(
+            new ForEachSqlNode(new Configuration(), mixedContents(
+                new TextSqlNode("or (ID = #{ item.id } and NAME = #{item,jdbcType=VARCHAR} and POS = #{i} and X = #{items})")),
+                "list", "i", "item", null, null, null))));
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("list", Arrays.asList("a", "b"));
+    BoundSql boundSql = source.getBoundSql(parameterObject);
+    assertEquals("SELECT * FROM BLOG WHERE  (ID = ? and NAME = ? and POS = ? and X = ?)or (ID = ? and NAME = ? and POS = ? and X = ?)",
+        boundSql.getSql());
+    List<String> properties = new ArrayList<>();
+    boundSql.getParameterMappings().forEach(mapping -> properties.add(mapping.getProperty()));
+    assertEquals(Arrays.asList("__frch_item_0.id", "__frch_item_0", "__frch_i_0", "items",
+        "__frch_item_1.id", "__frch_item_1", "__frch_i_1", "items"), properties);
+  }
+
+  @Test
+  void shouldPadForEachToPowerOfTwo() throws Exception {
+    DynamicSqlSource source = createDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG WHERE ID in"),
+        new ForEachSqlNode(new Configuration(), mixedContents(new TextSqlNode("#{item}")), "list", null, "i", "item",
+            "(", ")", ",", true));
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("list", Arrays.asList(1, 2, 3, 4, 5));
+    BoundSql boundSql = source.getBoundSql(parameterObject);
+    assertEquals("SELECT * FROM BLOG WHERE ID in (  ? , ? , ? , ? , ? , ? , ? , ? )", boundSql.getSql());
+    assertEquals(8, boundSql.getParameterMappings().size());
+    for (int i = 4; i < 8; i++) {
+      String property = boundSql.getParameterMappings().get(i).getProperty();
+      assertEquals(5, boundSql.getAdditionalParameter(property));
+      assertEquals(4, boundSql.getAdditionalParameter(property.replace("item", "i")));
+    }
+    parameterObject.put("list", Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8));
+    assertEquals(8, source.getBoundSql(parameterObject).getParameterMappings().size());
+    parameterObject.put("list", Collections.singletonList(1));
+    assertEquals(1, source.getBoundSql(parameterObject).getParameterMappings().size());
+  }
+
+  @Test
+  void shouldBuildLargeForEach() throws Exception {
+    DynamicSqlSource source = createDynamicSqlSource(
+        new TextSqlNode("SELECT * FROM BLOG WHERE ID in"),
+        new ForEachSqlNode(new Configuration(), mixedContents(new TextSqlNode("#{item}")), "list", null, "item", "(", ")", ","));
+    List<Integer> ids = new ArrayList<>();
+    StringBuilder expected = new StringBuilder("SELECT * FROM BLOG WHERE ID in (");
+    for (int i = 0; i < 5000; i++) {
+      ids.add(i);
+      expected.append(i == 0 ? "  " : " , ").append("?");
+    }
+    expected.append(" )");
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("list", ids);
+    for (int i = 0; i < 2; i++) {
+      BoundSql boundSql = source.getBoundSql(parameterObject);
+      assertEquals(expected.toString(), boundSql.getSql());
+      assertEquals(5000, boundSql.getParameterMappings().size());
+    }
+  }
+
+  @Test
+  void shouldKeepCachingNewShapesAfterCacheIsFull() throws Exception {
+    DynamicSqlSource source = createDynamicSqlSource(new TextSqlNode("SELECT * FROM BLOG WHERE ${column} = #{id}"));
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("id", 1);
+    for (int i = 0; i < 100; i++) {
+      parameterObject.put("column", "C" + i);
+      source.getBoundSql(parameterObject);
+    }
+    parameterObject.put("column", "ID");
+    BoundSql first = source.getBoundSql(parameterObject);
+    BoundSql second = source.getBoundSql(parameterObject);
+    assertEquals("SELECT * FROM BLOG WHERE ID = ?", second.getSql());
+    assertSame(first.getParameterMappings().get(0), second.getParameterMappings().get(0));
+  }
+
   private DynamicSqlSource createDynamicSqlSource(SqlNode... contents) throws IOException, SQLException {
     createBlogDataSource();
     final String resource = "org/apache/ibatis/builder/MapperConfig.xml";
@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder.xml.dynamic;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.scripting.xmltags.DynamicContext;
+import org.apache.ibatis.scripting.xmltags.ExpressionEvaluator;
+import org.apache.ibatis.scripting.xmltags.OgnlCache;
+import org.apache.ibatis.session.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares interpreting an {@code <if test>} expression with OGNL against the fast path of {@link ExpressionEvaluator}.
+ * Run with the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionEvaluatorBenchmark {
+
+  @Param({"name != null", "list != null and list.size() > 0", "status == \"A\"", "id > 0 and name != ''"})
+  public String expression;
+
+  private final ExpressionEvaluator evaluator = new ExpressionEvaluator();
+  private Map<String, Object> bindings;
+
+  @Setup
+  public void setup() {
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("id", 1);
+    parameterObject.put("name", "user1");
+    parameterObject.put("status", "A");
+    parameterObject.put("list", new ArrayList<>(Arrays.asList(1, 2, 3)));
+    bindings = new DynamicContext(new Configuration(), parameterObject).getBindings();
+  }
+
+  @Benchmark
+  public boolean ognl() {
+    Object value = OgnlCache.getValue(expression, bindings);
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    if (value instanceof Number) {
+      return new BigDecimal(String.valueOf(value)).compareTo(BigDecimal.ZERO) != 0;
+    }
+    return value != null;
+  }
+
+  @Benchmark
+  public boolean fastPath() {
+    return evaluator.evaluateBoolean(expression, bindings);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(ExpressionEvaluatorBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
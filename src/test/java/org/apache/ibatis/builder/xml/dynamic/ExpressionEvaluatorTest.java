@@ -17,10 +17,14 @@ package org.apache.ibatis.builder.xml.dynamic;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import org.apache.ibatis.domain.blog.Author;
 import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
 import org.apache.ibatis.scripting.xmltags.ExpressionEvaluator;
 import org.junit.jupiter.api.Test;
 
@@ -85,5 +89,19 @@ class ExpressionEvaluatorTest {
     }
   }
 
+  @Test
+  void shouldReadPropertiesThroughGivenReflectorFactory() {
+    List<Class<?>> reflected = new ArrayList<>();
+    ExpressionEvaluator evaluator = new ExpressionEvaluator(new DefaultReflectorFactory() {
+      @Override
+      public Reflector findForClass(Class<?> type) {
+        reflected.add(type);
+        return super.findForClass(type);
+      }
+    });
+    assertTrue(evaluator.evaluateBoolean("username == 'cbegin'", new Author(1, "cbegin", null, null, null, null)));
+    assertTrue(reflected.contains(Author.class));
+  }
+
 
 }
@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder.xml.dynamic;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.scripting.xmltags.OgnlCache;
+import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OgnlCacheTest {
+
+  @BeforeEach
+  void clearCache() {
+    OgnlCache.clear();
+  }
+
+  @AfterEach
+  void restoreMaximumSize() {
+    OgnlCache.setMaximumSize(OgnlCache.DEFAULT_MAXIMUM_SIZE);
+  }
+
+  @Test
+  void shouldCountHitsAndMisses() {
+    Map<String, Object> root = new HashMap<>();
+    root.put("id", 1);
+    assertEquals(1, OgnlCache.getValue("id", root));
+    assertEquals(1, OgnlCache.getValue("id", root));
+    assertEquals(1, OgnlCache.getSize());
+    assertEquals(1, OgnlCache.getMissCount());
+    assertEquals(1, OgnlCache.getHitCount());
+  }
+
+  @Test
+  void shouldEvictEldestExpressionWhenFull() {
+    OgnlCache.setMaximumSize(2);
+    Map<String, Object> root = new HashMap<>();
+    root.put("a", 1);
+    root.put("b", 2);
+    root.put("c", 3);
+    OgnlCache.getValue("a", root);
+    OgnlCache.getValue("b", root);
+    OgnlCache.getValue("c", root);
+    assertEquals(2, OgnlCache.getSize());
+    assertEquals(1, OgnlCache.getEvictionCount());
+    OgnlCache.getValue("c", root);
+    assertEquals(1, OgnlCache.getHitCount());
+    OgnlCache.getValue("a", root);
+    assertEquals(4, OgnlCache.getMissCount());
+    assertEquals(2, OgnlCache.getSize());
+  }
+
+  @Test
+  void shouldShrinkWhenMaximumSizeIsLowered() {
+    for (int i = 0; i < 10; i++) {
+      assertTrue(OgnlCache.prepare("p" + i));
+    }
+    OgnlCache.setMaximumSize(3);
+    assertEquals(3, OgnlCache.getSize());
+    assertEquals(7, OgnlCache.getEvictionCount());
+    assertThrows(IllegalArgumentException.class, () -> OgnlCache.setMaximumSize(0));
+  }
+
+  @Test
+  void shouldReportInvalidExpressionOnlyWhenEvaluated() {
+    assertFalse(OgnlCache.prepare("id =="));
+    assertEquals(0, OgnlCache.getSize());
+    assertThrows(BuilderException.class, () -> OgnlCache.getValue("id ==", new HashMap<>()));
+  }
+
+  @Test
+  void shouldPrepareExpressionsWhenMapperIsLoaded() {
+    String script = "<script>select * from blog"
+        + "<bind name='pattern' value=\"'%' + title + '%'\"/>"
+        + "<where><if test='title != null'>title like #{pattern}</if>"
+        + "<foreach collection='ids' item='id' open='and id in (' close=')' separator=','>#{id}</foreach>"
+        + "</where></script>";
+    new XMLLanguageDriver().createSqlSource(new Configuration(), script, Map.class);
+    assertEquals(3, OgnlCache.getSize());
+    assertEquals(3, OgnlCache.getMissCount());
+    Map<String, Object> root = new HashMap<>();
+    root.put("title", "mybatis");
+    assertEquals("%mybatis%", OgnlCache.getValue("'%' + title + '%'", root));
+    assertEquals(3, OgnlCache.getMissCount());
+    assertEquals(1, OgnlCache.getHitCount());
+  }
+
+}
@@ -0,0 +1,160 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class BlockingCacheTest {
+
+  @Test
+  void shouldLoadOnceForConcurrentMisses() throws Exception {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    AtomicInteger loads = new AtomicInteger();
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Object>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          Object value = cache.getObject("key");
+          if (value == null) {
+            loads.incrementAndGet();
+            Thread.sleep(100);
+            value = "value";
+            cache.putObject("key", value);
+          }
+          return value;
+        }));
+      }
+      start.countDown();
+      for (Future<Object> future : futures) {
+        assertEquals("value", future.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, loads.get());
+      assertEquals(0, cache.getInFlightCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldLetWaiterLoadWhenLoaderGivesUp() throws Exception {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> waiter = executor.submit(() -> cache.getObject("key"));
+      Thread.sleep(50);
+      assertFalse(waiter.isDone());
+      cache.removeObject("key");
+      assertNull(waiter.get(5, TimeUnit.SECONDS));
+      // 等待者接手加载
+      assertEquals(1, cache.getInFlightCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldAllowReentrantMissFromLoader() {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    assertNull(cache.getObject("key"));
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+    assertEquals(0, cache.getInFlightCount());
+  }
+
+  @Test
+  void shouldIgnoreRemoveFromOtherThread() throws Exception {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    Thread other = new Thread(() -> cache.removeObject("key"));
+    other.start();
+    other.join();
+    assertEquals(1, cache.getInFlightCount());
+    cache.removeObject("key");
+    assertEquals(0, cache.getInFlightCount());
+  }
+
+  @Test
+  void shouldTimeOutWaitingForLoad() throws Exception {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.setTimeout(50);
+    assertNull(cache.getObject("key"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Object> waiter = executor.submit(() -> cache.getObject("key"));
+      Exception e = assertThrows(Exception.class, () -> waiter.get(5, TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof CacheException);
+      // 超时的加载被丢弃
+      assertEquals(0, cache.getInFlightCount());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldLetNextReaderTakeOverExpiredLoad() throws Exception {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    cache.setTimeout(50);
+    assertNull(cache.getObject("key"));
+    Thread.sleep(100);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // 不等待超时的加载者，直接接手
+      assertNull(executor.submit(() -> cache.getObject("key")).get(5, TimeUnit.SECONDS));
+      assertEquals(1, cache.getInFlightCount());
+      // 原加载者放弃时不能释放接手后的加载
+      cache.removeObject("key");
+      assertEquals(1, cache.getInFlightCount());
+      executor.submit(() -> cache.putObject("key", "value")).get(5, TimeUnit.SECONDS);
+      assertEquals(0, cache.getInFlightCount());
+      assertEquals("value", cache.getObject("key"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldReleaseMissedEntryOnFailedLoad() {
+    BlockingCache cache = new BlockingCache(new PerpetualCache("default"));
+    TransactionalCache txCache = new TransactionalCache(cache);
+    assertNull(txCache.getObject("key"));
+    assertEquals(1, cache.getInFlightCount());
+    txCache.releaseMissedEntry("key");
+    assertEquals(0, cache.getInFlightCount());
+    txCache.commit();
+    assertNull(cache.getObject("key"));
+    cache.removeObject("key");
+  }
+
+}
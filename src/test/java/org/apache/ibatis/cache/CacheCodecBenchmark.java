@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.codec.CacheCodec;
+import org.apache.ibatis.cache.codec.CompactCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the codecs used by {@link org.apache.ibatis.cache.decorators.SerializedCache} on a cached result list.
+ * Run with the main method from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+  @Param({"JAVA_SERIALIZATION", "COMPACT"})
+  public String codecName;
+
+  @Param({"1", "100"})
+  public int rows;
+
+  private CacheCodec codec;
+  private List<Author> result;
+  private byte[] encoded;
+
+  @Setup
+  public void setup() {
+    codec = "COMPACT".equals(codecName) ? new CompactCodec() : new JavaSerializationCodec();
+    result = new ArrayList<>();
+    for (int i = 0; i < rows; i++) {
+      result.add(new Author(i, "user" + i, "********", "user" + i + "@ibatis.apache.org", "Software Engineer", Section.NEWS));
+    }
+    encoded = codec.encode(result);
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return codec.encode(result);
+  }
+
+  @Benchmark
+  public Object decode() {
+    return codec.decode(encoded);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
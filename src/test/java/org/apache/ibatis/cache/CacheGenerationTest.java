@@ -0,0 +1,106 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.GenerationCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.LoopbackInvalidationBus;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class CacheGenerationTest {
+
+  @Test
+  void shouldNotPutResultReadBeforeClear() {
+    CacheGeneration generation = new CacheGeneration("users");
+    Cache cache = new CacheBuilder("users").generation(generation).build();
+    assertTrue(cache instanceof GenerationCache);
+    long expected = generation.current();
+    cache.clear();
+    assertFalse(generation.putIfCurrent(cache, "a", "stale", expected));
+    assertNull(cache.getObject("a"));
+    assertTrue(generation.putIfCurrent(cache, "a", "fresh", generation.current()));
+    assertEquals("fresh", cache.getObject("a"));
+  }
+
+  @Test
+  void shouldCountClearsFromOtherNodes() {
+    LoopbackInvalidationBus bus1 = new LoopbackInvalidationBus("shouldCountClearsFromOtherNodes");
+    LoopbackInvalidationBus bus2 = new LoopbackInvalidationBus("shouldCountClearsFromOtherNodes");
+    try {
+      CacheGeneration generation = new CacheGeneration("users");
+      Cache node1 = new CacheBuilder("users").invalidationBus(bus1).build();
+      Cache node2 = new CacheBuilder("users").invalidationBus(bus2).generation(generation).build();
+      long expected = generation.current();
+      node1.clear();
+      assertFalse(generation.putIfCurrent(node2, "a", "stale", expected));
+      assertNull(node2.getObject("a"));
+    } finally {
+      bus1.close();
+      bus2.close();
+    }
+  }
+
+  @Test
+  void shouldNotPutRefreshIntoCustomCacheBeingCleared() throws Exception {
+    CacheGeneration generation = new CacheGeneration("users");
+    Cache cache = new CacheBuilder("users").implementation(SlowClearCache.class).generation(generation).build();
+    assertTrue(cache instanceof GenerationCache);
+    long expected = generation.current();
+    Thread clearer = new Thread(cache::clear);
+    clearer.start();
+    assertTrue(SlowClearCache.clearing.await(5, TimeUnit.SECONDS));
+    // 刷新在清空进行中放入，必须等清空结束并发现缓存已被清空
+    CompletableFuture<Boolean> refresh = CompletableFuture.supplyAsync(
+        () -> generation.putIfCurrent(cache, "a", "stale", expected));
+    SlowClearCache.release.countDown();
+    clearer.join();
+    assertFalse(refresh.get(5, TimeUnit.SECONDS));
+    assertNull(cache.getObject("a"));
+  }
+
+  /**
+   * 清空时等待测试放行的自定义缓存
+   */
+  public static class SlowClearCache extends PerpetualCache {
+
+    static final CountDownLatch clearing = new CountDownLatch(1);
+    static final CountDownLatch release = new CountDownLatch(1);
+
+    public SlowClearCache(String id) {
+      super(id);
+    }
+
+    @Override
+    public void clear() {
+      clearing.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      super.clear();
+    }
+
+  }
+
+}
@@ -27,6 +27,12 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Date;
 
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+
 class CacheKeyTest {
 
   @Test
@@ -87,6 +93,62 @@ class CacheKeyTest {
     assertTrue(key1.equals(key2));
   }
 
+  @Test
+  void shouldTestCacheKeysWithPrefixEqual() {
+    CacheKey prefix = new CacheKey(new Object[] { "id", 0, Integer.MAX_VALUE, "select 1" });
+    CacheKey key1 = new CacheKey(prefix);
+    CacheKey key2 = new CacheKey(new Object[] { "id", 0, Integer.MAX_VALUE, "select 1" });
+    for (int i = 0; i < 20; i++) {
+      key1.update(i);
+      key2.update(i);
+    }
+    assertEquals(key1, key2);
+    assertEquals(key2, key1);
+    assertEquals(key1.hashCode(), key2.hashCode());
+    assertEquals(key1.toString(), key2.toString());
+    assertEquals(24, key1.getUpdateCount());
+    assertEquals(4, prefix.getUpdateCount());
+  }
+
+  @Test
+  void shouldNotShareElementsWithClone() throws Exception {
+    CacheKey key1 = new CacheKey(new Object[] { 1, "hello" });
+    CacheKey key2 = key1.clone();
+    key2.update("world");
+    assertFalse(key1.equals(key2));
+    assertEquals(2, key1.getUpdateCount());
+    key1.update("world");
+    assertEquals(key1, key2);
+  }
+
+  @Test
+  void shouldCreateSameKeyFromMappedStatement() {
+    Configuration configuration = new Configuration();
+    MappedStatement ms = new MappedStatement.Builder(configuration, "select", new StaticSqlSource(configuration, "select 1"),
+        SqlCommandType.SELECT).build();
+    CacheKey key1 = ms.newCacheKey(RowBounds.DEFAULT, "select 1");
+    CacheKey key2 = ms.newCacheKey(RowBounds.DEFAULT, new String("select 1"));
+    CacheKey key3 = ms.newCacheKey(new RowBounds(10, 10), "select 1");
+    CacheKey expected = new CacheKey(new Object[] { "select", RowBounds.NO_ROW_OFFSET, RowBounds.NO_ROW_LIMIT, "select 1" });
+    assertEquals(expected, key1);
+    assertEquals(expected, key2);
+    assertNotEquals(expected, key3);
+    key1.update("param");
+    assertNotEquals(key1, key2);
+  }
+
+  @Test
+  void shouldCreateKeysForAlternatingSqlFromMappedStatement() {
+    Configuration configuration = new Configuration();
+    MappedStatement ms = new MappedStatement.Builder(configuration, "select", new StaticSqlSource(configuration, "select 1"),
+        SqlCommandType.SELECT).build();
+    for (int i = 0; i < 200; i++) {
+      String sql = "select " + (i % 100);
+      CacheKey expected = new CacheKey(new Object[] { "select", RowBounds.NO_ROW_OFFSET, RowBounds.NO_ROW_LIMIT, sql });
+      assertEquals(expected, ms.newCacheKey(RowBounds.DEFAULT, sql));
+    }
+  }
+
   @Test
   void serializationExceptionTest() {
     CacheKey cacheKey = new CacheKey();
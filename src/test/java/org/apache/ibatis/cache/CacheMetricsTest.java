@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.metrics.CacheMetricsRegistry;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class CacheMetricsTest {
+
+  @Test
+  void shouldCountHitsMissesAndPuts() {
+    CacheMetrics metrics = new CacheMetricsRegistry().register("default");
+    Cache cache = buildCache(metrics, 10, false);
+    cache.putObject("a", "A");
+    assertEquals("A", cache.getObject("a"));
+    assertEquals("A", cache.getObject("a"));
+    assertNull(cache.getObject("b"));
+    assertEquals(1, metrics.getPutCount());
+    assertEquals(2, metrics.getHitCount());
+    assertEquals(1, metrics.getMissCount());
+    assertEquals(2.0 / 3, metrics.getHitRatio(), 0.0001);
+    assertEquals(1, metrics.getEntryCount());
+  }
+
+  @Test
+  void shouldTellEvictionsFromRemovals() {
+    CacheMetrics metrics = new CacheMetricsRegistry().register("default");
+    Cache cache = buildCache(metrics, 2, false);
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    cache.putObject("c", "C");
+    cache.removeObject("c");
+    cache.removeObject("missing");
+    assertEquals(1, metrics.getEvictionCount());
+    assertEquals(1, metrics.getRemovalCount());
+    assertEquals(1, metrics.getEntryCount());
+  }
+
+  @Test
+  void shouldCountExpirationsApartFromEvictions() throws Exception {
+    CacheMetrics metrics = new CacheMetricsRegistry().register("default");
+    Cache cache = new CacheBuilder("default").implementation(PerpetualCache.class).addDecorator(LruCache.class)
+        .size(10).timeToLive(1L).metrics(metrics).build();
+    cache.putObject("a", "A");
+    Thread.sleep(10);
+    assertNull(cache.getObject("a"));
+    assertEquals(1, metrics.getExpirationCount());
+    assertEquals(0, metrics.getEvictionCount());
+    assertEquals(0, metrics.getRemovalCount());
+  }
+
+  @Test
+  void shouldEstimateBytesOfSerializedEntries() {
+    CacheMetrics metrics = new CacheMetricsRegistry().register("default");
+    Cache cache = buildCache(metrics, 2, true);
+    cache.putObject("a", new ArrayList<>(Arrays.asList(1, 2, 3)));
+    long oneEntry = metrics.getEstimatedBytes();
+    assertTrue(oneEntry > 0);
+    cache.putObject("a", new ArrayList<>(Arrays.asList(4, 5, 6)));
+    assertEquals(oneEntry, metrics.getEstimatedBytes());
+    cache.putObject("b", new ArrayList<>(Arrays.asList(7, 8, 9)));
+    assertEquals(2 * oneEntry, metrics.getEstimatedBytes());
+    cache.removeObject("b");
+    assertEquals(oneEntry, metrics.getEstimatedBytes());
+    cache.clear();
+    assertEquals(0, metrics.getEstimatedBytes());
+    assertEquals(0, metrics.getEntryCount());
+  }
+
+  @Test
+  void shouldRecordLoadTime() {
+    CacheMetrics metrics = new CacheMetrics("default");
+    metrics.recordLoad(100);
+    metrics.recordLoad(300);
+    assertEquals(2, metrics.getLoadCount());
+    assertEquals(400, metrics.getTotalLoadTime());
+    assertEquals(200, metrics.getAverageLoadTime());
+  }
+
+  @Test
+  void shouldRegisterMetricsPerNamespace() {
+    CacheMetricsRegistry registry = new CacheMetricsRegistry();
+    CacheMetrics first = registry.register("first");
+    registry.register("second");
+    assertSame(first, registry.getMetrics("first"));
+    assertNull(registry.getMetrics("third"));
+    assertEquals(2, registry.getAllMetrics().size());
+  }
+
+  private static Cache buildCache(CacheMetrics metrics, int size, boolean readWrite) {
+    return new CacheBuilder("default")
+        .implementation(PerpetualCache.class)
+        .addDecorator(LruCache.class)
+        .size(size)
+        .readWrite(readWrite)
+        .metrics(metrics)
+        .build();
+  }
+
+}
@@ -0,0 +1,143 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.cache.codec.CompactCodec;
+import org.apache.ibatis.cache.codec.JavaSerializationCodec;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.CacheBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class CompactCodecTest {
+
+  private final CompactCodec codec = new CompactCodec();
+
+  @Test
+  void shouldCopySimpleValues() {
+    Timestamp timestamp = new Timestamp(1000L);
+    timestamp.setNanos(123456789);
+    List<Object> values = Arrays.asList(null, "text", "中文", 1, -1, Integer.MIN_VALUE, Long.MAX_VALUE, (short) -3,
+        (byte) 7, true, false, 'c', 1.5d, 2.5f, new BigDecimal("-123.4500"), new BigInteger("123456789012345678901234"),
+        new Date(1000L), new java.sql.Date(2000L), new java.sql.Time(3000L), timestamp, Section.NEWS);
+    for (Object value : values) {
+      assertEquals(value, codec.decode(codec.encode(value)));
+    }
+    assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) codec.decode(codec.encode(new byte[] {1, 2, 3})));
+  }
+
+  @Test
+  void shouldCopyCollectionsAndArrays() {
+    List<Object> list = new ArrayList<>(Arrays.asList(1, "two", null));
+    Map<String, Object> map = new HashMap<>();
+    map.put("list", list);
+    map.put("set", new LinkedHashSet<>(Arrays.asList("a", "b")));
+    map.put("array", new String[] {"x", "y"});
+    map.put("fixedList", Arrays.asList(1, 2));
+    @SuppressWarnings("unchecked")
+    Map<String, Object> copy = (Map<String, Object>) codec.decode(codec.encode(map));
+    assertNotSame(map, copy);
+    assertEquals(list, copy.get("list"));
+    assertEquals(map.get("set"), copy.get("set"));
+    assertArrayEquals((String[]) map.get("array"), (String[]) copy.get("array"));
+    assertEquals(map.get("fixedList"), copy.get("fixedList"));
+  }
+
+  @Test
+  void shouldCopyBeansByFields() {
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "Software Engineer", Section.NEWS);
+    Author copy = (Author) codec.decode(codec.encode(author));
+    assertNotSame(author, copy);
+    assertEquals(author, copy);
+    assertTrue(codec.encode(author).length < new JavaSerializationCodec().encode(author).length);
+  }
+
+  @Test
+  void shouldKeepSharedAndCyclicReferences() {
+    Node first = new Node();
+    Node second = new Node();
+    first.next = second;
+    second.next = first;
+    first.value = 1;
+    second.value = 2;
+    List<Node> nodes = new ArrayList<>(Arrays.asList(first, second, first));
+    @SuppressWarnings("unchecked")
+    List<Node> copy = (List<Node>) codec.decode(codec.encode(nodes));
+    assertSame(copy.get(0), copy.get(2));
+    assertSame(copy.get(0), copy.get(1).next);
+    assertSame(copy.get(1), copy.get(0).next);
+    assertEquals(2, copy.get(1).value);
+    assertEquals(5, copy.get(1).skipped);
+  }
+
+  @Test
+  void shouldFallBackToJavaSerialization() {
+    NoDefaultConstructor value = new NoDefaultConstructor("name");
+    NoDefaultConstructor copy = (NoDefaultConstructor) codec.decode(codec.encode(value));
+    assertEquals("name", copy.name);
+  }
+
+  @Test
+  void shouldRejectNonSerializableValues() {
+    assertThrows(CacheException.class, () -> codec.encode(new Object()));
+  }
+
+  @Test
+  void shouldBeUsedBySerializedCache() {
+    Cache cache = new CacheBuilder("test").implementation(PerpetualCache.class).readWrite(true)
+        .codec(CompactCodec.class).build();
+    Author author = new Author(101, "jim", "********", "jim@ibatis.apache.org", "Software Engineer", Section.NEWS);
+    cache.putObject(0, author);
+    assertEquals(author, cache.getObject(0));
+    assertNotSame(author, cache.getObject(0));
+
+    Cache serializedCache = new SerializedCache(new PerpetualCache("test"), codec);
+    serializedCache.putObject(0, author);
+    assertEquals(author, serializedCache.getObject(0));
+  }
+
+  static class Node implements Serializable {
+    private static final long serialVersionUID = 1L;
+    Node next;
+    int value;
+    transient int skipped = 5;
+  }
+
+  static class NoDefaultConstructor implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final String name;
+
+    NoDefaultConstructor(String name) {
+      this.name = name;
+    }
+  }
+
+}
@@ -0,0 +1,99 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentPerpetualCacheTest {
+
+  @Test
+  void shouldDemonstrateHowAllObjectsAreKept() {
+    Cache cache = new ConcurrentPerpetualCache("default");
+    for (int i = 0; i < 100000; i++) {
+      cache.putObject(i, i);
+      assertEquals(i, cache.getObject(i));
+    }
+    assertEquals(100000, cache.getSize());
+  }
+
+  @Test
+  void shouldRemoveItemOnDemand() {
+    Cache cache = new ConcurrentPerpetualCache("default");
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    assertEquals(0, cache.removeObject(0));
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    Cache cache = new ConcurrentPerpetualCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+  }
+
+  @Test
+  void shouldKeepNullValues() {
+    Cache cache = new ConcurrentPerpetualCache("default");
+    cache.putObject("key", null);
+    assertEquals(1, cache.getSize());
+    assertNull(cache.getObject("key"));
+    assertNull(cache.removeObject("key"));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldBoundLruCacheUnderConcurrentAccess() throws Exception {
+    LruCache cache = new LruCache(new ConcurrentPerpetualCache("default"));
+    cache.setSize(100);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final int offset = t * 10000;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 10000; i++) {
+            cache.putObject(offset + i, i);
+            cache.getObject(offset + i / 2);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(100, cache.getSize());
+  }
+
+}
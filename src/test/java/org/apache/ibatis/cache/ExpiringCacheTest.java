@@ -0,0 +1,155 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class ExpiringCacheTest {
+
+  private final AtomicLong now = new AtomicLong(1000);
+
+  private ExpiringCache newCache(long timeToLive) {
+    ExpiringCache cache = new ExpiringCache(new ConcurrentPerpetualCache("default"));
+    cache.setClock(now::get);
+    cache.setTimeToLive(timeToLive);
+    return cache;
+  }
+
+  @Test
+  void shouldExpireEachEntryOnItsOwn() {
+    ExpiringCache cache = newCache(300);
+    cache.putObject(0, 0);
+    now.addAndGet(200);
+    cache.putObject(1, 1);
+    now.addAndGet(150);
+    assertNull(cache.getObject(0));
+    assertEquals(1, cache.getObject(1));
+  }
+
+  @Test
+  void shouldSweepExpiredEntriesInBackground() throws Exception {
+    ExpiringCache cache = newCache(50);
+    cache.setSweepInterval(20);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(100, cache.getSize());
+    now.addAndGet(50);
+    awaitEmpty(cache);
+  }
+
+  @Test
+  void shouldNotExpireEntryPutAgain() throws Exception {
+    ExpiringCache cache = newCache(200);
+    cache.setSweepInterval(10);
+    cache.putObject(0, "old");
+    now.addAndGet(150);
+    cache.putObject(0, "new");
+    now.addAndGet(100);
+    // 等后台清理过至少一次
+    Thread.sleep(300);
+    assertEquals("new", cache.getObject(0));
+  }
+
+  @Test
+  void shouldLetOneCallerRefreshAhead() {
+    ExpiringCache cache = newCache(1000);
+    cache.setRefreshAhead(900);
+    cache.putObject(0, 0);
+    assertEquals(0, cache.getObject(0));
+    now.addAndGet(150);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getObject(0));
+    cache.putObject(0, 1);
+    assertEquals(1, cache.getObject(0));
+  }
+
+  @Test
+  void shouldLetNextCallerRefreshWhenRefreshFails() {
+    ExpiringCache cache = newCache(1000);
+    cache.setRefreshAhead(400);
+    cache.putObject(0, 0);
+    now.addAndGet(700);
+    assertNull(cache.getObject(0));
+    // 刷新的调用者没有放入
+    now.addAndGet(100);
+    assertEquals(0, cache.getObject(0));
+    now.addAndGet(100);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getObject(0));
+  }
+
+  @Test
+  void shouldBuildExpiringCacheWithTimeToLive() {
+    Properties props = new Properties();
+    props.setProperty("refreshAhead", "100");
+    Cache cache = new CacheBuilder("default").implementation(PerpetualCache.class).timeToLive(1000L).properties(props).build();
+    cache.putObject(0, 0);
+    assertEquals(0, cache.getObject(0));
+    cache.clear();
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  void shouldNotKeepKeysEvictedByDelegate() throws Exception {
+    Cache cache = new CacheBuilder("default").implementation(PerpetualCache.class).addDecorator(LruCache.class)
+        .size(10).timeToLive(60000L).build();
+    Object evicted = new Object();
+    WeakReference<Object> ref = new WeakReference<>(evicted);
+    cache.putObject(evicted, 0);
+    evicted = null;
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(new Object(), i);
+    }
+    assertEquals(10, cache.getSize());
+    for (int i = 0; i < 50 && ref.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(ref.get());
+  }
+
+  @Test
+  void shouldKeepOneExpirationPerKey() throws Exception {
+    ExpiringCache cache = newCache(100);
+    cache.setSweepInterval(10);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(0, i);
+    }
+    assertEquals(999, cache.getObject(0));
+    now.addAndGet(100);
+    awaitEmpty(cache);
+  }
+
+  private static void awaitEmpty(Cache cache) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (cache.getSize() > 0) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+}
@@ -0,0 +1,201 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.cache.decorators.BroadcastingCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.LoopbackInvalidationBus;
+import org.apache.ibatis.cache.invalidation.MulticastInvalidationBus;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.session.Configuration;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+
+class InvalidationBusTest {
+
+  @Test
+  void shouldClearSameCacheOnOtherNodes() {
+    LoopbackInvalidationBus bus1 = new LoopbackInvalidationBus("shouldClearSameCacheOnOtherNodes");
+    LoopbackInvalidationBus bus2 = new LoopbackInvalidationBus("shouldClearSameCacheOnOtherNodes");
+    try {
+      Cache node1 = new CacheBuilder("users").invalidationBus(bus1).build();
+      Cache node2 = new CacheBuilder("users").invalidationBus(bus2).build();
+      Cache other = new CacheBuilder("orders").invalidationBus(bus2).build();
+      assertTrue(node1 instanceof BroadcastingCache);
+      node1.putObject("a", "1");
+      node2.putObject("a", "1");
+      other.putObject("a", "1");
+      node1.clear();
+      assertNull(node1.getObject("a"));
+      assertNull(node2.getObject("a"));
+      assertEquals("1", other.getObject("a"));
+    } finally {
+      bus1.close();
+      bus2.close();
+    }
+  }
+
+  @Test
+  void shouldPublishWhenClearIsCommitted() {
+    LoopbackInvalidationBus bus1 = new LoopbackInvalidationBus("shouldPublishWhenClearIsCommitted");
+    LoopbackInvalidationBus bus2 = new LoopbackInvalidationBus("shouldPublishWhenClearIsCommitted");
+    try {
+      Cache node1 = new BroadcastingCache(new PerpetualCache("users"), bus1);
+      Cache node2 = new BroadcastingCache(new PerpetualCache("users"), bus2);
+      node2.putObject("a", "1");
+      TransactionalCache txCache = new TransactionalCache(node1);
+      txCache.clear();
+      assertEquals("1", node2.getObject("a"));
+      txCache.commit();
+      assertNull(node2.getObject("a"));
+    } finally {
+      bus1.close();
+      bus2.close();
+    }
+  }
+
+  @Test
+  void shouldNotDeliverToClosedBus() {
+    LoopbackInvalidationBus bus1 = new LoopbackInvalidationBus("shouldNotDeliverToClosedBus");
+    LoopbackInvalidationBus bus2 = new LoopbackInvalidationBus("shouldNotDeliverToClosedBus");
+    Cache node1 = new BroadcastingCache(new PerpetualCache("users"), bus1);
+    Cache node2 = new BroadcastingCache(new PerpetualCache("users"), bus2);
+    node2.putObject("a", "1");
+    bus2.close();
+    node1.clear();
+    assertEquals("1", node2.getObject("a"));
+    bus1.close();
+  }
+
+  @Test
+  void shouldResolveBusAliases() {
+    Configuration configuration = new Configuration();
+    assertEquals(LoopbackInvalidationBus.class, configuration.getTypeAliasRegistry().resolveAlias("LOOPBACK"));
+    assertEquals(MulticastInvalidationBus.class, configuration.getTypeAliasRegistry().resolveAlias("MULTICAST"));
+  }
+
+  @Test
+  void shouldDeliverOverMulticast() throws Exception {
+    MulticastInvalidationBus bus1 = new MulticastInvalidationBus();
+    MulticastInvalidationBus bus2 = new MulticastInvalidationBus();
+    bus1.setPort(45589);
+    bus2.setPort(45589);
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    BlockingQueue<String> receivedBySender = new LinkedBlockingQueue<>();
+    try {
+      try {
+        bus2.subscribe("users", received::add);
+        bus1.subscribe("users", receivedBySender::add);
+      } catch (CacheException e) {
+        assumeTrue(false, "Multicast is not available: " + e.getMessage());
+      }
+      bus1.publish("users");
+      String cacheId = received.poll(2, TimeUnit.SECONDS);
+      assumeTrue(cacheId != null, "Multicast packets are not delivered on this host");
+      assertEquals("users", cacheId);
+      assertTrue(receivedBySender.isEmpty());
+    } finally {
+      bus1.close();
+      bus2.close();
+    }
+  }
+
+  @Test
+  void shouldConfigureBusFromXmlElement() {
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+        + "<!DOCTYPE configuration PUBLIC \"-//mybatis.org//DTD Config 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-config.dtd\">\n"
+        + "<configuration>\n"
+        + "  <cacheInvalidationBus type=\"MULTICAST\">\n"
+        + "    <property name=\"group\" value=\"239.255.27.10\"/>\n"
+        + "    <property name=\"port\" value=\"45600\"/>\n"
+        + "    <property name=\"timeToLive\" value=\"2\"/>\n"
+        + "  </cacheInvalidationBus>\n"
+        + "</configuration>\n";
+    Configuration configuration = new XMLConfigBuilder(new StringReader(xml)).parse();
+    MulticastInvalidationBus bus = (MulticastInvalidationBus) configuration.getCacheInvalidationBus();
+    assertEquals("239.255.27.10", bus.getGroup());
+    assertEquals(45600, bus.getPort());
+    assertEquals(2, bus.getTimeToLive());
+    assertNull(bus.getNetworkInterface());
+  }
+
+  @Test
+  void shouldNotKeepDiscardedLoopbackBus() throws Exception {
+    LoopbackInvalidationBus bus1 = new LoopbackInvalidationBus("shouldNotKeepDiscardedLoopbackBus");
+    LoopbackInvalidationBus bus2 = new LoopbackInvalidationBus("shouldNotKeepDiscardedLoopbackBus");
+    WeakReference<LoopbackInvalidationBus> ref = new WeakReference<>(bus2);
+    bus2 = null;
+    for (int i = 0; i < 50 && ref.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(ref.get());
+    bus1.publish("users");
+    bus1.close();
+  }
+
+  @Test
+  void shouldStopMulticastReceiverWhenClosed() throws Exception {
+    MulticastInvalidationBus bus = new MulticastInvalidationBus();
+    bus.setPort(45590);
+    Thread receiver = startReceiver(bus);
+    bus.close();
+    receiver.join(5000);
+    assertFalse(receiver.isAlive());
+  }
+
+  @Test
+  void shouldStopMulticastReceiverOfDiscardedBus() throws Exception {
+    MulticastInvalidationBus bus = new MulticastInvalidationBus();
+    bus.setPort(45591);
+    Thread receiver = startReceiver(bus);
+    bus = null;
+    for (int i = 0; i < 100 && receiver.isAlive(); i++) {
+      System.gc();
+      receiver.join(100);
+    }
+    assertFalse(receiver.isAlive());
+  }
+
+  /**
+   * 订阅一个缓存，返回总线启动的接收线程
+   */
+  private static Thread startReceiver(MulticastInvalidationBus bus) {
+    Set<Thread> before = Thread.getAllStackTraces().keySet();
+    try {
+      bus.subscribe("users", cacheId -> { });
+    } catch (CacheException e) {
+      assumeTrue(false, "Multicast is not available: " + e.getMessage());
+    }
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (!before.contains(thread) && thread.getName().startsWith("mybatis-cache-invalidation-")) {
+        return thread;
+      }
+    }
+    throw new AssertionError("Receiver thread was not started");
+  }
+
+}
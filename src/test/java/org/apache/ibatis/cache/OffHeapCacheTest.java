@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.session.Configuration;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class OffHeapCacheTest {
+
+  @Test
+  void shouldDemonstrateCopiesAreEqual() {
+    Cache cache = new OffHeapCache("default");
+    for (int i = 0; i < 1000; i++) {
+      List<String> rows = new ArrayList<>(Arrays.asList("row" + i, "row" + (i + 1)));
+      cache.putObject(i, rows);
+      Object copy = cache.getObject(i);
+      assertEquals(rows, copy);
+      assertNotSame(rows, copy);
+    }
+    assertEquals(1000, cache.getSize());
+  }
+
+  @Test
+  void shouldEvictOldestSegmentWhenFull() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setCapacity(4096);
+    cache.setSegmentSize(1024);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, new byte[200]);
+    }
+    assertNull(cache.getObject(0));
+    assertNotNull(cache.getObject(99));
+    assertTrue(cache.getSize() <= 4 * (1024 / 200));
+  }
+
+  @Test
+  void shouldKeepNullValues() {
+    Cache cache = new OffHeapCache("default");
+    cache.putObject("key", null);
+    assertEquals(1, cache.getSize());
+    assertNull(cache.getObject("key"));
+  }
+
+  @Test
+  void shouldNotCacheValueLargerThanSegment() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setSegmentSize(100);
+    cache.putObject(0, new byte[10]);
+    cache.putObject(0, new byte[200]);
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldRejectNonSerializableValues() {
+    Cache cache = new OffHeapCache("default");
+    assertThrows(CacheException.class, () -> cache.putObject(0, new Object()));
+  }
+
+  @Test
+  void shouldRemoveItemOnDemand() {
+    Cache cache = new OffHeapCache("default");
+    cache.putObject(0, 0);
+    // 删除时不反序列化，只表示删除了条目
+    assertNotNull(cache.removeObject(0));
+    assertNull(cache.getObject(0));
+    assertNull(cache.removeObject(0));
+  }
+
+  @Test
+  void shouldSizeLastSegmentToRemainingCapacity() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setCapacity(2500);
+    cache.setSegmentSize(1024);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, new byte[200]);
+    }
+    assertNotNull(cache.getObject(99));
+    assertEquals(2500, cache.getAllocatedBytes());
+  }
+
+  @Test
+  void shouldReleaseSegmentsOnClear() {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.putObject(0, 0);
+    assertTrue(cache.getAllocatedBytes() > 0);
+    cache.clear();
+    assertEquals(0, cache.getAllocatedBytes());
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    Cache cache = new OffHeapCache("default");
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+    cache.putObject(0, 0);
+    assertEquals(0, cache.getObject(0));
+  }
+
+  @Test
+  void shouldBeConfiguredAsCacheType() {
+    Properties props = new Properties();
+    props.setProperty("capacity", "1048576");
+    props.setProperty("segmentSize", "65536");
+    Class<? extends Cache> type = new Configuration().getTypeAliasRegistry().resolveAlias("OFF_HEAP");
+    Cache cache = new CacheBuilder("test").implementation(type).properties(props).build();
+    assertTrue(cache instanceof LoggingCache);
+    cache.putObject(0, "value");
+    assertEquals("value", cache.getObject(0));
+  }
+
+}
@@ -0,0 +1,110 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.session.Configuration;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class TinyLfuCacheTest {
+
+  @Test
+  void shouldNeverExceedMaximumSize() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(100);
+    for (int i = 0; i < 1000; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(100, cache.getSize());
+    assertEquals(900, cache.getEvictionCount());
+  }
+
+  @Test
+  void shouldKeepFrequentlyUsedItemsDuringScan() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(100);
+    for (int i = 0; i < 50; i++) {
+      cache.putObject("hot" + i, i);
+    }
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 50; i++) {
+        assertEquals(i, cache.getObject("hot" + i));
+      }
+    }
+    for (int i = 0; i < 10000; i++) {
+      cache.putObject("scan" + i, i);
+      if (i % 4 == 0) {
+        cache.getObject("hot" + (i / 4) % 50);
+      }
+    }
+    for (int i = 0; i < 50; i++) {
+      assertEquals(i, cache.getObject("hot" + i));
+    }
+    assertEquals(100, cache.getSize());
+  }
+
+  @Test
+  void shouldCountHitsAndMisses() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.putObject(0, 0);
+    assertEquals(0, cache.getObject(0));
+    assertEquals(0, cache.getObject(0));
+    assertNull(cache.getObject(1));
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(0, cache.getEvictionCount());
+  }
+
+  @Test
+  void shouldWorkWithSizeOfOne() {
+    TinyLfuCache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.setSize(1);
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, i);
+      assertEquals(1, cache.getSize());
+    }
+  }
+
+  @Test
+  void shouldRemoveItemOnDemand() {
+    Cache cache = new TinyLfuCache(new PerpetualCache("default"));
+    cache.putObject(0, 0);
+    assertNotNull(cache.getObject(0));
+    cache.removeObject(0);
+    assertNull(cache.getObject(0));
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    Cache cache = new TinyLfuCache(new PerpetualCache("default"));
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(4));
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertNull(cache.getObject(4));
+  }
+
+  @Test
+  void shouldResolveTinyLfuAlias() {
+    assertEquals(TinyLfuCache.class, new Configuration().getTypeAliasRegistry().resolveAlias("TINYLFU"));
+  }
+
+}
@@ -0,0 +1,157 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.WeightedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+class WeightedCacheTest {
+
+  @Test
+  void shouldEvictLeastRecentlyUsedItemsByWeight() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setMaximumWeight(100);
+    cache.putObject(0, rows(40));
+    cache.putObject(1, rows(40));
+    assertNotNull(cache.getObject(0));
+    cache.putObject(2, rows(40));
+    assertNull(cache.getObject(1));
+    assertNotNull(cache.getObject(0));
+    assertNotNull(cache.getObject(2));
+    assertEquals(80, cache.getTotalWeight());
+  }
+
+  @Test
+  void shouldKeepManySmallResults() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setMaximumWeight(100);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, rows(1));
+    }
+    assertEquals(100, cache.getSize());
+    cache.putObject(100, rows(50));
+    assertEquals(51, cache.getSize());
+    assertEquals(100, cache.getTotalWeight());
+  }
+
+  @Test
+  void shouldNotCacheResultHeavierThanBudget() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setMaximumWeight(10);
+    cache.putObject(0, rows(5));
+    cache.putObject(0, rows(11));
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getTotalWeight());
+  }
+
+  @Test
+  void shouldReplaceWeightOfExistingKey() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.putObject(0, rows(5));
+    cache.putObject(0, rows(3));
+    assertEquals(3, cache.getTotalWeight());
+    cache.removeObject(0);
+    assertEquals(0, cache.getTotalWeight());
+  }
+
+  @Test
+  void shouldUseCustomWeigher() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    cache.setWeigher((key, value) -> ((String) value).length());
+    cache.setMaximumWeight(10);
+    cache.putObject(0, "abcde");
+    cache.putObject(1, "abcdef");
+    assertNull(cache.getObject(0));
+    assertEquals(6, cache.getTotalWeight());
+  }
+
+  @Test
+  void shouldFlushAllItemsOnDemand() {
+    WeightedCache cache = new WeightedCache(new PerpetualCache("default"));
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    cache.clear();
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getTotalWeight());
+  }
+
+  @Test
+  void shouldBeConfiguredByProperties() {
+    Properties props = new Properties();
+    props.setProperty("maximumWeight", "50");
+    props.setProperty("weigherType", FixedWeigher.class.getName());
+    Cache cache = new CacheBuilder("test").implementation(PerpetualCache.class).addDecorator(WeightedCache.class)
+        .properties(props).build();
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(5, cache.getSize());
+  }
+
+  @Test
+  void shouldUseDefaultMaximumWeightOfEachUnit() {
+    Cache readOnly = new CacheBuilder("test").implementation(PerpetualCache.class).addDecorator(WeightedCache.class)
+        .readWrite(false).build();
+    Cache readWrite = new CacheBuilder("test").implementation(PerpetualCache.class).addDecorator(WeightedCache.class)
+        .readWrite(true).build();
+    assertEquals(WeightedCache.DEFAULT_MAXIMUM_ROWS, unwrap(readOnly).getMaximumWeight());
+    assertEquals(WeightedCache.DEFAULT_MAXIMUM_BYTES, unwrap(readWrite).getMaximumWeight());
+    WeightedCache explicit = new WeightedCache(new PerpetualCache("default"));
+    explicit.setMaximumWeight(50);
+    explicit.setSerialized(true);
+    assertEquals(50, explicit.getMaximumWeight());
+  }
+
+  @Test
+  void shouldIgnoreSize() {
+    Cache cache = new CacheBuilder("test").implementation(PerpetualCache.class).addDecorator(WeightedCache.class)
+        .readWrite(false).size(10).build();
+    for (int i = 0; i < 20; i++) {
+      cache.putObject(i, rows(1));
+    }
+    assertEquals(20, cache.getSize());
+  }
+
+  private static WeightedCache unwrap(Cache cache) {
+    Object current = cache;
+    while (!(current instanceof WeightedCache)) {
+      current = SystemMetaObject.forObject(current).getValue("delegate");
+    }
+    return (WeightedCache) current;
+  }
+
+  private static List<Integer> rows(int count) {
+    return new ArrayList<>(Collections.nCopies(count, 0));
+  }
+
+  public static class FixedWeigher implements Weigher {
+    @Override
+    public int weigh(Object key, Object value) {
+      return 10;
+    }
+  }
+
+}
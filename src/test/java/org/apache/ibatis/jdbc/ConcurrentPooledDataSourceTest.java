@@ -0,0 +1,255 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.jdbc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.ConcurrentPooledDataSource;
+import org.apache.ibatis.datasource.pooled.ConcurrentPooledDataSourceFactory;
+import org.apache.ibatis.datasource.pooled.PoolMetrics;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentPooledDataSourceTest extends BaseDataTest {
+
+  @Test
+  void shouldProperlyMaintainPoolOf3ActiveAnd2IdleConnections() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    try {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setDefaultAutoCommit(false);
+      ds.setDriverProperties(new Properties() {
+        {
+          setProperty("username", "sa");
+          setProperty("password", "");
+        }
+      });
+      ds.setPoolMaximumActiveConnections(3);
+      ds.setPoolMaximumIdleConnections(2);
+      ds.setPoolMaximumCheckoutTime(10000);
+      ds.setPoolPingConnectionsNotUsedFor(1);
+      ds.setPoolPingEnabled(true);
+      ds.setPoolPingQuery("SELECT * FROM PRODUCT");
+      ds.setPoolTimeToWait(10000);
+      List<Connection> connections = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        connections.add(ds.getConnection());
+      }
+      assertEquals(3, ds.getPoolState().getActiveConnectionCount());
+      for (Connection c : connections) {
+        c.close();
+      }
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(2, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(4, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      assertEquals(0, ds.getPoolState().getHadToWaitCount());
+      assertEquals(0, ds.getPoolState().getAverageOverdueCheckoutTime());
+      assertEquals(0, ds.getPoolState().getClaimedOverdueConnectionCount());
+      assertEquals(0, ds.getPoolState().getAverageWaitTime());
+      assertNotNull(ds.getPoolState().toString());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldReuseTheConnectionReturnedByTheSameThread() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    try {
+      Connection first = ds.getConnection();
+      Connection realFirst = PooledDataSource.unwrapConnection(first);
+      Connection second = ds.getConnection();
+      second.close();
+      first.close();
+      Connection again = ds.getConnection();
+      assertSame(realFirst, PooledDataSource.unwrapConnection(again));
+      again.close();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldInvalidateProxyAfterClose() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    try {
+      Connection c = ds.getConnection();
+      c.close();
+      assertThrows(SQLException.class, c::getAutoCommit);
+      c.toString();
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldHandOffReturnedConnectionToWaitingThread() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    PoolMetrics metrics = new PoolMetrics();
+    ds.setPoolMetricsListener(metrics);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolTimeToWait(5000);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Connection held = ds.getConnection();
+      Future<Connection> waiting = executor.submit(() -> ds.getConnection());
+      while (ds.getPoolState().getWaitingThreadCount() == 0) {
+        Thread.sleep(10);
+      }
+      held.close();
+      Connection handedOff = waiting.get(5, TimeUnit.SECONDS);
+      assertEquals(1, ds.getPoolState().getHadToWaitCount());
+      assertEquals(1, metrics.getWaitTime().getCount());
+      assertEquals(1, metrics.getMaxWaitingThreadCount());
+      assertEquals(2, metrics.getAcquireTime().getCount());
+      assertEquals(1, metrics.getUsageTime().getCount());
+      assertEquals(1, ds.getPoolState().getActiveConnectionCount());
+      handedOff.close();
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldClaimOverdueConnection() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolMaximumCheckoutTime(50);
+    ds.setPoolTimeToWait(50);
+    try {
+      Connection leaked = ds.getConnection();
+      Thread.sleep(100);
+      Connection claimed = ds.getConnection();
+      assertEquals(1, ds.getPoolState().getClaimedOverdueConnectionCount());
+      assertThrows(SQLException.class, leaked::getAutoCommit);
+      leaked.close();
+      assertEquals(1, ds.getPoolState().getBadConnectionCount());
+      assertEquals(1, ds.getPoolState().getActiveConnectionCount());
+      claimed.close();
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+    } finally {
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldNeverExceedMaximumActiveConnectionsUnderContention() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    ds.setPoolMaximumActiveConnections(4);
+    ds.setPoolMaximumIdleConnections(4);
+    ds.setPoolTimeToWait(1000);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    AtomicInteger inUse = new AtomicInteger();
+    AtomicInteger maxInUse = new AtomicInteger();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 100; j++) {
+            try (Connection c = ds.getConnection()) {
+              maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+              assertTrue(c.isValid(1));
+              inUse.decrementAndGet();
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+      assertTrue(maxInUse.get() <= 4);
+      assertEquals(1600, ds.getPoolState().getRequestCount());
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      assertEquals(0, ds.getPoolState().getBadConnectionCount());
+      assertTrue(ds.getPoolState().getIdleConnectionCount() <= 4);
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldMaintainIdleConnectionsInBackground() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    try {
+      ds.setPoolMinimumIdleConnections(2);
+      ds.setPoolMaximumIdleTime(50);
+      ds.setPoolMaintenanceInterval(20);
+      ds.getConnection().close();
+      waitUntil(() -> ds.getPoolState().getIdleConnectionCount() == 2);
+      ds.setPoolMinimumIdleConnections(0);
+      waitUntil(() -> ds.getPoolState().getIdleConnectionCount() == 0);
+    } finally {
+      ds.setPoolMaintenanceInterval(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void ShouldReturnRealConnection() throws Exception {
+    ConcurrentPooledDataSource ds = createConcurrentPooledDataSource();
+    Connection c = ds.getConnection();
+    JDBCConnection realConnection = (JDBCConnection) PooledDataSource.unwrapConnection(c);
+    assertNotNull(realConnection);
+    c.close();
+    ds.forceCloseAll();
+  }
+
+  @Test
+  void shouldResolveConcurrentPooledAlias() {
+    Configuration configuration = new Configuration();
+    assertEquals(ConcurrentPooledDataSourceFactory.class,
+        configuration.getTypeAliasRegistry().resolveAlias("CONCURRENT_POOLED"));
+  }
+
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for pool maintenance");
+      Thread.sleep(10);
+    }
+  }
+
+  private static ConcurrentPooledDataSource createConcurrentPooledDataSource() throws IOException {
+    Properties props = Resources.getResourceAsProperties(JPETSTORE_PROPERTIES);
+    ConcurrentPooledDataSource ds = new ConcurrentPooledDataSource();
+    ds.setDriver(props.getProperty("driver"));
+    ds.setUrl(props.getProperty("url"));
+    ds.setUsername(props.getProperty("username"));
+    ds.setPassword(props.getProperty("password"));
+    return ds;
+  }
+}
@@ -21,13 +21,21 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.datasource.pooled.LatencyHistogram;
+import org.apache.ibatis.datasource.pooled.PoolMetrics;
 import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
 import org.hsqldb.jdbc.JDBCConnection;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -91,6 +99,147 @@ class PooledDataSourceTest extends BaseDataTest {
     c.close();
   }
 
+  @Test
+  void shouldPrefillMinimumIdleConnectionsInBackground() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMinimumIdleConnections(2);
+      ds.setPoolMaintenanceInterval(20);
+      ds.getConnection().close();
+      waitUntil(() -> ds.getPoolState().getIdleConnectionCount() == 2);
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+    } finally {
+      ds.setPoolMaintenanceInterval(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldEvictConnectionsPastMaximumLifetimeInBackground() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolMaximumConnectionLifetime(50);
+      ds.setPoolMaintenanceInterval(20);
+      ds.getConnection().close();
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+      waitUntil(() -> ds.getPoolState().getIdleConnectionCount() == 0);
+    } finally {
+      ds.setPoolMaintenanceInterval(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldValidateIdleConnectionsInBackground() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    try {
+      ds.setPoolPingEnabled(true);
+      ds.setPoolPingQuery("SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS");
+      ds.setPoolPingConnectionsNotUsedFor(0);
+      ds.setPoolMaintenanceInterval(20);
+      Connection c = ds.getConnection();
+      Connection realConnection = PooledDataSource.unwrapConnection(c);
+      c.close();
+      realConnection.close();
+      waitUntil(() -> ds.getPoolState().getIdleConnectionCount() == 0);
+      assertEquals(1, ds.getPoolState().getBadConnectionCount());
+    } finally {
+      ds.setPoolMaintenanceInterval(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldCountConnectionsBeingPingedTowardsLimits() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    UnpooledDataSource unpooled = createUnpooledDataSource(JPETSTORE_PROPERTIES);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (Connection locker = unpooled.getConnection()) {
+      runScript(ds, JPETSTORE_DDL);
+      ds.setPoolMaximumActiveConnections(1);
+      ds.setPoolTimeToWait(5000);
+      ds.setPoolPingEnabled(true);
+      ds.setPoolPingQuery("SELECT * FROM PRODUCT");
+      ds.setPoolPingConnectionsNotUsedFor(0);
+      ds.setPoolMaintenanceInterval(20);
+      ds.getConnection().close();
+      // 锁住表，后台的检验会一直等待
+      locker.setAutoCommit(false);
+      try (Statement stmt = locker.createStatement()) {
+        stmt.execute("LOCK TABLE PRODUCT WRITE");
+      }
+      waitUntil(() -> ds.getPoolState().getPingingConnectionCount() == 1);
+      // 正在检验的连接占着唯一的名额，不能再新建连接
+      Future<Connection> waiting = executor.submit(() -> ds.getConnection());
+      waitUntil(() -> ds.getPoolState().getWaitingThreadCount() == 1);
+      assertEquals(0, ds.getPoolState().getActiveConnectionCount());
+      locker.rollback();
+      waiting.get(5, TimeUnit.SECONDS).close();
+      assertEquals(1, ds.getPoolState().getIdleConnectionCount());
+      assertEquals(0, ds.getPoolState().getPingingConnectionCount());
+    } finally {
+      executor.shutdownNow();
+      ds.setPoolMaintenanceInterval(0);
+      ds.forceCloseAll();
+    }
+  }
+
+  @Test
+  void shouldReportPoolEventsToMetricsListener() throws Exception {
+    PooledDataSource ds = createPooledDataSource(JPETSTORE_PROPERTIES);
+    PoolMetrics metrics = new PoolMetrics();
+    ds.setPoolMetricsListener(metrics);
+    ds.setPoolMaximumActiveConnections(1);
+    ds.setPoolTimeToWait(5000);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Connection held = ds.getConnection();
+      Future<Connection> waiting = executor.submit(() -> ds.getConnection());
+      waitUntil(() -> ds.getPoolState().getWaitingThreadCount() == 1);
+      assertEquals(1, metrics.getWaitingThreadCount());
+      held.close();
+      waiting.get(5, TimeUnit.SECONDS).close();
+      assertEquals(0, ds.getPoolState().getWaitingThreadCount());
+      assertEquals(0, metrics.getWaitingThreadCount());
+      assertEquals(1, metrics.getMaxWaitingThreadCount());
+      assertEquals(1, metrics.getCreatedCount());
+      assertEquals(2, metrics.getAcquireTime().getCount());
+      assertEquals(2, metrics.getUsageTime().getCount());
+      assertEquals(1, metrics.getWaitTime().getCount());
+      assertTrue(metrics.getAcquireTime().getMax() >= metrics.getWaitTime().getMax());
+      assertNotNull(metrics.toString());
+    } finally {
+      executor.shutdownNow();
+      ds.forceCloseAll();
+    }
+    assertEquals(1, metrics.getClosedCount());
+  }
+
+  @Test
+  void shouldComputeHistogramPercentilesFromPowerOfTwoBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentile(99));
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(50, histogram.getMean());
+    assertEquals(100, histogram.getMax());
+    assertEquals(63, histogram.getPercentile(50));
+    assertEquals(100, histogram.getPercentile(99));
+    assertEquals(1, histogram.getPercentile(0));
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+  }
+
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for pool maintenance");
+      Thread.sleep(10);
+    }
+  }
+
   @Disabled("See the comments")
   @Test
   void shouldReconnectWhenServerKilledLeakedConnection() throws Exception {
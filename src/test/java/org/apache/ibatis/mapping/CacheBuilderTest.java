@@ -18,6 +18,11 @@ package org.apache.ibatis.mapping;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.impl.ConcurrentPerpetualCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -43,6 +48,28 @@ class CacheBuilderTest {
       .hasMessage("Failed cache initialization for 'test' on 'org.apache.ibatis.mapping.CacheBuilderTest$InitializingFailureCache'");
   }
 
+  @Test
+  void testSynchronizedCacheIsAddedForPerpetualCache() {
+    Cache cache = new CacheBuilder("test").implementation(PerpetualCache.class).addDecorator(LruCache.class).build();
+
+    Assertions.assertThat(cache).isInstanceOf(SynchronizedCache.class);
+  }
+
+  @Test
+  void testSynchronizedCacheIsSkippedWhenAllLayersAreThreadSafe() {
+    Cache cache = new CacheBuilder("test").implementation(ConcurrentPerpetualCache.class).addDecorator(LruCache.class)
+      .readWrite(true).clearInterval(60000L).build();
+
+    Assertions.assertThat(cache).isInstanceOf(LoggingCache.class);
+  }
+
+  @Test
+  void testSynchronizedCacheIsAddedForNonThreadSafeDecorator() {
+    Cache cache = new CacheBuilder("test").implementation(ConcurrentPerpetualCache.class).addDecorator(SoftCache.class).build();
+
+    Assertions.assertThat(cache).isInstanceOf(SynchronizedCache.class);
+  }
+
   @SuppressWarnings("unchecked")
   private <T> T unwrap(Cache cache) {
     Field field;
@@ -86,6 +86,28 @@ class GenericTokenParserTest {
     assertEquals("The null is ${skipped} variable", parser.parse("The ${skipped} is \\${skipped} variable"));
   }
 
+  @Test
+  void shouldAppendToGivenBuilder() {
+    GenericTokenParser parser = new GenericTokenParser("${", "}", content -> content.toUpperCase());
+    StringBuilder builder = new StringBuilder("select ");
+    parser.parse("${a}, \\${b}, ${c\\}d} from t", builder);
+    assertEquals("select A, ${b}, C}D from t", builder.toString());
+  }
+
+  @Test
+  void shouldReuseBufferAndSupportNestedParsing() {
+    GenericTokenParser inner = new GenericTokenParser("[", "]", content -> content + content);
+    GenericTokenParser outer = new GenericTokenParser("${", "}", inner::parse);
+    assertEquals("x aabb y", outer.parse("x ${[a][b]} y"));
+    StringBuilder first = StringBuilderPool.acquire(16);
+    StringBuilderPool.release(first);
+    StringBuilder second = StringBuilderPool.acquire(16);
+    Assertions.assertSame(first, second);
+    Assertions.assertNotSame(second, StringBuilderPool.acquire(16));
+    StringBuilderPool.release(new StringBuilder(StringBuilderPool.MAX_RETAINED_CAPACITY + 1));
+    Assertions.assertNotSame(second, StringBuilderPool.acquire(16));
+  }
+
   @Disabled("Because it randomly fails on Travis CI. It could be useful during development.")
   @Test
   void shouldParseFastOnJdk7u6() {
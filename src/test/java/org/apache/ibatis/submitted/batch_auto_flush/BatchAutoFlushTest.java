@@ -0,0 +1,131 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_auto_flush;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchAutoFlushTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_auto_flush/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_auto_flush/CreateDB.sql");
+  }
+
+  @Test
+  void shouldReturnAutoFlushedResultsOnFlush() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 5; i++) {
+        mapper.insertOrder(new Order(i, "customer" + i));
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, results.size());
+      assertEquals(2, results.get(0).getUpdateCounts().length);
+      assertEquals(2, results.get(1).getUpdateCounts().length);
+      assertEquals(1, results.get(2).getUpdateCounts().length);
+      assertEquals(Integer.valueOf(5), ((Order) results.get(2).getParameterObjects().get(0)).getId());
+      assertTrue(sqlSession.flushStatements().isEmpty());
+      sqlSession.commit();
+      assertEquals(5, mapper.countOrders());
+    }
+  }
+
+  @Test
+  void shouldStreamResultsToHandler() {
+    List<BatchResult> handled = new ArrayList<>();
+    sqlSessionFactory.getConfiguration().setBatchResultHandler(handled::add);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertOrder(new Order(1, "customer1"));
+      assertEquals(0, handled.size());
+      mapper.insertOrder(new Order(2, "customer2"));
+      assertEquals(1, handled.size());
+      mapper.insertOrder(new Order(3, "customer3"));
+      assertTrue(sqlSession.flushStatements().isEmpty());
+      assertEquals(2, handled.size());
+      assertEquals(1, handled.get(1).getUpdateCounts().length);
+      sqlSession.commit();
+      assertEquals(3, mapper.countOrders());
+    }
+  }
+
+  @Test
+  void shouldFlushOnTotalRowsAndBytes() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    List<BatchResult> handled = new ArrayList<>();
+    configuration.setBatchResultHandler(handled::add);
+    configuration.setBatchFlushRowsPerStatement(0);
+    configuration.setBatchFlushRows(3);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 7; i++) {
+        mapper.insertOrder(new Order(i, "customer" + i));
+      }
+      assertEquals(2, handled.size());
+      sqlSession.flushStatements();
+      assertEquals(3, handled.size());
+      sqlSession.commit();
+    }
+    handled.clear();
+    configuration.setBatchFlushRows(0);
+    // id 8 字节，"customerN" 18 字节
+    configuration.setBatchFlushBytes(52);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertOrder(new Order(8, "customer8"));
+      mapper.insertOrder(new Order(9, "customer9"));
+      assertEquals(1, handled.size());
+      assertEquals(2, handled.get(0).getUpdateCounts().length);
+      sqlSession.commit();
+      assertEquals(9, mapper.countOrders());
+    }
+  }
+
+  @Test
+  void shouldDiscardAutoFlushedRowsOnRollback() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertOrder(new Order(i, "customer" + i));
+      }
+      sqlSession.rollback();
+      assertTrue(sqlSession.flushStatements().isEmpty());
+      assertEquals(0, mapper.countOrders());
+    }
+  }
+
+}
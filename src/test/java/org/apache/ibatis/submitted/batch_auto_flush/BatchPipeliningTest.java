@@ -0,0 +1,210 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_auto_flush;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchExecutorException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchPipeliningTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+  private final List<BatchResult> handled = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> prepareThreads = Collections.synchronizedList(new ArrayList<>());
+  private final List<Object> boundParameters = Collections.synchronizedList(new ArrayList<>());
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_auto_flush/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_auto_flush/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().setBatchPipelining(true);
+    sqlSessionFactory.getConfiguration().setBatchResultHandler(batchResult -> {
+      threads.add(Thread.currentThread().getName());
+      handled.add(batchResult);
+    });
+    sqlSessionFactory.getConfiguration().addInterceptor(new PrepareRecorder());
+  }
+
+  @Test
+  void shouldExecuteFullBatchesInBackgroundInOrder() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 7; i++) {
+        mapper.insertOrder(new Order(i, "customer" + i));
+      }
+      sqlSession.flushStatements();
+      assertEquals(4, handled.size());
+      for (int i = 0; i < 4; i++) {
+        assertEquals(Integer.valueOf(i * 2 + 1), ((Order) handled.get(i).getParameterObjects().get(0)).getId());
+      }
+      assertTrue(threads.get(0).startsWith("mybatis-batch-flush-"));
+      assertEquals(Thread.currentThread().getName(), threads.get(3));
+      sqlSession.commit();
+      assertEquals(7, mapper.countOrders());
+    }
+  }
+
+  @Test
+  void shouldOnlyBufferValuesOnCallingThread() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Order order = new Order(null, null);
+      for (int i = 1; i <= 5; i++) {
+        order.setId(i);
+        order.setCustomer("customer" + i);
+        mapper.insertOrder(order);
+      }
+      // 后台批次执行期间调用线程不使用连接
+      assertFalse(prepareThreads.contains(Thread.currentThread().getName()));
+      sqlSession.flushStatements();
+      assertEquals(3, handled.size());
+      sqlSession.commit();
+      assertEquals(Arrays.asList("customer1", "customer2", "customer3", "customer4", "customer5"), mapper.selectCustomers());
+    }
+  }
+
+  @Test
+  void shouldBindThroughParameterHandlerPluginsOnWorkerThread() {
+    sqlSessionFactory.getConfiguration().addInterceptor(new ParameterRecorder());
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Order> orders = new ArrayList<>();
+      for (int i = 1; i <= 4; i++) {
+        Order order = new Order(i, "customer" + i);
+        orders.add(order);
+        mapper.insertOrder(order);
+      }
+      sqlSession.flushStatements();
+      // 参数仍由ParameterHandler和插件绑定，后台执行的批次在后台线程上绑定
+      assertEquals(orders, boundParameters);
+      assertTrue(prepareThreads.get(0).startsWith("mybatis-batch-flush-"));
+      sqlSession.commit();
+      assertEquals(4, mapper.countOrders());
+    }
+  }
+
+  @Test
+  void shouldWaitForBackgroundBatchBeforeSelectKey() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertOrder(new Order(1, "customer1"));
+      mapper.insertOrder(new Order(2, "customer2"));
+      // selectKey在调用线程上使用连接，先等后台批次执行完
+      Order order = new Order(null, "customer3");
+      mapper.insertOrderWithSelectKey(order);
+      assertEquals(1, handled.size());
+      assertEquals(Integer.valueOf(3), order.getId());
+      sqlSession.flushStatements();
+      assertEquals(2, handled.size());
+      sqlSession.commit();
+      assertEquals(3, mapper.countOrders());
+    }
+  }
+
+  @Test
+  void shouldReportBackgroundFailureAndDiscardLaterBatches() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      PersistenceException e = assertThrows(PersistenceException.class, () -> {
+        mapper.insertOrder(new Order(1, "customer1"));
+        mapper.insertOrder(new Order(2, "customer2"));
+        // 主键重复，第二个批次在后台失败
+        mapper.insertOrder(new Order(1, "duplicate"));
+        mapper.insertOrder(new Order(3, "customer3"));
+        mapper.insertOrder(new Order(4, "customer4"));
+        mapper.insertOrder(new Order(5, "customer5"));
+        sqlSession.flushStatements();
+      });
+      assertTrue(e.getCause() instanceof BatchExecutorException);
+      assertEquals(1, handled.size());
+      assertTrue(sqlSession.flushStatements().isEmpty());
+      assertEquals(1, handled.size());
+      sqlSession.rollback();
+      assertEquals(0, mapper.countOrders());
+    }
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class, Integer.class }))
+  private class PrepareRecorder implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      prepareThreads.add(Thread.currentThread().getName());
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+
+  }
+
+  @Intercepts(@Signature(type = ParameterHandler.class, method = "setParameters", args = PreparedStatement.class))
+  private class ParameterRecorder implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      boundParameters.add(((ParameterHandler) invocation.getTarget()).getParameterObject());
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+
+  }
+
+}
@@ -0,0 +1,39 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_auto_flush;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.SelectKey;
+
+public interface Mapper {
+
+  @Insert("insert into orders (id, customer) values (#{id}, #{customer})")
+  void insertOrder(Order order);
+
+  @Insert("insert into orders (id, customer) values (#{id}, #{customer})")
+  @SelectKey(statement = "select coalesce(max(id), 0) + 1 from orders", keyProperty = "id", before = true, resultType = Integer.class)
+  void insertOrderWithSelectKey(Order order);
+
+  @Select("select count(*) from orders")
+  int countOrders();
+
+  @Select("select customer from orders order by id")
+  List<String> selectCustomers();
+
+}
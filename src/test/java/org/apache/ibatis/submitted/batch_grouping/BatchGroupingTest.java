@@ -0,0 +1,100 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_grouping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchGroupingTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_grouping/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_grouping/CreateDB.sql");
+  }
+
+  @Test
+  void shouldGroupInterleavedIndependentStatements() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertOrder(new Order(i, "customer" + i));
+        mapper.insertLine(new OrderLine(i, "product" + i));
+        mapper.insertLine(new OrderLine(i, "other" + i));
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals("org.apache.ibatis.submitted.batch_grouping.Mapper.insertOrder", results.get(0).getMappedStatement().getId());
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      assertEquals("org.apache.ibatis.submitted.batch_grouping.Mapper.insertLine", results.get(1).getMappedStatement().getId());
+      assertEquals(6, results.get(1).getUpdateCounts().length);
+      assertEquals("other3", ((OrderLine) results.get(1).getParameterObjects().get(5)).getProduct());
+      assertEquals(6, mapper.countLines());
+      sqlSession.commit();
+    }
+  }
+
+  @Test
+  void shouldNotMoveStatementsThatAreNotIndependent() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertLog("first");
+      mapper.insertOrder(new Order(1, "customer1"));
+      mapper.insertLog("second");
+      mapper.insertOrder(new Order(2, "customer2"));
+      List<BatchResult> results = sqlSession.flushStatements();
+      // insertOrder加入第一个Statement，insertLog不是独立的，重新打开Statement
+      assertEquals(3, results.size());
+      assertEquals(Arrays.asList("first"), results.get(0).getParameterObjects());
+      assertEquals(2, results.get(1).getParameterObjects().size());
+      assertEquals(Arrays.asList("second"), results.get(2).getParameterObjects());
+      sqlSession.commit();
+    }
+  }
+
+  @Test
+  void shouldGroupIndependentStatementsDeclaredByAnnotation() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertIndependentLog("first");
+      mapper.insertLog("plain");
+      mapper.insertIndependentLog("second");
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, results.size());
+      assertEquals(Arrays.asList("first", "second"), results.get(0).getParameterObjects());
+      sqlSession.commit();
+    }
+  }
+
+}
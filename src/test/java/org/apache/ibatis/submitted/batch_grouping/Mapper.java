@@ -0,0 +1,35 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_grouping;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+
+public interface Mapper {
+
+  void insertOrder(Order order);
+
+  void insertLine(OrderLine line);
+
+  void insertLog(String message);
+
+  int countLines();
+
+  @Insert("insert into audit_log (message) values (#{message})")
+  @Options(batchIndependent = true)
+  void insertIndependentLog(String message);
+
+}
@@ -0,0 +1,246 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_insert_rewrite;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchExecutorException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchInsertRewriteTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  private final List<String> preparedSql = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_insert_rewrite/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_insert_rewrite/CreateDB.sql");
+    sqlSessionFactory.getConfiguration().addInterceptor(new PrepareRecorder());
+  }
+
+  @Test
+  void shouldRewriteInsertsAndAssignGeneratedKeys() {
+    List<Order> orders = new ArrayList<>();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 7; i++) {
+        Order order = new Order("customer" + i, i * 10);
+        orders.add(order);
+        mapper.insertOrder(order);
+      }
+      assertTrue(preparedSql.isEmpty());
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(1, results.size());
+      assertArrayEquals(new int[] { 1, 1, 1, 1, 1, 1, 1 }, results.get(0).getUpdateCounts());
+      assertEquals(7, results.get(0).getParameterObjects().size());
+      assertEquals(3, preparedSql.size());
+      assertEquals("insert into orders (customer, amount) values (?, ?), (?, ?), (?, ?)", preparedSql.get(0));
+      assertEquals("insert into orders (customer, amount) values (?, ?)", preparedSql.get(2));
+      for (int i = 0; i < orders.size(); i++) {
+        assertEquals(Integer.valueOf(i + 1), orders.get(i).getId());
+      }
+      sqlSession.commit();
+      List<Order> saved = mapper.selectOrders();
+      assertEquals(7, saved.size());
+      for (int i = 0; i < saved.size(); i++) {
+        assertEquals(Integer.valueOf(i + 1), saved.get(i).getId());
+        assertEquals("customer" + (i + 1), saved.get(i).getCustomer());
+        assertEquals(Integer.valueOf((i + 1) * 10), saved.get(i).getAmount());
+      }
+    }
+  }
+
+  @Test
+  void shouldInsertValuesOfReusedParameterObject() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Order order = new Order();
+      for (int i = 1; i <= 5; i++) {
+        order.setCustomer("customer" + i);
+        order.setAmount(i * 10);
+        mapper.insertOrder(order);
+      }
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(2, preparedSql.size());
+      assertEquals(5, results.get(0).getParameterObjects().size());
+      sqlSession.commit();
+      List<Order> saved = mapper.selectOrders();
+      assertEquals(5, saved.size());
+      for (int i = 0; i < saved.size(); i++) {
+        assertEquals("customer" + (i + 1), saved.get(i).getCustomer());
+        assertEquals(Integer.valueOf((i + 1) * 10), saved.get(i).getAmount());
+      }
+    }
+  }
+
+  @Test
+  void shouldBindThroughParameterHandlerPlugins() {
+    sqlSessionFactory.getConfiguration().addInterceptor(new UpperCaseParameters());
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Order order = new Order();
+      for (int i = 1; i <= 4; i++) {
+        order.setCustomer("customer" + i);
+        order.setAmount(i);
+        mapper.insertOrder(order);
+      }
+      sqlSession.flushStatements();
+      assertEquals(2, preparedSql.size());
+      sqlSession.commit();
+      List<Order> saved = mapper.selectOrders();
+      assertEquals(4, saved.size());
+      for (int i = 0; i < saved.size(); i++) {
+        assertEquals("CUSTOMER" + (i + 1), saved.get(i).getCustomer());
+      }
+    }
+  }
+
+  @Test
+  void shouldLimitParametersPerStatement() {
+    sqlSessionFactory.getConfiguration().setBatchInsertRewriteParameters(5);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 5; i++) {
+        mapper.insertOrder(new Order("customer" + i, i));
+      }
+      sqlSession.flushStatements();
+      assertEquals(3, preparedSql.size());
+      assertEquals("insert into orders (customer, amount) values (?, ?), (?, ?)", preparedSql.get(0));
+      sqlSession.commit();
+      assertEquals(5, mapper.selectOrders().size());
+    }
+  }
+
+  @Test
+  void shouldNotRewriteInsertWithoutTrailingValues() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      for (int i = 1; i <= 3; i++) {
+        mapper.insertOrderBySelect(new Order("customer" + i, i));
+      }
+      // 不改写时在绑定参数前就预编译
+      assertEquals(1, preparedSql.size());
+      List<BatchResult> results = sqlSession.flushStatements();
+      assertEquals(3, results.get(0).getUpdateCounts().length);
+      sqlSession.commit();
+      assertEquals(3, mapper.selectOrders().size());
+    }
+  }
+
+  @Test
+  void shouldReportFailedRewrittenInsert() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.insertOrder(new Order("customer1", 1));
+      mapper.insertOrder(new Order(null, 2));
+      PersistenceException pe = assertThrows(PersistenceException.class, sqlSession::flushStatements);
+      BatchExecutorException e = (BatchExecutorException) pe.getCause();
+      assertTrue(e.getMessage().contains("(batch index #1) failed."));
+      assertEquals(0, e.getSuccessfulBatchResults().size());
+      sqlSession.rollback();
+      assertEquals(0, mapper.selectOrders().size());
+    }
+  }
+
+  @Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class, Integer.class }))
+  private class PrepareRecorder implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      StatementHandler handler = (StatementHandler) invocation.getTarget();
+      if (handler.getBoundSql().getSql().startsWith("insert")) {
+        preparedSql.add(handler.getBoundSql().getSql());
+      }
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+
+  }
+
+  /**
+   * 类似加密插件，修改ParameterHandler设置的字符串参数
+   */
+  @Intercepts(@Signature(type = ParameterHandler.class, method = "setParameters", args = PreparedStatement.class))
+  private static class UpperCaseParameters implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      PreparedStatement ps = (PreparedStatement) invocation.getArgs()[0];
+      invocation.getArgs()[0] = Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+            if ("setString".equals(method.getName())) {
+              args[1] = ((String) args[1]).toUpperCase(Locale.ENGLISH);
+            }
+            try {
+              return method.invoke(ps, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          });
+      return invocation.proceed();
+    }
+
+    @Override
+    public Object plugin(Object target) {
+      return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+    }
+
+  }
+
+}
@@ -0,0 +1,36 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_insert_rewrite;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Select;
+
+public interface Mapper {
+
+  @Insert("insert into orders (customer, amount) values (#{customer}, #{amount})")
+  @Options(useGeneratedKeys = true, keyProperty = "id")
+  void insertOrder(Order order);
+
+  @Insert("insert into orders (customer, amount) select cast(#{customer} as varchar(20)), cast(#{amount} as int) from (values (0)) as t (x)")
+  void insertOrderBySelect(Order order);
+
+  @Select("select * from orders order by id")
+  List<Order> selectOrders();
+
+}
@@ -0,0 +1,99 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cache_refresh;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.function.BooleanSupplier;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.executor.CacheRefresher;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CacheRefreshTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_refresh/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/cache_refresh/CreateDB.sql");
+  }
+
+  @Test
+  void shouldReturnStaleResultAndRefreshInBackground() throws Exception {
+    assertEquals("User1", getUserName(1));
+    // 绕过MyBatis修改数据库，缓存命中时看不到这些修改
+    executeDirectly("update users set name = 'Changed' where id = 1");
+    // 不论是否超过refreshAfter，都先返回缓存的旧值
+    assertEquals("User1", getUserName(1));
+    waitUntil(() -> "Changed".equals(getUserName(1)));
+  }
+
+  @Test
+  void shouldNotRefreshTheSameKeyTwice() throws Exception {
+    assertEquals("User1", getUserName(1));
+    CacheRefresher refresher = sqlSessionFactory.getConfiguration().getCacheRefresher();
+    // 未提交的修改锁住了表，刷新会一直等待
+    try (Connection conn = sqlSessionFactory.getConfiguration().getEnvironment().getDataSource().getConnection()) {
+      conn.setAutoCommit(false);
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("update users set name = 'Changed' where id = 1");
+      }
+      // 超过refreshAfter后的读取返回旧值并开始刷新
+      waitUntil(() -> "User1".equals(getUserName(1)) && refresher.getRefreshingCount() == 1);
+      assertEquals("User1", getUserName(1));
+      assertEquals("User1", getUserName(1));
+      assertEquals(1, refresher.getRefreshingCount());
+      conn.commit();
+    }
+    waitUntil(() -> refresher.getRefreshingCount() == 0);
+    assertEquals("Changed", getUserName(1));
+  }
+
+  private String getUserName(Integer id) {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      return sqlSession.getMapper(Mapper.class).getUser(id).getName();
+    }
+  }
+
+  private void executeDirectly(String sql) throws Exception {
+    try (Connection conn = sqlSessionFactory.getConfiguration().getEnvironment().getDataSource().getConnection();
+        Statement stmt = conn.createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for cache refresh");
+      Thread.sleep(10);
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.cache_tags;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CacheTagsTest {
+
+  private SqlSessionFactory sqlSessionFactory;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/cache_tags/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/cache_tags/CreateDB.sql");
+  }
+
+  @Test
+  void shouldOnlyInvalidateTaggedAndUntaggedResults() throws Exception {
+    fillCache();
+    // 绕过MyBatis修改数据库，缓存命中时看不到这些修改
+    executeDirectly("update users set name = 'Changed' where id = 2");
+    executeDirectly("insert into users (id, name) values(3, 'User3')");
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).updateName(1, "Updated");
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      assertEquals("Updated", mapper.getUser(1).getName());
+      assertEquals("User2", mapper.getUser(2).getName());
+      assertEquals(3, mapper.countUsers());
+    }
+  }
+
+  @Test
+  void shouldNotUseInvalidatedResultsBeforeCommit() {
+    fillCache();
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.updateName(1, "Updated");
+      assertEquals("Updated", mapper.getUser(1).getName());
+      sqlSession.rollback();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals("User1", sqlSession.getMapper(Mapper.class).getUser(1).getName());
+    }
+  }
+
+  @Test
+  void shouldClearWholeCacheWithoutTags() throws Exception {
+    fillCache();
+    executeDirectly("update users set name = 'Changed' where id = 2");
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      sqlSession.getMapper(Mapper.class).updateAll();
+      sqlSession.commit();
+    }
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertEquals("Changed", sqlSession.getMapper(Mapper.class).getUser(2).getName());
+    }
+  }
+
+  private void fillCache() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.getUser(1);
+      mapper.getUser(2);
+      mapper.countUsers();
+    }
+  }
+
+  private void executeDirectly(String sql) throws Exception {
+    try (Connection conn = sqlSessionFactory.getConfiguration().getEnvironment().getDataSource().getConnection();
+        Statement stmt = conn.createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+
+}
@@ -81,6 +81,18 @@ class ForEachTest {
     }
   }
 
+  @Test
+  void shouldPadInListToPowerOfTwo() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Assertions.assertEquals(3, mapper.countByIdsPadded(Arrays.asList(1, 2, 3)));
+      Assertions.assertEquals(5, mapper.countByIdsPadded(Arrays.asList(6, 5, 4, 3, 2)));
+      String sql = sqlSessionFactory.getConfiguration().getMappedStatement("countByIdsPadded")
+          .getBoundSql(Collections.singletonMap("list", Arrays.asList(1, 2, 3, 4, 5))).getSql();
+      Assertions.assertEquals(8, sql.chars().filter(c -> c == '?').count());
+    }
+  }
+
   @Test
   void shouldHandleMoreComplexNullItem() {
     try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
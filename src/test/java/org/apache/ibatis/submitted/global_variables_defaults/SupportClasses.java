@@ -56,20 +56,24 @@ public class SupportClasses {
 
   static class Utils {
     static SupportClasses.CustomCache unwrap(Cache cache) {
-      Field field;
-      try {
-        field = cache.getClass().getDeclaredField("delegate");
-      } catch (NoSuchFieldException e) {
-        throw new IllegalStateException(e);
-      }
-      try {
-        field.setAccessible(true);
-        return (SupportClasses.CustomCache) field.get(cache);
-      } catch (IllegalAccessException e) {
-        throw new IllegalStateException(e);
-      } finally {
-        field.setAccessible(false);
+      // 自定义缓存外面有LoggingCache和GenerationCache等装饰器
+      while (!(cache instanceof SupportClasses.CustomCache)) {
+        Field field;
+        try {
+          field = cache.getClass().getDeclaredField("delegate");
+        } catch (NoSuchFieldException e) {
+          throw new IllegalStateException(e);
+        }
+        try {
+          field.setAccessible(true);
+          cache = (Cache) field.get(cache);
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        } finally {
+          field.setAccessible(false);
+        }
       }
+      return (SupportClasses.CustomCache) cache;
     }
   }
 